@@ -0,0 +1,295 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Intended start times of requests in an open workload model shared by all the senders connecting to the same target.
+ * The requests arrive at a constant rate, optionally after a linear ramp up from an initial rate. The schedule does not
+ * depend on the completion of the previous requests, so the latency measured from the intended start time includes the time
+ * a request waited for a free sender when the target slowed down. This avoids the coordinated omission of the latency outliers.
+ * Both the latencies measured from the intended (corrected) and the actual (uncorrected) start times are recorded in histograms.
+ * The schedule starts with the first claimed request and it is discarded when the last sender releases it.
+ */
+public class ArrivalSchedule {
+
+   /**
+    * How long the computed percentiles are reused before they are computed again.
+    */
+   private static final long PERCENTILES_REFRESH_PERIOD = TimeUnit.SECONDS.toNanos(1);
+
+   /**
+    * Schedules currently in use, indexed by the target, the rates and the reported percentiles.
+    */
+   private static final Map<String, ArrivalSchedule> schedules = new HashMap<>();
+
+   /**
+    * Key of this schedule in {@link #schedules}.
+    */
+   private final String key;
+
+   /**
+    * The target arrival rate in requests per second.
+    */
+   private final double rate;
+
+   /**
+    * The arrival rate at the beginning of the ramp up in requests per second.
+    */
+   private final double initialRate;
+
+   /**
+    * Duration of the ramp up in seconds.
+    */
+   private final double rampUp;
+
+   /**
+    * Number of requests scheduled during the ramp up.
+    */
+   private final double rampUpRequests;
+
+   /**
+    * Sequence number of the next request.
+    */
+   private final AtomicLong sequence = new AtomicLong();
+
+   /**
+    * Start of the schedule as returned by {@link System#nanoTime()}, zero until the first request is claimed.
+    */
+   private volatile long startedAt = 0;
+
+   /**
+    * Latencies in microseconds measured from the intended start times.
+    */
+   private final Histogram corrected = new ConcurrentHistogram(3);
+
+   /**
+    * Latencies in microseconds measured from the actual start times.
+    */
+   private final Histogram uncorrected = new ConcurrentHistogram(3);
+
+   /**
+    * Percentiles reported by {@link #getPercentiles()}.
+    */
+   private final double[] percentiles;
+
+   /**
+    * The last computed latencies at the percentiles.
+    */
+   private volatile Percentiles computedPercentiles;
+
+   /**
+    * True while a thread recomputes the percentiles.
+    */
+   private final AtomicBoolean computingPercentiles = new AtomicBoolean();
+
+   /**
+    * Number of senders using this schedule.
+    */
+   private int references = 0;
+
+   private ArrivalSchedule(final String key, final double rate, final double initialRate, final long rampUpPeriod, final double[] percentiles) {
+      this.key = key;
+      this.rate = rate;
+      this.initialRate = rampUpPeriod > 0 ? initialRate : rate;
+      this.rampUp = rampUpPeriod > 0 ? rampUpPeriod / 1000d : 0;
+      this.rampUpRequests = (this.initialRate + rate) / 2 * rampUp;
+      this.percentiles = percentiles;
+      this.computedPercentiles = new Percentiles(new double[percentiles.length], new double[percentiles.length], 0);
+   }
+
+   /**
+    * Obtains the schedule of the given target. Each call must be paired with {@link #release()}.
+    *
+    * @param target
+    *       The target of the requests.
+    * @param rate
+    *       The target arrival rate in requests per second.
+    * @param initialRate
+    *       The arrival rate at the beginning of the ramp up in requests per second.
+    * @param rampUpPeriod
+    *       Duration of the linear ramp up from the initial to the target rate in milliseconds, zero for a constant rate.
+    * @param percentiles
+    *       The percentiles to be reported, senders reporting different percentiles do not share the schedule.
+    * @return The schedule.
+    */
+   public static ArrivalSchedule acquire(final String target, final double rate, final double initialRate, final long rampUpPeriod, final double[] percentiles) {
+      if (rate <= 0 || initialRate < 0) {
+         throw new IllegalArgumentException(String.format("Invalid arrival rate %f, the initial rate %f.", rate, initialRate));
+      }
+
+      synchronized (schedules) {
+         final String k = target + "|" + rate + "|" + initialRate + "|" + rampUpPeriod + "|" + Arrays.toString(percentiles);
+         ArrivalSchedule schedule = schedules.get(k);
+         if (schedule == null) {
+            schedule = new ArrivalSchedule(k, rate, initialRate, rampUpPeriod, percentiles);
+            schedules.put(k, schedule);
+         }
+         schedule.references++;
+
+         return schedule;
+      }
+   }
+
+   /**
+    * Releases the schedule obtained by {@link #acquire(String, double, double, long, double[])}.
+    */
+   public void release() {
+      synchronized (schedules) {
+         if (--references == 0) {
+            schedules.remove(key, this);
+         }
+      }
+   }
+
+   /**
+    * Claims the next request of the schedule and waits until its intended start time.
+    *
+    * @return The intended start time of the request as returned by {@link System#nanoTime()}.
+    */
+   public long awaitNext() {
+      final long n = sequence.getAndIncrement();
+      if (startedAt == 0) {
+         synchronized (this) {
+            if (startedAt == 0) {
+               startedAt = System.nanoTime();
+            }
+         }
+      }
+
+      final long intendedAt = startedAt + (long) (offset(n) * 1_000_000_000d);
+      long now;
+      while ((now = System.nanoTime()) < intendedAt && !Thread.currentThread().isInterrupted()) {
+         LockSupport.parkNanos(intendedAt - now);
+      }
+
+      return intendedAt;
+   }
+
+   /**
+    * Computes the intended start of the request.
+    *
+    * @param n
+    *       The sequence number of the request.
+    * @return The time from the start of the schedule in seconds.
+    */
+   private double offset(final long n) {
+      if (n >= rampUpRequests) {
+         return rampUp + (n - rampUpRequests) / rate;
+      }
+
+      // the number of requests arrived by the time t of the ramp up is initialRate * t + acceleration * t^2 / 2
+      final double acceleration = (rate - initialRate) / rampUp;
+      if (acceleration == 0) {
+         return n / rate;
+      }
+      return (Math.sqrt(initialRate * initialRate + 2 * acceleration * n) - initialRate) / acceleration;
+   }
+
+   /**
+    * Records the latency of a completed request.
+    *
+    * @param intendedAt
+    *       The intended start time as returned by {@link #awaitNext()}.
+    * @param startedAt
+    *       The actual start time as returned by {@link System#nanoTime()}.
+    * @param completedAt
+    *       The completion time as returned by {@link System#nanoTime()}.
+    */
+   public void record(final long intendedAt, final long startedAt, final long completedAt) {
+      corrected.recordValue(Math.max(0, (completedAt - intendedAt) / 1000));
+      uncorrected.recordValue(Math.max(0, (completedAt - startedAt) / 1000));
+   }
+
+   /**
+    * Gets the latency percentiles of all the requests recorded so far. The percentiles are recomputed at most once a second
+    * by a single thread, the other threads get the previous values meanwhile.
+    *
+    * @return The latencies at the percentiles the schedule was acquired with.
+    */
+   public Percentiles getPercentiles() {
+      final Percentiles current = computedPercentiles;
+      final long now = System.nanoTime();
+      if ((current.computedAt == 0 || now - current.computedAt > PERCENTILES_REFRESH_PERIOD) && computingPercentiles.compareAndSet(false, true)) {
+         try {
+            computedPercentiles = new Percentiles(compute(corrected), compute(uncorrected), now);
+            return computedPercentiles;
+         } finally {
+            computingPercentiles.set(false);
+         }
+      }
+
+      return current;
+   }
+
+   private double[] compute(final Histogram histogram) {
+      final double[] values = new double[percentiles.length];
+      for (int i = 0; i < percentiles.length; i++) {
+         values[i] = histogram.getValueAtPercentile(percentiles[i]) / 1000d;
+      }
+      return values;
+   }
+
+   /**
+    * Latencies at the reported percentiles computed at the same time. The arrays must not be modified.
+    */
+   public static final class Percentiles {
+
+      private final double[] corrected;
+
+      private final double[] uncorrected;
+
+      private final long computedAt;
+
+      private Percentiles(final double[] corrected, final double[] uncorrected, final long computedAt) {
+         this.corrected = corrected;
+         this.uncorrected = uncorrected;
+         this.computedAt = computedAt;
+      }
+
+      /**
+       * Gets the latencies measured from the intended start times.
+       *
+       * @return The latencies in milliseconds in the order of the percentiles the schedule was acquired with.
+       */
+      public double[] getCorrected() {
+         return corrected;
+      }
+
+      /**
+       * Gets the latencies measured from the actual start times.
+       *
+       * @return The latencies in milliseconds in the order of the percentiles the schedule was acquired with.
+       */
+      public double[] getUncorrected() {
+         return uncorrected;
+      }
+   }
+}
@@ -0,0 +1,233 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cookies of a single session (virtual user). The jar is an immutable snapshot replaced atomically on each change,
+ * so it can be read and updated without locking. The rendered <code>Cookie</code> request header is cached in the snapshot
+ * and recomputed only when the cookies change, the request location differs or a cookie expires.
+ */
+public class CookieJar {
+
+   /**
+    * The current content of the jar.
+    */
+   private final AtomicReference<State> state = new AtomicReference<>(new State(new StoredCookie[0], null, null, 0));
+
+   /**
+    * Time of the last use of the jar in milliseconds, used to evict the least recently used sessions.
+    */
+   private volatile long lastAccess = System.currentTimeMillis();
+
+   /**
+    * Stores the cookies received in the response.
+    *
+    * @param uri
+    *       The URI of the request.
+    * @param setCookieHeaders
+    *       Values of the <code>Set-Cookie</code> response headers.
+    */
+   public void store(final URI uri, final List<String> setCookieHeaders) {
+      final long now = System.currentTimeMillis();
+      final List<StoredCookie> received = new ArrayList<>();
+
+      for (final String header : setCookieHeaders) {
+         try {
+            for (final HttpCookie cookie : HttpCookie.parse(header)) {
+               received.add(new StoredCookie(cookie, uri, now));
+            }
+         } catch (IllegalArgumentException e) {
+            // ignore malformed cookies the same way a browser would do
+         }
+      }
+
+      if (received.isEmpty()) {
+         return;
+      }
+
+      State current;
+      State updated;
+      do {
+         current = state.get();
+         final List<StoredCookie> cookies = new ArrayList<>(current.cookies.length + received.size());
+         for (final StoredCookie stored : current.cookies) {
+            if (!stored.isExpired(now) && !replaced(stored, received)) {
+               cookies.add(stored);
+            }
+         }
+         for (final StoredCookie cookie : received) {
+            if (!cookie.isExpired(now)) {
+               cookies.add(cookie);
+            }
+         }
+         updated = new State(cookies.toArray(new StoredCookie[cookies.size()]), null, null, 0);
+      } while (!state.compareAndSet(current, updated));
+
+      lastAccess = now;
+   }
+
+   /**
+    * Gets the value of the <code>Cookie</code> header for a request.
+    *
+    * @param uri
+    *       The URI of the request.
+    * @return The header value, or null when there are no cookies to be sent.
+    */
+   public String getCookieHeader(final URI uri) {
+      final long now = System.currentTimeMillis();
+      lastAccess = now;
+
+      final State current = state.get();
+      if (current.renderedFor == uri && now < current.validUntil) {
+         return current.header;
+      }
+
+      final List<StoredCookie> valid = new ArrayList<>(current.cookies.length);
+      final StringBuilder header = new StringBuilder();
+      long validUntil = Long.MAX_VALUE;
+
+      for (final StoredCookie stored : current.cookies) {
+         if (stored.isExpired(now)) {
+            continue;
+         }
+         valid.add(stored);
+         if (stored.matches(uri)) {
+            if (header.length() > 0) {
+               header.append("; ");
+            }
+            header.append(stored.cookie.getName()).append('=').append(stored.cookie.getValue());
+         }
+         validUntil = Math.min(validUntil, stored.expiresAt);
+      }
+
+      final String value = header.length() > 0 ? header.toString() : null;
+      // a failed update only means that somebody else has just changed the jar, the next call renders the header again
+      state.compareAndSet(current, new State(valid.toArray(new StoredCookie[valid.size()]), uri, value, validUntil));
+
+      return value;
+   }
+
+   /**
+    * Gets the time of the last use of the jar.
+    *
+    * @return The time of the last use in milliseconds.
+    */
+   public long getLastAccess() {
+      return lastAccess;
+   }
+
+   private static boolean replaced(final StoredCookie stored, final List<StoredCookie> received) {
+      for (final StoredCookie cookie : received) {
+         if (cookie.cookie.getName().equals(stored.cookie.getName()) && cookie.domain.equalsIgnoreCase(stored.domain) && cookie.path.equals(stored.path)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Immutable snapshot of the jar.
+    */
+   private static final class State {
+
+      private final StoredCookie[] cookies;
+
+      /**
+       * The request URI the header was rendered for.
+       */
+      private final URI renderedFor;
+
+      /**
+       * The rendered <code>Cookie</code> header.
+       */
+      private final String header;
+
+      /**
+       * Time in milliseconds until the rendered header is valid, i.e. the earliest expiration of the stored cookies.
+       */
+      private final long validUntil;
+
+      private State(final StoredCookie[] cookies, final URI renderedFor, final String header, final long validUntil) {
+         this.cookies = cookies;
+         this.renderedFor = renderedFor;
+         this.header = header;
+         this.validUntil = validUntil;
+      }
+   }
+
+   /**
+    * A cookie with its effective domain, path and expiration.
+    */
+   private static final class StoredCookie {
+
+      private final HttpCookie cookie;
+
+      private final String domain;
+
+      /**
+       * True when the cookie did not specify a domain and it is sent only to the originating host.
+       */
+      private final boolean hostOnly;
+
+      private final String path;
+
+      private final boolean secure;
+
+      private final long expiresAt;
+
+      private StoredCookie(final HttpCookie cookie, final URI uri, final long now) {
+         this.cookie = cookie;
+         hostOnly = cookie.getDomain() == null;
+         domain = hostOnly ? uri.getHost() : cookie.getDomain();
+         path = cookie.getPath() != null ? cookie.getPath() : defaultPath(uri.getPath());
+         secure = cookie.getSecure();
+         expiresAt = cookie.getMaxAge() < 0 ? Long.MAX_VALUE : now + cookie.getMaxAge() * 1000;
+      }
+
+      private boolean isExpired(final long now) {
+         return now >= expiresAt;
+      }
+
+      private boolean matches(final URI uri) {
+         if (secure && !"https".equalsIgnoreCase(uri.getScheme())) {
+            return false;
+         }
+
+         final boolean domainMatches = hostOnly ? domain.equalsIgnoreCase(uri.getHost()) : HttpCookie.domainMatches(domain, uri.getHost());
+         final String requestPath = uri.getPath() == null || uri.getPath().isEmpty() ? "/" : uri.getPath();
+
+         return domainMatches && requestPath.startsWith(path);
+      }
+
+      private static String defaultPath(final String requestPath) {
+         if (requestPath == null || !requestPath.startsWith("/")) {
+            return "/";
+         }
+         final int lastSlash = requestPath.lastIndexOf('/');
+         return lastSlash == 0 ? "/" : requestPath.substring(0, lastSlash);
+      }
+   }
+}
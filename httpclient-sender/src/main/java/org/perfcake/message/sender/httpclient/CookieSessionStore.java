@@ -0,0 +1,118 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cookie jars of all the sessions (virtual users), shared among the sender instances.
+ * The number of stored sessions is limited, the least recently used sessions are evicted when the limit is exceeded.
+ * The store is created empty for the first sender and it is discarded when the last sender releases it, so no cookies
+ * are carried over to the next scenario run in the same JVM.
+ */
+public class CookieSessionStore {
+
+   /**
+    * The store currently in use, null when there is no sender storing cookies.
+    */
+   private static CookieSessionStore store = null;
+
+   /**
+    * Cookie jars indexed by the session id.
+    */
+   private final ConcurrentMap<Object, CookieJar> sessions = new ConcurrentHashMap<>();
+
+   /**
+    * Number of senders using the store.
+    */
+   private int references = 0;
+
+   private CookieSessionStore() {
+   }
+
+   /**
+    * Obtains the shared store. Each call must be paired with {@link #release()}.
+    *
+    * @return The store shared by all the senders.
+    */
+   public static CookieSessionStore acquire() {
+      synchronized (CookieSessionStore.class) {
+         if (store == null) {
+            store = new CookieSessionStore();
+         }
+         store.references++;
+
+         return store;
+      }
+   }
+
+   /**
+    * Releases the store obtained by {@link #acquire()}. The stored sessions are discarded with the last reference.
+    */
+   public void release() {
+      synchronized (CookieSessionStore.class) {
+         if (--references == 0 && store == this) {
+            store = null;
+         }
+      }
+   }
+
+   /**
+    * Gets the cookie jar of the session, creates a new one when there is none.
+    *
+    * @param sessionId
+    *       The session id.
+    * @param maxSessions
+    *       The maximum number of stored sessions.
+    * @return The cookie jar of the session.
+    */
+   public CookieJar getJar(final Object sessionId, final int maxSessions) {
+      CookieJar jar = sessions.get(sessionId);
+
+      if (jar == null) {
+         final CookieJar created = new CookieJar();
+         jar = sessions.putIfAbsent(sessionId, created);
+         if (jar == null) {
+            jar = created;
+            if (sessions.size() > maxSessions) {
+               evictLeastRecentlyUsed(sessionId);
+            }
+         }
+      }
+
+      return jar;
+   }
+
+   private void evictLeastRecentlyUsed(final Object keep) {
+      Map.Entry<Object, CookieJar> oldest = null;
+
+      for (final Map.Entry<Object, CookieJar> session : sessions.entrySet()) {
+         if (!session.getKey().equals(keep) && (oldest == null || session.getValue().getLastAccess() < oldest.getValue().getLastAccess())) {
+            oldest = session;
+         }
+      }
+
+      if (oldest != null) {
+         sessions.remove(oldest.getKey(), oldest.getValue());
+      }
+   }
+}
@@ -0,0 +1,92 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.apache.http.HttpHost;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.nio.reactor.ssl.SSLIOSession;
+
+import java.io.IOException;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * TLS session strategy of the non-blocking client counting the handshakes.
+ */
+public class CountingSslSessionStrategy extends SSLIOSessionStrategy {
+
+   /**
+    * Name of the I/O session attribute carrying the time the handshake started in milliseconds.
+    */
+   private static final String HANDSHAKE_STARTED_ATTRIBUTE = "perfcake.handshakeStarted";
+
+   /**
+    * Handshake counters of the client.
+    */
+   private final TlsStatistics statistics;
+
+   /**
+    * When true, the negotiated sessions are invalidated to prevent their resumption.
+    */
+   private final boolean fullHandshake;
+
+   /**
+    * Creates the strategy.
+    *
+    * @param sslContext
+    *       The SSL context.
+    * @param protocols
+    *       The enabled protocols, null for the defaults.
+    * @param cipherSuites
+    *       The enabled cipher suites, null for the defaults.
+    * @param hostnameVerifier
+    *       The verifier of the server host name.
+    * @param statistics
+    *       The handshake counters.
+    * @param fullHandshake
+    *       True to prevent the resumption of the sessions.
+    */
+   public CountingSslSessionStrategy(final SSLContext sslContext, final String[] protocols, final String[] cipherSuites, final HostnameVerifier hostnameVerifier,
+         final TlsStatistics statistics, final boolean fullHandshake) {
+      super(sslContext, protocols, cipherSuites, hostnameVerifier);
+      this.statistics = statistics;
+      this.fullHandshake = fullHandshake;
+   }
+
+   @Override
+   public SSLIOSession upgrade(final HttpHost host, final IOSession ioSession) throws IOException {
+      ioSession.setAttribute(HANDSHAKE_STARTED_ATTRIBUTE, System.currentTimeMillis());
+      return super.upgrade(host, ioSession);
+   }
+
+   @Override
+   protected void verifySession(final HttpHost host, final IOSession ioSession, final SSLSession session) throws SSLException {
+      super.verifySession(host, ioSession, session);
+
+      final Object startedAt = ioSession.getAttribute(HANDSHAKE_STARTED_ATTRIBUTE);
+      statistics.record(session, startedAt == null ? System.currentTimeMillis() : (Long) startedAt);
+      if (fullHandshake) {
+         session.invalidate();
+      }
+   }
+}
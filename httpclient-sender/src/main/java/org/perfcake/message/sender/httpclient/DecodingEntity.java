@@ -0,0 +1,203 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.brotli.dec.BrotliInputStream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Response entity decompressed on the fly while it is read. The number of bytes received on the wire and the time spent
+ * in the decompression (the time of reading the decoded content less the time of reading the wire) are recorded.
+ * Supported content encodings are <code>gzip</code>, <code>deflate</code> and <code>br</code>.
+ */
+public class DecodingEntity extends HttpEntityWrapper {
+
+   /**
+    * The content encoding in lower case.
+    */
+   private final String encoding;
+
+   /**
+    * The stream of the compressed content as received on the wire.
+    */
+   private MeteredInputStream wire;
+
+   /**
+    * The stream of the decoded content.
+    */
+   private MeteredInputStream decoded;
+
+   /**
+    * Time in nanoseconds spent in the creation of the decoder, which reads the encoding header.
+    */
+   private long decoderSetup;
+
+   private DecodingEntity(final HttpEntity entity, final String encoding) {
+      super(entity);
+      this.encoding = encoding;
+   }
+
+   /**
+    * Wraps the entity to be decoded according to its content encoding.
+    *
+    * @param entity
+    *       The received entity.
+    * @param contentEncoding
+    *       The <code>Content-Encoding</code> header of the response, can be null.
+    * @return The decoding entity, or null when the entity is not compressed using a supported encoding.
+    */
+   public static DecodingEntity create(final HttpEntity entity, final Header contentEncoding) {
+      if (entity == null || contentEncoding == null || entity.getContentLength() == 0) {
+         return null;
+      }
+
+      final String encoding = contentEncoding.getValue().trim().toLowerCase(Locale.ENGLISH);
+      switch (encoding) {
+         case "gzip":
+         case "x-gzip":
+         case "deflate":
+         case "br":
+            return new DecodingEntity(entity, encoding);
+         default:
+            return null;
+      }
+   }
+
+   @Override
+   public InputStream getContent() throws IOException {
+      if (decoded == null) {
+         wire = new MeteredInputStream(wrappedEntity.getContent());
+         final long startedAt = System.nanoTime();
+         decoded = new MeteredInputStream(createDecoder(wire));
+         decoderSetup = System.nanoTime() - startedAt;
+      }
+      return decoded;
+   }
+
+   private InputStream createDecoder(final InputStream in) throws IOException {
+      switch (encoding) {
+         case "deflate":
+            return new DeflateInputStream(in);
+         case "br":
+            return new BrotliInputStream(in);
+         default:
+            return new GZIPInputStream(in);
+      }
+   }
+
+   @Override
+   public void writeTo(final OutputStream out) throws IOException {
+      try (InputStream in = getContent()) {
+         final byte[] buffer = new byte[8192];
+         int n;
+         while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+         }
+      }
+   }
+
+   @Override
+   public long getContentLength() {
+      return -1;
+   }
+
+   @Override
+   public Header getContentEncoding() {
+      return null;
+   }
+
+   @Override
+   public boolean isStreaming() {
+      return true;
+   }
+
+   /**
+    * Gets the number of bytes of the compressed content read from the wire.
+    *
+    * @return The number of compressed bytes.
+    */
+   public long getWireSize() {
+      return wire == null ? 0 : wire.bytes;
+   }
+
+   /**
+    * Gets the time spent in the decompression of the content read so far.
+    *
+    * @return The decompression time in milliseconds.
+    */
+   public double getDecompressionTime() {
+      return decoded == null ? 0 : (decoderSetup + decoded.nanos - wire.nanos) / 1_000_000d;
+   }
+
+   /**
+    * Stream counting the bytes read and the time spent reading them.
+    */
+   private static final class MeteredInputStream extends FilterInputStream {
+
+      private long bytes;
+
+      private long nanos;
+
+      private MeteredInputStream(final InputStream in) {
+         super(in);
+      }
+
+      @Override
+      public int read() throws IOException {
+         final long startedAt = System.nanoTime();
+         final int b = super.read();
+         nanos += System.nanoTime() - startedAt;
+         if (b != -1) {
+            bytes++;
+         }
+         return b;
+      }
+
+      @Override
+      public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+         final long startedAt = System.nanoTime();
+         final int n = super.read(buffer, offset, length);
+         nanos += System.nanoTime() - startedAt;
+         if (n > 0) {
+            bytes += n;
+         }
+         return n;
+      }
+
+      @Override
+      public long skip(final long n) throws IOException {
+         final long startedAt = System.nanoTime();
+         final long skipped = super.skip(n);
+         nanos += System.nanoTime() - startedAt;
+         bytes += skipped;
+         return skipped;
+      }
+   }
+}
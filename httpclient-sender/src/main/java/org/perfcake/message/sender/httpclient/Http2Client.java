@@ -0,0 +1,421 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.support.BasicRequestProducer;
+import org.apache.hc.core5.http.nio.support.classic.ContentInputStream;
+import org.apache.hc.core5.http.nio.support.classic.SharedInputBuffer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLContext;
+
+/**
+ * HTTP/2 transport multiplexing the requests over a fixed number of connections. Secured targets negotiate h2 using ALPN,
+ * plain targets use h2c with prior knowledge. The number of streams concurrently open on each connection is limited.
+ *
+ * <p>The requests and responses are converted from and to the HttpClient 4 API used by the rest of the sender. Neither the request
+ * nor the response bodies are buffered as a whole, they are streamed through a buffer of {@link #BUFFER_SIZE} bytes with the HTTP/2
+ * flow control applied to the response.</p>
+ */
+public class Http2Client {
+
+   /**
+    * HTTP/2 protocol version reported in the converted responses.
+    */
+   private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+   /**
+    * Connection specific headers that are not allowed in HTTP/2.
+    */
+   private static final Set<String> CONNECTION_HEADERS = new HashSet<>(Arrays.asList("connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade", "host"));
+
+   /**
+    * Size of the buffers streaming the request and response bodies.
+    */
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   /**
+    * Clients, each of them maintaining a single multiplexed connection per route.
+    */
+   private final CloseableHttpAsyncClient[] clients;
+
+   /**
+    * Streams available on the connection of the corresponding client.
+    */
+   private final Semaphore[] streams;
+
+   /**
+    * Round robin counter to select the connection for the next request.
+    */
+   private final AtomicInteger next = new AtomicInteger();
+
+   /**
+    * Creates and starts the clients.
+    *
+    * @param connections
+    *       Number of multiplexed connections.
+    * @param maxConcurrentStreams
+    *       Maximum number of streams concurrently open on a single connection.
+    * @param connectTimeout
+    *       Timeout in milliseconds of the connection establishment, zero means no timeout.
+    * @param sslContext
+    *       The SSL context of the secured connections.
+    * @param tls
+    *       The TLS configuration providing the enabled protocols and cipher suites.
+    */
+   public Http2Client(final int connections, final int maxConcurrentStreams, final int connectTimeout, final SSLContext sslContext, final TlsSettings tls) {
+      clients = new CloseableHttpAsyncClient[connections];
+      streams = new Semaphore[connections];
+
+      final H2Config h2Config = H2Config.custom().setPushEnabled(false).setMaxConcurrentStreams(maxConcurrentStreams).build();
+      final IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(1).build();
+      final RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeout, TimeUnit.MILLISECONDS).build();
+      final ClientTlsStrategyBuilder tlsStrategy = ClientTlsStrategyBuilder.create().setSslContext(sslContext);
+      if (tls.getEnabledProtocols() != null) {
+         tlsStrategy.setTlsVersions(tls.getEnabledProtocols());
+      }
+      if (tls.getEnabledCipherSuites() != null) {
+         tlsStrategy.setCiphers(tls.getEnabledCipherSuites());
+      }
+
+      for (int i = 0; i < connections; i++) {
+         clients[i] = HttpAsyncClients.customHttp2().useSystemProperties().disableCookieManagement().setTlsStrategy(tlsStrategy.build()).setH2Config(h2Config).setIOReactorConfig(ioReactorConfig)
+                                   .setDefaultRequestConfig(requestConfig).build();
+         clients[i].start();
+         streams[i] = new Semaphore(maxConcurrentStreams);
+      }
+   }
+
+   /**
+    * Executes the request and waits for the response. Blocks when there is no free stream on the selected connection.
+    *
+    * @param request
+    *       The request to be executed.
+    * @return The response. Its body is streamed as it arrives and it must be fully read, or its content closed, to free the stream.
+    * @throws Exception
+    *       When the request failed.
+    */
+   public HttpResponse execute(final HttpUriRequest request) throws Exception {
+      final int i = Math.floorMod(next.getAndIncrement(), clients.length);
+      final Semaphore stream = streams[i];
+      final AtomicBoolean released = new AtomicBoolean();
+      final Runnable releaseStream = () -> {
+         if (released.compareAndSet(false, true)) {
+            stream.release();
+         }
+      };
+
+      stream.acquire();
+      final Future<HttpResponse> future;
+      try {
+         future = clients[i].execute(createRequestProducer(request), new StreamingResponseConsumer(releaseStream), new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(final HttpResponse result) {
+               // the stream stays open until the body is received
+            }
+
+            @Override
+            public void failed(final Exception ex) {
+               releaseStream.run();
+            }
+
+            @Override
+            public void cancelled() {
+               releaseStream.run();
+            }
+         });
+      } catch (RuntimeException e) {
+         releaseStream.run();
+         throw e;
+      }
+
+      try {
+         return future.get();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Shuts down all the connections.
+    */
+   public void close() {
+      for (final CloseableHttpAsyncClient client : clients) {
+         client.close(CloseMode.GRACEFUL);
+      }
+   }
+
+   private static BasicRequestProducer createRequestProducer(final HttpUriRequest request) {
+      final org.apache.hc.core5.http.message.BasicHttpRequest result = new org.apache.hc.core5.http.message.BasicHttpRequest(request.getMethod(), request.getURI());
+
+      for (final Header header : request.getAllHeaders()) {
+         if (!CONNECTION_HEADERS.contains(header.getName().toLowerCase())) {
+            result.addHeader(header.getName(), header.getValue());
+         }
+      }
+
+      HttpEntity entity = null;
+      if (request instanceof HttpEntityEnclosingRequest) {
+         entity = ((HttpEntityEnclosingRequest) request).getEntity();
+      }
+
+      return new BasicRequestProducer(result, entity == null ? null : new EntityProducer(entity));
+   }
+
+   private static String getValue(final Header header) {
+      return header == null ? null : header.getValue();
+   }
+
+   /**
+    * Streams an HttpClient 4 request entity, e.g. a file, to the HTTP/2 stream.
+    */
+   private static final class EntityProducer implements AsyncEntityProducer {
+
+      private final HttpEntity entity;
+
+      /**
+       * Data read from the entity and not yet written to the stream.
+       */
+      private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+      private InputStream content;
+
+      private boolean endOfContent;
+
+      private EntityProducer(final HttpEntity entity) {
+         this.entity = entity;
+      }
+
+      @Override
+      public boolean isRepeatable() {
+         return entity.isRepeatable();
+      }
+
+      @Override
+      public long getContentLength() {
+         return entity.getContentLength();
+      }
+
+      @Override
+      public String getContentType() {
+         return getValue(entity.getContentType());
+      }
+
+      @Override
+      public String getContentEncoding() {
+         return getValue(entity.getContentEncoding());
+      }
+
+      @Override
+      public boolean isChunked() {
+         return entity.isChunked();
+      }
+
+      @Override
+      public Set<String> getTrailerNames() {
+         return null;
+      }
+
+      @Override
+      public int available() {
+         return Integer.MAX_VALUE;
+      }
+
+      @Override
+      public void produce(final DataStreamChannel channel) throws IOException {
+         if (content == null) {
+            content = entity.getContent();
+         }
+
+         if (!endOfContent && buffer.hasRemaining()) {
+            final int read = content.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (read < 0) {
+               endOfContent = true;
+            } else {
+               buffer.position(buffer.position() + read);
+            }
+         }
+
+         if (buffer.position() > 0) {
+            buffer.flip();
+            channel.write(buffer);
+            buffer.compact();
+         }
+
+         if (endOfContent && buffer.position() == 0) {
+            channel.endStream();
+            releaseResources();
+         }
+      }
+
+      @Override
+      public void failed(final Exception cause) {
+         releaseResources();
+      }
+
+      @Override
+      public void releaseResources() {
+         // the entity can be sent again when it is repeatable
+         buffer.clear();
+         endOfContent = false;
+         if (content != null) {
+            try {
+               content.close();
+            } catch (IOException e) {
+               // nothing to be done, the entity is not needed any more
+            }
+            content = null;
+         }
+      }
+   }
+
+   /**
+    * Converts the response to the HttpClient 4 API as soon as its headers are received. The body is passed to the reading thread
+    * through a shared buffer, the HTTP/2 flow control window follows the free space in the buffer.
+    */
+   private static final class StreamingResponseConsumer implements AsyncResponseConsumer<HttpResponse> {
+
+      private final SharedInputBuffer buffer = new SharedInputBuffer(BUFFER_SIZE);
+
+      /**
+       * Frees the stream of the connection once the response is received or the exchange fails.
+       */
+      private final Runnable releaseStream;
+
+      /**
+       * Cause of a failure of the exchange, reported to the thread reading the body.
+       */
+      private volatile Exception failure;
+
+      private StreamingResponseConsumer(final Runnable releaseStream) {
+         this.releaseStream = releaseStream;
+      }
+
+      @Override
+      public void consumeResponse(final org.apache.hc.core5.http.HttpResponse response, final EntityDetails entityDetails, final HttpContext context,
+            final FutureCallback<HttpResponse> resultCallback) {
+         final BasicHttpResponse result = new BasicHttpResponse(HTTP_2, response.getCode(), response.getReasonPhrase());
+
+         for (final org.apache.hc.core5.http.Header header : response.getHeaders()) {
+            result.addHeader(header.getName(), header.getValue());
+         }
+
+         if (entityDetails != null) {
+            final String contentType = entityDetails.getContentType();
+            result.setEntity(new InputStreamEntity(new ContentInputStream(buffer) {
+               @Override
+               public int read(final byte[] b, final int off, final int len) throws IOException {
+                  return checkFailure(super.read(b, off, len));
+               }
+
+               @Override
+               public int read() throws IOException {
+                  return checkFailure(super.read());
+               }
+            }, entityDetails.getContentLength(), contentType == null ? null : ContentType.parse(contentType)));
+         } else {
+            releaseStream.run();
+         }
+
+         resultCallback.completed(result);
+      }
+
+      @Override
+      public void informationResponse(final org.apache.hc.core5.http.HttpResponse response, final HttpContext context) {
+         // intermediate responses are not reported
+      }
+
+      @Override
+      public void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+         buffer.updateCapacity(capacityChannel);
+      }
+
+      @Override
+      public void consume(final ByteBuffer src) {
+         buffer.fill(src);
+      }
+
+      @Override
+      public void streamEnd(final List<? extends org.apache.hc.core5.http.Header> trailers) {
+         buffer.markEndStream();
+         releaseStream.run();
+      }
+
+      @Override
+      public void failed(final Exception cause) {
+         failure = cause;
+         buffer.abort();
+         releaseStream.run();
+      }
+
+      @Override
+      public void releaseResources() {
+         releaseStream.run();
+      }
+
+      /**
+       * Turns the end of an aborted body into an error, the shared buffer itself reports it as a regular end of the stream.
+       */
+      private int checkFailure(final int read) throws IOException {
+         if (read < 0 && failure != null) {
+            throw new IOException("Unable to read the response: ", failure);
+         }
+         return read;
+      }
+   }
+}
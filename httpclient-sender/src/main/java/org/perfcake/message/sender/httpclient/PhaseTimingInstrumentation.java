@@ -0,0 +1,198 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Hooks of the blocking HTTP client recording the request phases into the {@link PhaseTimings} found in the request context.
+ * Requests without the timings in their context are not affected. The blocking client resolves and connects in the thread
+ * executing the request, which allows passing the resolution time to the connection phase in a thread local variable.
+ */
+public final class PhaseTimingInstrumentation {
+
+   /**
+    * Duration of the last host name resolution performed by the current thread in nanoseconds.
+    */
+   private static final ThreadLocal<long[]> lastResolution = ThreadLocal.withInitial(() -> new long[1]);
+
+   private PhaseTimingInstrumentation() {
+   }
+
+   private static void recordConnect(final HttpContext context, final long startedAt) {
+      final PhaseTimings timings = PhaseTimings.get(context);
+      final long[] resolution = lastResolution.get();
+
+      if (timings != null) {
+         timings.addDns(resolution[0]);
+         timings.addConnect(System.nanoTime() - startedAt);
+      }
+      resolution[0] = 0;
+   }
+
+   /**
+    * Resolves host names using the system resolver and measures the resolution time.
+    */
+   public static class TimingDnsResolver implements DnsResolver {
+
+      @Override
+      public InetAddress[] resolve(final String host) throws UnknownHostException {
+         final long startedAt = System.nanoTime();
+         try {
+            return SystemDefaultDnsResolver.INSTANCE.resolve(host);
+         } finally {
+            lastResolution.get()[0] = System.nanoTime() - startedAt;
+         }
+      }
+   }
+
+   /**
+    * Opens plain connections and measures the connection establishment.
+    */
+   public static class TimingPlainSocketFactory extends PlainConnectionSocketFactory {
+
+      @Override
+      public Socket connectSocket(final int connectTimeout, final Socket socket, final HttpHost host, final InetSocketAddress remoteAddress, final InetSocketAddress localAddress, final HttpContext context) throws IOException {
+         final long startedAt = System.nanoTime();
+         final Socket connected = super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+         recordConnect(context, startedAt);
+         return connected;
+      }
+   }
+
+   /**
+    * Opens TLS connections and measures the connection establishment and the handshake separately.
+    * All the handshakes are counted regardless of the phase timings being recorded.
+    */
+   public static class TimingSslSocketFactory extends SSLConnectionSocketFactory {
+
+      /**
+       * Handshake counters of the client.
+       */
+      private final TlsStatistics statistics;
+
+      /**
+       * When true, the negotiated sessions are invalidated to prevent their resumption.
+       */
+      private final boolean fullHandshake;
+
+      /**
+       * Creates the factory.
+       *
+       * @param socketFactory
+       *       The factory of the TLS sockets.
+       * @param protocols
+       *       The enabled protocols, null for the defaults.
+       * @param cipherSuites
+       *       The enabled cipher suites, null for the defaults.
+       * @param hostnameVerifier
+       *       The verifier of the server host name.
+       * @param statistics
+       *       The handshake counters.
+       * @param fullHandshake
+       *       True to prevent the resumption of the sessions.
+       */
+      public TimingSslSocketFactory(final SSLSocketFactory socketFactory, final String[] protocols, final String[] cipherSuites, final HostnameVerifier hostnameVerifier,
+            final TlsStatistics statistics, final boolean fullHandshake) {
+         super(socketFactory, protocols, cipherSuites, hostnameVerifier);
+         this.statistics = statistics;
+         this.fullHandshake = fullHandshake;
+      }
+
+      @Override
+      public Socket connectSocket(final int connectTimeout, final Socket socket, final HttpHost host, final InetSocketAddress remoteAddress, final InetSocketAddress localAddress, final HttpContext context) throws IOException {
+         final PhaseTimings timings = PhaseTimings.get(context);
+         final long handshakeBefore = timings == null ? 0 : timings.getTlsHandshakeNanos();
+         final long startedAt = System.nanoTime();
+         final Socket connected = super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+
+         // the handshake recorded by createLayeredSocket() called from the super implementation is not a part of the connection establishment
+         recordConnect(context, startedAt + (timings == null ? 0 : timings.getTlsHandshakeNanos() - handshakeBefore));
+         return connected;
+      }
+
+      @Override
+      public Socket createLayeredSocket(final Socket socket, final String target, final int port, final HttpContext context) throws IOException {
+         final long startedAtMillis = System.currentTimeMillis();
+         final long startedAt = System.nanoTime();
+         final Socket layered = super.createLayeredSocket(socket, target, port, context);
+         final PhaseTimings timings = PhaseTimings.get(context);
+
+         if (timings != null) {
+            timings.addTlsHandshake(System.nanoTime() - startedAt);
+         }
+
+         final SSLSession session = ((SSLSocket) layered).getSession();
+         statistics.record(session, startedAtMillis);
+         if (fullHandshake) {
+            session.invalidate();
+         }
+         return layered;
+      }
+   }
+
+   /**
+    * Executes requests and records the time of sending the request and receiving the response headers.
+    */
+   public static class TimingRequestExecutor extends HttpRequestExecutor {
+
+      @Override
+      protected HttpResponse doSendRequest(final HttpRequest request, final HttpClientConnection connection, final HttpContext context) throws IOException, HttpException {
+         final HttpResponse response = super.doSendRequest(request, connection, context);
+         final PhaseTimings timings = PhaseTimings.get(context);
+
+         if (timings != null) {
+            timings.requestSent();
+         }
+         return response;
+      }
+
+      @Override
+      protected HttpResponse doReceiveResponse(final HttpRequest request, final HttpClientConnection connection, final HttpContext context) throws HttpException, IOException {
+         final HttpResponse response = super.doReceiveResponse(request, connection, context);
+         final PhaseTimings timings = PhaseTimings.get(context);
+
+         if (timings != null) {
+            timings.responseReceived();
+         }
+         return response;
+      }
+   }
+}
@@ -0,0 +1,166 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Durations of the individual phases of a single request execution recorded by {@link PhaseTimingInstrumentation}.
+ * An instance is passed to the client in the request context and it is reused for subsequent requests of the same sender.
+ */
+public class PhaseTimings {
+
+   /**
+    * Name of the request context attribute carrying the timings.
+    */
+   public static final String CONTEXT_ATTRIBUTE = "perfcake.phaseTimings";
+
+   /**
+    * Duration of the host name resolution in nanoseconds.
+    */
+   private long dns;
+
+   /**
+    * Duration of the TCP connection establishment in nanoseconds.
+    */
+   private long connect;
+
+   /**
+    * Duration of the TLS handshake in nanoseconds.
+    */
+   private long tlsHandshake;
+
+   /**
+    * True when a new connection was opened for the request.
+    */
+   private boolean connected;
+
+   /**
+    * Time when the request was completely sent as returned by {@link System#nanoTime()}.
+    */
+   private long requestSentAt;
+
+   /**
+    * Time when the response headers were received as returned by {@link System#nanoTime()}.
+    */
+   private long responseReceivedAt;
+
+   /**
+    * Gets the timings from the request context.
+    *
+    * @param context
+    *       The request context.
+    * @return The timings, or null when they are not recorded for the request.
+    */
+   public static PhaseTimings get(final HttpContext context) {
+      return context == null ? null : (PhaseTimings) context.getAttribute(CONTEXT_ATTRIBUTE);
+   }
+
+   /**
+    * Clears the timings before a new request.
+    */
+   public void reset() {
+      dns = 0;
+      connect = 0;
+      tlsHandshake = 0;
+      connected = false;
+      requestSentAt = 0;
+      responseReceivedAt = 0;
+   }
+
+   void addDns(final long nanos) {
+      dns += nanos;
+   }
+
+   void addConnect(final long nanos) {
+      connect += nanos;
+      connected = true;
+   }
+
+   void addTlsHandshake(final long nanos) {
+      tlsHandshake += nanos;
+   }
+
+   long getTlsHandshakeNanos() {
+      return tlsHandshake;
+   }
+
+   void requestSent() {
+      requestSentAt = System.nanoTime();
+   }
+
+   void responseReceived() {
+      responseReceivedAt = System.nanoTime();
+   }
+
+   /**
+    * Gets the duration of the host name resolution.
+    *
+    * @return The duration in milliseconds, zero when an existing connection was reused.
+    */
+   public double getDnsTime() {
+      return dns / 1_000_000d;
+   }
+
+   /**
+    * Gets the duration of the TCP connection establishment.
+    *
+    * @return The duration in milliseconds, zero when an existing connection was reused.
+    */
+   public double getConnectTime() {
+      return connect / 1_000_000d;
+   }
+
+   /**
+    * Gets the duration of the TLS handshake.
+    *
+    * @return The duration in milliseconds, zero when an existing connection was reused or TLS was not used.
+    */
+   public double getTlsHandshakeTime() {
+      return tlsHandshake / 1_000_000d;
+   }
+
+   /**
+    * Gets the time between sending the request and receiving the response headers.
+    *
+    * @return The time to first byte in milliseconds.
+    */
+   public double getTimeToFirstByte() {
+      return (responseReceivedAt - requestSentAt) / 1_000_000d;
+   }
+
+   /**
+    * Gets the time when the response headers were received.
+    *
+    * @return The time as returned by {@link System#nanoTime()}.
+    */
+   public long getResponseReceivedAt() {
+      return responseReceivedAt;
+   }
+
+   /**
+    * Gets whether the request was sent over a pooled connection.
+    *
+    * @return True if and only if no new connection was opened for the request.
+    */
+   public boolean isConnectionReused() {
+      return !connected;
+   }
+}
@@ -0,0 +1,241 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import java.util.Objects;
+
+/**
+ * Configuration of a pooled HTTP client. Two senders with equal settings and the same target route share the same client.
+ */
+public class PoolSettings {
+
+   /**
+    * Maximum number of connections in the pool.
+    */
+   private int maxConnections = 200;
+
+   /**
+    * Maximum number of connections per a single route.
+    */
+   private int maxConnectionsPerRoute = 200;
+
+   /**
+    * Maximum time in milliseconds a connection is kept alive. The server provided Keep-Alive header is honored when lower.
+    * A negative value means that the connections are kept alive as long as the server allows.
+    */
+   private long keepAliveTimeout = -1;
+
+   /**
+    * Time in milliseconds after which an idle connection is evicted from the pool. Zero or a negative value disables the eviction.
+    */
+   private long idleConnectionTimeout = 30_000;
+
+   /**
+    * Period of inactivity in milliseconds after which a pooled connection is validated before it is leased again.
+    */
+   private int validateAfterInactivity = 2_000;
+
+   /**
+    * Timeout in milliseconds of the connection establishment, zero means no timeout.
+    */
+   private int connectTimeout = 10_000;
+
+   /**
+    * When true, the requests are executed by a non-blocking client driven by {@link #ioThreads} I/O dispatch threads.
+    */
+   private boolean async = false;
+
+   /**
+    * Number of I/O dispatch threads of the non-blocking client.
+    */
+   private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+   /**
+    * When true, the non-blocking client supports HTTP/1.1 request pipelining.
+    */
+   private boolean pipelining = false;
+
+   /**
+    * When true, HTTP/2 is used and the requests are multiplexed over {@link #http2Connections} connections.
+    */
+   private boolean http2 = false;
+
+   /**
+    * Number of multiplexed HTTP/2 connections.
+    */
+   private int http2Connections = 1;
+
+   /**
+    * Maximum number of concurrent streams on a single HTTP/2 connection.
+    */
+   private int maxConcurrentStreams = 100;
+
+   /**
+    * TLS configuration of the secured connections.
+    */
+   private TlsSettings tls = new TlsSettings();
+
+   public int getMaxConnections() {
+      return maxConnections;
+   }
+
+   public PoolSettings setMaxConnections(final int maxConnections) {
+      this.maxConnections = maxConnections;
+      return this;
+   }
+
+   public int getMaxConnectionsPerRoute() {
+      return maxConnectionsPerRoute;
+   }
+
+   public PoolSettings setMaxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+      this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+      return this;
+   }
+
+   public long getKeepAliveTimeout() {
+      return keepAliveTimeout;
+   }
+
+   public PoolSettings setKeepAliveTimeout(final long keepAliveTimeout) {
+      this.keepAliveTimeout = keepAliveTimeout;
+      return this;
+   }
+
+   public long getIdleConnectionTimeout() {
+      return idleConnectionTimeout;
+   }
+
+   public PoolSettings setIdleConnectionTimeout(final long idleConnectionTimeout) {
+      this.idleConnectionTimeout = idleConnectionTimeout;
+      return this;
+   }
+
+   public int getValidateAfterInactivity() {
+      return validateAfterInactivity;
+   }
+
+   public PoolSettings setValidateAfterInactivity(final int validateAfterInactivity) {
+      this.validateAfterInactivity = validateAfterInactivity;
+      return this;
+   }
+
+   public int getConnectTimeout() {
+      return connectTimeout;
+   }
+
+   public PoolSettings setConnectTimeout(final int connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+   }
+
+   public boolean isAsync() {
+      return async;
+   }
+
+   public PoolSettings setAsync(final boolean async) {
+      this.async = async;
+      return this;
+   }
+
+   public int getIoThreads() {
+      return ioThreads;
+   }
+
+   public PoolSettings setIoThreads(final int ioThreads) {
+      this.ioThreads = ioThreads;
+      return this;
+   }
+
+   public boolean isPipelining() {
+      return pipelining;
+   }
+
+   public PoolSettings setPipelining(final boolean pipelining) {
+      this.pipelining = pipelining;
+      return this;
+   }
+
+   public boolean isHttp2() {
+      return http2;
+   }
+
+   public PoolSettings setHttp2(final boolean http2) {
+      this.http2 = http2;
+      return this;
+   }
+
+   public int getHttp2Connections() {
+      return http2Connections;
+   }
+
+   public PoolSettings setHttp2Connections(final int http2Connections) {
+      this.http2Connections = http2Connections;
+      return this;
+   }
+
+   public int getMaxConcurrentStreams() {
+      return maxConcurrentStreams;
+   }
+
+   public PoolSettings setMaxConcurrentStreams(final int maxConcurrentStreams) {
+      this.maxConcurrentStreams = maxConcurrentStreams;
+      return this;
+   }
+
+   public TlsSettings getTls() {
+      return tls;
+   }
+
+   public PoolSettings setTls(final TlsSettings tls) {
+      this.tls = tls;
+      return this;
+   }
+
+   @Override
+   public boolean equals(final Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+      final PoolSettings that = (PoolSettings) o;
+      return maxConnections == that.maxConnections
+            && maxConnectionsPerRoute == that.maxConnectionsPerRoute
+            && keepAliveTimeout == that.keepAliveTimeout
+            && idleConnectionTimeout == that.idleConnectionTimeout
+            && validateAfterInactivity == that.validateAfterInactivity
+            && connectTimeout == that.connectTimeout
+            && async == that.async
+            && ioThreads == that.ioThreads
+            && pipelining == that.pipelining
+            && http2 == that.http2
+            && http2Connections == that.http2Connections
+            && maxConcurrentStreams == that.maxConcurrentStreams
+            && tls.equals(that.tls);
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hash(maxConnections, maxConnectionsPerRoute, keepAliveTimeout, idleConnectionTimeout, validateAfterInactivity, connectTimeout, async, ioThreads, pipelining, http2, http2Connections,
+            maxConcurrentStreams, tls);
+   }
+}
@@ -0,0 +1,205 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.CloseableHttpPipeliningClient;
+import org.apache.http.message.BasicHttpEntityEnclosingRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A batch of requests to the same target executed by a single sender invocation. The requests are either pipelined over
+ * a single HTTP/1.1 connection, or executed concurrently over the connection pool. The completion time of each request
+ * is recorded by the I/O thread.
+ */
+public class RequestBatch {
+
+   /**
+    * The target of the requests.
+    */
+   private final HttpHost target;
+
+   /**
+    * Number of bytes kept from the beginning of each response body, {@link TimedResponseConsumer#WHOLE_BODY} to keep all of them.
+    */
+   private final int keptBytes;
+
+   /**
+    * Buffer the discarded parts of the response bodies are read into.
+    */
+   private final byte[] drainBuffer;
+
+   /**
+    * The requests in origin-form.
+    */
+   private final List<HttpRequest> requests = new ArrayList<>();
+
+   /**
+    * Received responses.
+    */
+   private HttpResponse[] responses;
+
+   /**
+    * Completion times of the requests as returned by {@link System#nanoTime()}.
+    */
+   private long[] completedAt;
+
+   /**
+    * Time of the batch dispatch as returned by {@link System#nanoTime()}.
+    */
+   private long startedAt;
+
+   /**
+    * Creates an empty batch.
+    *
+    * @param uri
+    *       The target URI of the requests.
+    * @param keptBytes
+    *       The number of bytes kept from the beginning of each response body, {@link TimedResponseConsumer#WHOLE_BODY} to keep all of them.
+    * @param drainBuffer
+    *       The buffer to read the discarded parts of the response bodies into.
+    */
+   public RequestBatch(final URI uri, final int keptBytes, final byte[] drainBuffer) {
+      target = URIUtils.extractHost(uri);
+      this.keptBytes = keptBytes;
+      this.drainBuffer = drainBuffer;
+   }
+
+   /**
+    * Adds a request to the batch.
+    *
+    * @param method
+    *       The HTTP method.
+    * @param uri
+    *       The request URI.
+    * @param headers
+    *       The request headers.
+    * @param entity
+    *       The request entity, null when there is none.
+    */
+   public void add(final String method, final URI uri, final Header[] headers, final HttpEntity entity) {
+      final String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+      final String requestUri = uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+      final HttpRequest request;
+
+      if (entity != null) {
+         final BasicHttpEntityEnclosingRequest entityRequest = new BasicHttpEntityEnclosingRequest(method, requestUri);
+         entityRequest.setEntity(entity);
+         request = entityRequest;
+      } else {
+         request = new BasicHttpRequest(method, requestUri);
+      }
+      request.setHeaders(headers);
+
+      requests.add(request);
+   }
+
+   /**
+    * Gets the number of requests in the batch.
+    *
+    * @return The number of requests.
+    */
+   public int size() {
+      return requests.size();
+   }
+
+   /**
+    * Executes all the requests and waits for their responses.
+    *
+    * @param client
+    *       The non-blocking client. It must be a {@link CloseableHttpPipeliningClient} when the requests are pipelined.
+    * @param pipelined
+    *       True to pipeline the requests over a single connection, false to execute them concurrently.
+    * @throws Exception
+    *       When any of the requests failed.
+    */
+   public void execute(final CloseableHttpAsyncClient client, final boolean pipelined) throws Exception {
+      final int size = requests.size();
+      final List<HttpAsyncRequestProducer> producers = new ArrayList<>(size);
+      final List<TimedResponseConsumer> consumers = new ArrayList<>(size);
+
+      responses = new HttpResponse[size];
+      completedAt = new long[size];
+
+      for (int i = 0; i < size; i++) {
+         producers.add(HttpAsyncMethods.create(target, requests.get(i)));
+         consumers.add(new TimedResponseConsumer(completedAt, null, i, keptBytes, drainBuffer));
+      }
+
+      startedAt = System.nanoTime();
+      try {
+         if (pipelined) {
+            final List<HttpResponse> result = ((CloseableHttpPipeliningClient) client).execute(target, producers, consumers, null).get();
+            for (int i = 0; i < size; i++) {
+               responses[i] = result.get(i);
+            }
+         } else {
+            final List<Future<HttpResponse>> futures = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+               futures.add(client.execute(producers.get(i), consumers.get(i), null));
+            }
+            for (int i = 0; i < size; i++) {
+               responses[i] = futures.get(i).get();
+            }
+         }
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Gets the response of the request.
+    *
+    * @param index
+    *       The index of the request.
+    * @return The response.
+    */
+   public HttpResponse getResponse(final int index) {
+      return responses[index];
+   }
+
+   /**
+    * Gets the time from the batch dispatch to the completion of the request.
+    *
+    * @param index
+    *       The index of the request.
+    * @return The response time in milliseconds.
+    */
+   public double getResponseTime(final int index) {
+      return (completedAt[index] - startedAt) / 1_000_000d;
+   }
+}
@@ -0,0 +1,155 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the received HTTP responses by their class (1xx - 5xx) for all the senders connecting to the same target.
+ * The counters start from zero with the first sender and they are discarded when the last sender releases them.
+ */
+public class ResponseCodeCounters {
+
+   /**
+    * Names of the counted response classes, the last one collects codes outside of the standard classes.
+    */
+   private static final String[] CLASSES = { "1xx", "2xx", "3xx", "4xx", "5xx", "other" };
+
+   /**
+    * Counters currently in use, indexed by the target.
+    */
+   private static final Map<String, ResponseCodeCounters> counters = new HashMap<>();
+
+   /**
+    * Key of these counters in {@link #counters}.
+    */
+   private final String target;
+
+   /**
+    * Number of responses in each class.
+    */
+   private final AtomicLongArray responses = new AtomicLongArray(CLASSES.length);
+
+   /**
+    * Number of responses with a code that was not expected.
+    */
+   private final AtomicLong unexpected = new AtomicLong();
+
+   /**
+    * Number of senders using these counters.
+    */
+   private int references = 0;
+
+   private ResponseCodeCounters(final String target) {
+      this.target = target;
+   }
+
+   /**
+    * Obtains the counters of the given target. Each call must be paired with {@link #release()}.
+    *
+    * @param target
+    *       The target.
+    * @return The counters shared by all the senders connecting to the target.
+    */
+   public static ResponseCodeCounters acquire(final String target) {
+      synchronized (counters) {
+         ResponseCodeCounters result = counters.get(target);
+         if (result == null) {
+            result = new ResponseCodeCounters(target);
+            counters.put(target, result);
+         }
+         result.references++;
+
+         return result;
+      }
+   }
+
+   /**
+    * Releases the counters obtained by {@link #acquire(String)}.
+    */
+   public void release() {
+      synchronized (counters) {
+         if (--references == 0) {
+            counters.remove(target, this);
+         }
+      }
+   }
+
+   /**
+    * Gets the number of response classes.
+    *
+    * @return The number of response classes.
+    */
+   public static int getClassCount() {
+      return CLASSES.length;
+   }
+
+   /**
+    * Gets the name of the response class.
+    *
+    * @param index
+    *       The index of the response class.
+    * @return The response class name (e.g. <code>2xx</code>).
+    */
+   public static String getClassName(final int index) {
+      return CLASSES[index];
+   }
+
+   /**
+    * Records a response.
+    *
+    * @param code
+    *       The response code.
+    * @param expected
+    *       Whether the code was expected.
+    * @return The index of the response class the code belongs to.
+    */
+   public int record(final int code, final boolean expected) {
+      final int index = code >= 100 && code < 600 ? code / 100 - 1 : CLASSES.length - 1;
+      responses.incrementAndGet(index);
+      if (!expected) {
+         unexpected.incrementAndGet();
+      }
+      return index;
+   }
+
+   /**
+    * Gets the number of responses in the given class.
+    *
+    * @param index
+    *       The index of the response class.
+    * @return The number of responses.
+    */
+   public long getResponses(final int index) {
+      return responses.get(index);
+   }
+
+   /**
+    * Gets the number of responses with a code that was not expected.
+    *
+    * @return The number of unexpected responses.
+    */
+   public long getUnexpectedResponses() {
+      return unexpected.get();
+   }
+}
@@ -0,0 +1,156 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set of HTTP response codes compiled into a bit set for a constant time lookup.
+ * The specification is a comma separated list of the following items:
+ * <ul>
+ * <li><code>200</code> - a single code,</li>
+ * <li><code>200-299</code> - an inclusive range of codes,</li>
+ * <li><code>2xx</code> - a class of codes,</li>
+ * <li><code>!503</code>, <code>!5xx</code>, <code>!500-502</code> - codes excluded from the set.</li>
+ * </ul>
+ * When there are only exclusions, all the other codes are matched. An empty specification matches any code.
+ */
+public class ResponseCodeMatcher {
+
+   /**
+    * The highest supported response code.
+    */
+   private static final int MAX_CODE = 999;
+
+   /**
+    * The bit set of matched codes.
+    */
+   private final long[] codes = new long[(MAX_CODE >> 6) + 1];
+
+   /**
+    * True when no code was specified and everything matches.
+    */
+   private final boolean matchAll;
+
+   /**
+    * Compiles the specification.
+    *
+    * @param specification
+    *       The comma separated specification of the matched codes.
+    * @throws IllegalArgumentException
+    *       When the specification cannot be parsed.
+    */
+   public ResponseCodeMatcher(final String specification) {
+      final List<String> includes = new ArrayList<>();
+      final List<String> excludes = new ArrayList<>();
+
+      if (specification != null) {
+         for (final String item : specification.split(",")) {
+            final String trimmed = item.trim();
+            if (trimmed.startsWith("!")) {
+               excludes.add(trimmed.substring(1).trim());
+            } else if (!trimmed.isEmpty()) {
+               includes.add(trimmed);
+            }
+         }
+      }
+
+      matchAll = includes.isEmpty() && excludes.isEmpty();
+
+      if (includes.isEmpty()) {
+         set(0, MAX_CODE, true);
+      }
+      for (final String include : includes) {
+         apply(include, true);
+      }
+      for (final String exclude : excludes) {
+         apply(exclude, false);
+      }
+   }
+
+   /**
+    * Checks whether the code is in the set.
+    *
+    * @param code
+    *       The response code.
+    * @return True if and only if the code is matched.
+    */
+   public boolean matches(final int code) {
+      return matchAll || (code >= 0 && code <= MAX_CODE && (codes[code >> 6] & (1L << code)) != 0);
+   }
+
+   /**
+    * Checks whether the matcher accepts any code.
+    *
+    * @return True if and only if no code was specified.
+    */
+   public boolean isMatchAll() {
+      return matchAll;
+   }
+
+   /**
+    * Lists all the codes in the set.
+    *
+    * @return The matched codes in ascending order, empty when all the codes are matched.
+    */
+   public List<Integer> toList() {
+      final List<Integer> result = new ArrayList<>();
+      if (!matchAll) {
+         for (int code = 0; code <= MAX_CODE; code++) {
+            if (matches(code)) {
+               result.add(code);
+            }
+         }
+      }
+      return result;
+   }
+
+   private void apply(final String item, final boolean value) {
+      try {
+         if (item.length() == 3 && item.substring(1).equalsIgnoreCase("xx")) {
+            final int base = Integer.parseInt(item.substring(0, 1)) * 100;
+            set(base, base + 99, value);
+         } else if (item.indexOf('-') > 0) {
+            final String[] bounds = item.split("-", 2);
+            set(Integer.parseInt(bounds[0].trim()), Integer.parseInt(bounds[1].trim()), value);
+         } else {
+            final int code = Integer.parseInt(item);
+            set(code, code, value);
+         }
+      } catch (NumberFormatException e) {
+         throw new IllegalArgumentException("Invalid response code specification: " + item, e);
+      }
+   }
+
+   private void set(final int from, final int to, final boolean value) {
+      if (from < 0 || to > MAX_CODE || from > to) {
+         throw new IllegalArgumentException(String.format("Invalid response code range %d-%d.", from, to));
+      }
+
+      for (int code = from; code <= to; code++) {
+         if (value) {
+            codes[code >> 6] |= 1L << code;
+         } else {
+            codes[code >> 6] &= ~(1L << code);
+         }
+      }
+   }
+}
@@ -0,0 +1,527 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Reference counted pooled HTTP client. Senders hitting the same route with the same {@link PoolSettings} share a single instance
+ * so that the connections are reused among them. The client is shut down when the last sender releases it.
+ * Depending on the settings, either a blocking, a non-blocking (NIO) or an HTTP/2 client is created.
+ */
+public class SharedHttpClient {
+
+   /**
+    * The client's logger.
+    */
+   private static final Logger log = LogManager.getLogger(SharedHttpClient.class);
+
+   /**
+    * Clients currently in use, indexed by their route and settings.
+    */
+   private static final Map<Key, SharedHttpClient> clients = new HashMap<>();
+
+   /**
+    * Maximum number of threads opening the connections of the blocking client in advance.
+    */
+   private static final int WARM_UP_THREADS = 16;
+
+   /**
+    * Key of this client in {@link #clients}, null when the client is not shared.
+    */
+   private final Key key;
+
+   /**
+    * The connection manager backing the blocking client.
+    */
+   private PoolingHttpClientConnectionManager connectionManager;
+
+   /**
+    * The underlying blocking HTTP client, null in the asynchronous mode.
+    */
+   private CloseableHttpClient httpClient;
+
+   /**
+    * The connection manager backing the non-blocking client.
+    */
+   private PoolingNHttpClientConnectionManager asyncConnectionManager;
+
+   /**
+    * The underlying non-blocking HTTP client, null in the blocking mode.
+    */
+   private CloseableHttpAsyncClient httpAsyncClient;
+
+   /**
+    * The HTTP/2 client, null when HTTP/2 is not used.
+    */
+   private Http2Client http2Client;
+
+   /**
+    * Evicts idle connections of the non-blocking client, the blocking client has its own evictor.
+    */
+   private Thread asyncConnectionEvictor;
+
+   /**
+    * Counters of the TLS handshakes performed by this client.
+    */
+   private final TlsStatistics tlsStatistics = new TlsStatistics();
+
+   /**
+    * Number of senders using this client.
+    */
+   private int references = 0;
+
+   /**
+    * Number of connections already opened by {@link #warmUp(URI, int)}.
+    */
+   private int warmConnections = 0;
+
+   /**
+    * Timeout in milliseconds of the connection establishment.
+    */
+   private final int connectTimeout;
+
+   private SharedHttpClient(final Key key, final PoolSettings settings) throws IOException, GeneralSecurityException {
+      this.key = key;
+      this.connectTimeout = settings.getConnectTimeout();
+
+      final SSLContext sslContext = settings.getTls().createSslContext();
+      if (settings.isHttp2()) {
+         http2Client = new Http2Client(settings.getHttp2Connections(), settings.getMaxConcurrentStreams(), settings.getConnectTimeout(), sslContext, settings.getTls());
+      } else if (settings.isAsync()) {
+         initAsyncClient(settings, sslContext);
+      } else {
+         initClient(settings, sslContext);
+      }
+   }
+
+   private void initClient(final PoolSettings settings, final SSLContext sslContext) {
+      final TlsSettings tls = settings.getTls();
+      final Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create()
+            .register("http", new PhaseTimingInstrumentation.TimingPlainSocketFactory())
+            .register("https", new PhaseTimingInstrumentation.TimingSslSocketFactory(sslContext.getSocketFactory(), tls.getEnabledProtocols(), tls.getEnabledCipherSuites(),
+                  getHostnameVerifier(), tlsStatistics, tls.isFullHandshake()))
+            .build();
+
+      // the instrumentation records the request phases only for requests with phase timings in their context
+      connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry, new PhaseTimingInstrumentation.TimingDnsResolver());
+      connectionManager.setMaxTotal(settings.getMaxConnections());
+      connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+      connectionManager.setValidateAfterInactivity(settings.getValidateAfterInactivity());
+
+      // all the connections of the client are opened with the same client certificate, tracking the TLS principal as the connection
+      // state would only prevent the connections opened in advance, or by another sender, from being reused
+      final HttpClientBuilder builder = HttpClients.custom().useSystemProperties().disableCookieManagement().disableContentCompression().disableConnectionState()
+                                                   .setConnectionManager(connectionManager)
+                                                   .setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(settings.getConnectTimeout()).build())
+                                                   .setRequestExecutor(new PhaseTimingInstrumentation.TimingRequestExecutor())
+                                                   .setKeepAliveStrategy(createKeepAliveStrategy(settings.getKeepAliveTimeout()));
+      if (tls.isFullHandshake()) {
+         builder.setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE);
+      }
+      if (settings.getIdleConnectionTimeout() > 0) {
+         builder.evictExpiredConnections().evictIdleConnections(settings.getIdleConnectionTimeout(), TimeUnit.MILLISECONDS);
+      }
+
+      httpClient = builder.build();
+   }
+
+   private void initAsyncClient(final PoolSettings settings, final SSLContext sslContext) throws IOReactorException {
+      final TlsSettings tls = settings.getTls();
+      final Registry<SchemeIOSessionStrategy> sessionStrategyRegistry = RegistryBuilder.<SchemeIOSessionStrategy> create()
+            .register("http", NoopIOSessionStrategy.INSTANCE)
+            .register("https", new CountingSslSessionStrategy(sslContext, tls.getEnabledProtocols(), tls.getEnabledCipherSuites(), getHostnameVerifier(), tlsStatistics,
+                  tls.isFullHandshake()))
+            .build();
+      final IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(settings.getIoThreads()).setConnectTimeout(settings.getConnectTimeout()).build();
+
+      asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig), sessionStrategyRegistry);
+      asyncConnectionManager.setMaxTotal(settings.getMaxConnections());
+      asyncConnectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+
+      if (settings.isPipelining()) {
+         // there is no builder of the pipelining client, it always uses the default keep-alive and connection reuse strategies,
+         // the sender rejects the settings depending on them
+         httpAsyncClient = HttpAsyncClients.createPipelining(asyncConnectionManager, false);
+      } else {
+         final HttpAsyncClientBuilder builder = HttpAsyncClients.custom().useSystemProperties().disableCookieManagement().disableConnectionState()
+                                                                .setConnectionManager(asyncConnectionManager)
+                                                                .setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(settings.getConnectTimeout()).build())
+                                                                .setKeepAliveStrategy(createKeepAliveStrategy(settings.getKeepAliveTimeout()));
+         if (tls.isFullHandshake()) {
+            builder.setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE);
+         }
+         httpAsyncClient = builder.build();
+      }
+      httpAsyncClient.start();
+
+      final long idleTimeout = settings.getIdleConnectionTimeout();
+      if (idleTimeout > 0) {
+         asyncConnectionEvictor = new Thread(() -> {
+            try {
+               while (!Thread.currentThread().isInterrupted()) {
+                  Thread.sleep(idleTimeout);
+                  asyncConnectionManager.closeExpiredConnections();
+                  asyncConnectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+               }
+            } catch (InterruptedException e) {
+               // terminated by release()
+            }
+         }, "PerfCake-HttpAsyncConnectionEvictor");
+         asyncConnectionEvictor.setDaemon(true);
+         asyncConnectionEvictor.start();
+      }
+   }
+
+   /**
+    * Obtains a client for the given route and settings. Each call must be paired with {@link #release()}.
+    *
+    * @param route
+    *       The route (scheme, host and port) the client connects to.
+    * @param settings
+    *       The connection pool settings.
+    * @param shared
+    *       When false, a new client is created that is not shared with any other sender.
+    * @return The client.
+    * @throws IOException
+    *       When it was not possible to start the I/O reactor of the non-blocking client or to load the key or trust store.
+    * @throws GeneralSecurityException
+    *       When it was not possible to initialize the SSL context.
+    */
+   public static SharedHttpClient acquire(final String route, final PoolSettings settings, final boolean shared) throws IOException, GeneralSecurityException {
+      if (!shared) {
+         final SharedHttpClient client = new SharedHttpClient(null, settings);
+         client.references = 1;
+         return client;
+      }
+
+      synchronized (clients) {
+         final Key k = new Key(route, settings);
+         SharedHttpClient client = clients.get(k);
+         if (client == null) {
+            if (log.isDebugEnabled()) {
+               log.debug("Creating a new pooled HTTP client for " + route);
+            }
+            client = new SharedHttpClient(k, settings);
+            clients.put(k, client);
+         }
+         client.references++;
+
+         return client;
+      }
+   }
+
+   /**
+    * Gets the underlying blocking HTTP client.
+    *
+    * @return The HTTP client, null when the client was created in the asynchronous or HTTP/2 mode.
+    */
+   public CloseableHttpClient getHttpClient() {
+      return httpClient;
+   }
+
+   /**
+    * Gets the connection manager of the blocking client.
+    *
+    * @return The connection manager, null when the client was created in the asynchronous or HTTP/2 mode.
+    */
+   public PoolingHttpClientConnectionManager getConnectionManager() {
+      return connectionManager;
+   }
+
+   /**
+    * Gets the underlying non-blocking HTTP client. When pipelining is enabled, the client is a {@link org.apache.http.impl.nio.client.CloseableHttpPipeliningClient}
+    * that ignores the keep-alive timeout and the full TLS handshake settings.
+    *
+    * @return The HTTP client, null when the client was not created in the asynchronous mode.
+    */
+   public CloseableHttpAsyncClient getHttpAsyncClient() {
+      return httpAsyncClient;
+   }
+
+   /**
+    * Gets the connection manager of the non-blocking client.
+    *
+    * @return The connection manager, null when the client was not created in the asynchronous mode.
+    */
+   public PoolingNHttpClientConnectionManager getAsyncConnectionManager() {
+      return asyncConnectionManager;
+   }
+
+   /**
+    * Gets the HTTP/2 client.
+    *
+    * @return The HTTP/2 client, null when HTTP/2 is not used.
+    */
+   public Http2Client getHttp2Client() {
+      return http2Client;
+   }
+
+   /**
+    * Gets the counters of the TLS handshakes performed by this client. The handshakes of the HTTP/2 client are not counted.
+    *
+    * @return The TLS handshake counters.
+    */
+   public TlsStatistics getTlsStatistics() {
+      return tlsStatistics;
+   }
+
+   /**
+    * Opens the given number of connections to the target in advance, including the TLS handshakes, and returns them to the pool,
+    * so that the first requests of a test do not pay for the connection establishment. No requests are sent. A shared client
+    * opens the connections only once, further calls open just the missing ones. The HTTP/2 client establishes its connections
+    * with the first requests and it is not affected. The connections are returned to the pool without any state, the same way
+    * as after the requests, so that they are reused by them.
+    *
+    * @param uri
+    *       The target URI.
+    * @param connections
+    *       The number of connections to open.
+    * @throws IOException
+    *       When it was not possible to open a connection.
+    * @throws InterruptedException
+    *       When interrupted while waiting for the connections.
+    */
+   public synchronized void warmUp(final URI uri, final int connections) throws IOException, InterruptedException {
+      final int missing = connections - warmConnections;
+      if (missing <= 0 || http2Client != null) {
+         return;
+      }
+
+      final HttpHost target = URIUtils.extractHost(uri);
+      final HttpHost host = new HttpHost(target.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(target), target.getSchemeName());
+      // the same route as planned by the client for the requests, otherwise the connections would not be reused
+      final HttpRoute route = new HttpRoute(host, null, "https".equalsIgnoreCase(host.getSchemeName()));
+
+      if (asyncConnectionManager != null) {
+         warmUpAsync(route, missing);
+      } else {
+         warmUp(route, missing);
+      }
+      warmConnections = connections;
+
+      if (log.isDebugEnabled()) {
+         log.debug("Opened " + missing + " HTTP connections to " + host + " in advance.");
+      }
+   }
+
+   private void warmUp(final HttpRoute route, final int connections) throws IOException, InterruptedException {
+      final ExecutorService executor = Executors.newFixedThreadPool(Math.min(connections, WARM_UP_THREADS));
+      final List<Future<HttpClientConnection>> opened = new ArrayList<>(connections);
+      IOException failure = null;
+
+      // all the connections stay leased until the last one is opened, so that each lease creates a new connection
+      for (int i = 0; i < connections; i++) {
+         opened.add(executor.submit(() -> {
+            final HttpClientConnection connection = connectionManager.requestConnection(route, null).get(0, TimeUnit.MILLISECONDS);
+            try {
+               final HttpClientContext context = HttpClientContext.create();
+               connectionManager.connect(connection, route, connectTimeout, context);
+               connectionManager.routeComplete(connection, route, context);
+            } catch (IOException e) {
+               connectionManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+               throw e;
+            }
+            return connection;
+         }));
+      }
+
+      try {
+         for (final Future<HttpClientConnection> connection : opened) {
+            try {
+               connectionManager.releaseConnection(connection.get(), null, 0, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+               if (failure == null) {
+                  failure = new IOException("Unable to open a connection: ", e.getCause());
+               }
+            }
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+
+      if (failure != null) {
+         throw failure;
+      }
+   }
+
+   private void warmUpAsync(final HttpRoute route, final int connections) throws IOException, InterruptedException {
+      final List<Future<NHttpClientConnection>> opened = new ArrayList<>(connections);
+      IOException failure = null;
+
+      // the connections are established concurrently by the I/O reactor
+      for (int i = 0; i < connections; i++) {
+         opened.add(asyncConnectionManager.requestConnection(route, null, connectTimeout, 0, TimeUnit.MILLISECONDS, null));
+      }
+
+      for (final Future<NHttpClientConnection> request : opened) {
+         final NHttpClientConnection connection;
+         try {
+            connection = request.get();
+         } catch (ExecutionException e) {
+            if (failure == null) {
+               failure = new IOException("Unable to open a connection: ", e.getCause());
+            }
+            continue;
+         }
+
+         try {
+            if (!asyncConnectionManager.isRouteComplete(connection)) {
+               // starts the TLS handshake of the secured connections
+               final HttpClientContext context = HttpClientContext.create();
+               asyncConnectionManager.startRoute(connection, route, context);
+               asyncConnectionManager.routeComplete(connection, route, context);
+            }
+         } catch (IOException e) {
+            if (failure == null) {
+               failure = e;
+            }
+         } finally {
+            asyncConnectionManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+         }
+      }
+
+      if (failure != null) {
+         throw failure;
+      }
+   }
+
+   /**
+    * Releases the client. When there are no more senders using it, the client is closed together with all its connections.
+    */
+   public void release() {
+      synchronized (clients) {
+         if (--references > 0) {
+            return;
+         }
+         if (key != null) {
+            clients.remove(key);
+         }
+      }
+
+      if (asyncConnectionEvictor != null) {
+         asyncConnectionEvictor.interrupt();
+      }
+
+      try {
+         if (httpClient != null) {
+            httpClient.close();
+         }
+         if (httpAsyncClient != null) {
+            httpAsyncClient.close();
+         }
+         if (http2Client != null) {
+            http2Client.close();
+         }
+      } catch (IOException e) {
+         log.warn("Unable to close HTTP client: ", e);
+      }
+   }
+
+   private static HostnameVerifier getHostnameVerifier() {
+      return SSLConnectionSocketFactory.getDefaultHostnameVerifier();
+   }
+
+   private static ConnectionKeepAliveStrategy createKeepAliveStrategy(final long keepAliveTimeout) {
+      if (keepAliveTimeout < 0) {
+         return DefaultConnectionKeepAliveStrategy.INSTANCE;
+      }
+
+      return (response, context) -> {
+         final long serverTimeout = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+         return serverTimeout < 0 ? keepAliveTimeout : Math.min(serverTimeout, keepAliveTimeout);
+      };
+   }
+
+   /**
+    * Identifies a shared client.
+    */
+   private static class Key {
+      private final String route;
+      private final PoolSettings settings;
+
+      private Key(final String route, final PoolSettings settings) {
+         this.route = route;
+         this.settings = settings;
+      }
+
+      @Override
+      public boolean equals(final Object o) {
+         if (this == o) {
+            return true;
+         }
+         if (o == null || getClass() != o.getClass()) {
+            return false;
+         }
+         final Key that = (Key) o;
+         return route.equals(that.route) && settings.equals(that.settings);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hash(route, settings);
+      }
+   }
+}
@@ -0,0 +1,191 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.apache.http.ContentTooLongException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Response consumer recording the time when the response was completely received by the I/O thread, and optionally
+ * the time when its headers were received. The times are stored before the response future is completed, so it is visible to the thread waiting for the future.
+ *
+ * <p>Unless the whole body is requested, only the first bytes of the body are kept and the rest is read into a drain buffer
+ * as it arrives, so the body is never held in memory. The response entity is a {@link TruncatedEntity} then. A compressed body
+ * is always kept whole to be decoded by the reader.</p>
+ */
+public class TimedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+   /**
+    * The number of kept bytes meaning that the whole body is kept.
+    */
+   public static final int WHOLE_BODY = -1;
+
+   /**
+    * Completion times as returned by {@link System#nanoTime()}.
+    */
+   private final long[] completedAt;
+
+   /**
+    * Times of receiving the response headers as returned by {@link System#nanoTime()}, null when not recorded.
+    */
+   private final long[] receivedAt;
+
+   /**
+    * Index of the slot in the arrays for this response.
+    */
+   private final int index;
+
+   /**
+    * Number of bytes kept from the beginning of the body, {@link #WHOLE_BODY} to keep all of them.
+    */
+   private final int keptBytes;
+
+   /**
+    * Buffer the discarded part of the body is read into. Its content is never used, so it can be shared.
+    */
+   private final byte[] drainBuffer;
+
+   /**
+    * The received response.
+    */
+   private volatile HttpResponse response;
+
+   /**
+    * The whole body, null when it is not kept.
+    */
+   private volatile SimpleInputBuffer body;
+
+   /**
+    * The kept beginning of the body, null when the whole body is kept.
+    */
+   private volatile ByteBuffer prefix;
+
+   /**
+    * View of {@link #drainBuffer} owned by this consumer.
+    */
+   private volatile ByteBuffer drain;
+
+   /**
+    * Number of bytes of the body received.
+    */
+   private volatile long size;
+
+   /**
+    * Creates the consumer.
+    *
+    * @param completedAt
+    *       The array to store the completion time in.
+    * @param receivedAt
+    *       The array to store the time of receiving the headers in, null when it is not recorded.
+    * @param index
+    *       The index of the slot in the arrays.
+    * @param keptBytes
+    *       The number of bytes kept from the beginning of the body, {@link #WHOLE_BODY} to keep all of them.
+    * @param drainBuffer
+    *       The buffer to read the discarded part of the body into, can be null when the whole body is kept.
+    */
+   public TimedResponseConsumer(final long[] completedAt, final long[] receivedAt, final int index, final int keptBytes, final byte[] drainBuffer) {
+      this.completedAt = completedAt;
+      this.receivedAt = receivedAt;
+      this.index = index;
+      this.keptBytes = keptBytes;
+      this.drainBuffer = drainBuffer;
+   }
+
+   @Override
+   protected void onResponseReceived(final HttpResponse response) {
+      if (receivedAt != null) {
+         receivedAt[index] = System.nanoTime();
+      }
+      this.response = response;
+   }
+
+   @Override
+   protected void onEntityEnclosed(final HttpEntity entity, final ContentType contentType) throws IOException {
+      if (keptBytes == WHOLE_BODY || response.getFirstHeader("Content-Encoding") != null) {
+         long length = entity.getContentLength();
+         if (length > Integer.MAX_VALUE) {
+            throw new ContentTooLongException("Entity content is too long: %,d", length);
+         }
+         if (length < 0) {
+            length = 4096;
+         }
+         body = new SimpleInputBuffer((int) length, HeapByteBufferAllocator.INSTANCE);
+         response.setEntity(new ContentBufferEntity(entity, body));
+      } else {
+         prefix = ByteBuffer.allocate(keptBytes);
+         // a view of its own, the positions of the consumers of a batch must not interfere
+         drain = ByteBuffer.wrap(drainBuffer);
+      }
+   }
+
+   @Override
+   protected void onContentReceived(final ContentDecoder decoder, final IOControl ioControl) throws IOException {
+      if (body != null) {
+         body.consumeContent(decoder);
+         return;
+      }
+
+      int n;
+      while (prefix.hasRemaining()) {
+         n = decoder.read(prefix);
+         if (n <= 0) {
+            return;
+         }
+         size += n;
+      }
+      do {
+         drain.clear();
+         n = decoder.read(drain);
+         if (n > 0) {
+            size += n;
+         }
+      } while (n > 0);
+   }
+
+   @Override
+   protected HttpResponse buildResult(final HttpContext context) {
+      completedAt[index] = System.nanoTime();
+      if (prefix != null) {
+         response.setEntity(new TruncatedEntity(response.getEntity(), prefix.array(), prefix.position(), size));
+      }
+      return response;
+   }
+
+   @Override
+   protected void releaseResources() {
+      response = null;
+      body = null;
+      prefix = null;
+      drain = null;
+   }
+}
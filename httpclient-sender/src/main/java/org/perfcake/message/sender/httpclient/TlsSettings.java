@@ -0,0 +1,291 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Objects;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * TLS configuration of a pooled HTTP client. When no key store, trust store or session cache setting is configured,
+ * the default JVM context configured by the standard <code>javax.net.ssl.*</code> system properties is used.
+ */
+public class TlsSettings {
+
+   /**
+    * Path to the key store with the client certificate.
+    */
+   private String keyStore = null;
+
+   /**
+    * Password of the key store and its keys.
+    */
+   private String keyStorePassword = null;
+
+   /**
+    * Type of the key store.
+    */
+   private String keyStoreType = KeyStore.getDefaultType();
+
+   /**
+    * Path to the trust store with the trusted server certificates.
+    */
+   private String trustStore = null;
+
+   /**
+    * Password of the trust store.
+    */
+   private String trustStorePassword = null;
+
+   /**
+    * Type of the trust store.
+    */
+   private String trustStoreType = KeyStore.getDefaultType();
+
+   /**
+    * Comma separated list of the enabled protocols, null to use the <code>https.protocols</code> system property.
+    */
+   private String protocols = null;
+
+   /**
+    * Comma separated list of the enabled cipher suites, null to use the <code>https.cipherSuites</code> system property.
+    */
+   private String cipherSuites = null;
+
+   /**
+    * Maximum number of cached client sessions, a negative value keeps the JVM default.
+    */
+   private int sessionCacheSize = -1;
+
+   /**
+    * Timeout of the cached client sessions in seconds, a negative value keeps the JVM default.
+    */
+   private int sessionTimeout = -1;
+
+   /**
+    * When true, the sessions are never resumed and each request opens a new connection with a full handshake.
+    */
+   private boolean fullHandshake = false;
+
+   /**
+    * Creates the SSL context according to the settings.
+    *
+    * @return The SSL context, the default JVM context when nothing specific is configured.
+    * @throws GeneralSecurityException
+    *       When it was not possible to initialize the context.
+    * @throws IOException
+    *       When it was not possible to load the key or trust store.
+    */
+   public SSLContext createSslContext() throws GeneralSecurityException, IOException {
+      if (keyStore == null && trustStore == null && sessionCacheSize < 0 && sessionTimeout < 0) {
+         return SSLContext.getDefault();
+      }
+
+      KeyManagerFactory keyManagerFactory = null;
+      if (keyStore != null) {
+         keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+         keyManagerFactory.init(loadStore(keyStore, keyStoreType, keyStorePassword), toChars(keyStorePassword));
+      }
+
+      // a null trust store means the default one
+      final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      trustManagerFactory.init(trustStore == null ? null : loadStore(trustStore, trustStoreType, trustStorePassword));
+
+      final SSLContext context = SSLContext.getInstance("TLS");
+      context.init(keyManagerFactory == null ? null : keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+
+      final SSLSessionContext sessionContext = context.getClientSessionContext();
+      if (sessionCacheSize >= 0) {
+         sessionContext.setSessionCacheSize(sessionCacheSize);
+      }
+      if (sessionTimeout >= 0) {
+         sessionContext.setSessionTimeout(sessionTimeout);
+      }
+
+      return context;
+   }
+
+   /**
+    * Gets the enabled protocols.
+    *
+    * @return The enabled protocols, null for the defaults.
+    */
+   public String[] getEnabledProtocols() {
+      return split(protocols != null ? protocols : System.getProperty("https.protocols"));
+   }
+
+   /**
+    * Gets the enabled cipher suites.
+    *
+    * @return The enabled cipher suites, null for the defaults.
+    */
+   public String[] getEnabledCipherSuites() {
+      return split(cipherSuites != null ? cipherSuites : System.getProperty("https.cipherSuites"));
+   }
+
+   private static KeyStore loadStore(final String path, final String type, final String password) throws GeneralSecurityException, IOException {
+      final KeyStore store = KeyStore.getInstance(type);
+      try (InputStream in = new FileInputStream(path)) {
+         store.load(in, toChars(password));
+      }
+      return store;
+   }
+
+   private static char[] toChars(final String password) {
+      return password == null ? null : password.toCharArray();
+   }
+
+   private static String[] split(final String value) {
+      return value == null || value.trim().isEmpty() ? null : value.trim().split(" *, *");
+   }
+
+   public String getKeyStore() {
+      return keyStore;
+   }
+
+   public TlsSettings setKeyStore(final String keyStore) {
+      this.keyStore = keyStore;
+      return this;
+   }
+
+   public String getKeyStorePassword() {
+      return keyStorePassword;
+   }
+
+   public TlsSettings setKeyStorePassword(final String keyStorePassword) {
+      this.keyStorePassword = keyStorePassword;
+      return this;
+   }
+
+   public String getKeyStoreType() {
+      return keyStoreType;
+   }
+
+   public TlsSettings setKeyStoreType(final String keyStoreType) {
+      this.keyStoreType = keyStoreType;
+      return this;
+   }
+
+   public String getTrustStore() {
+      return trustStore;
+   }
+
+   public TlsSettings setTrustStore(final String trustStore) {
+      this.trustStore = trustStore;
+      return this;
+   }
+
+   public String getTrustStorePassword() {
+      return trustStorePassword;
+   }
+
+   public TlsSettings setTrustStorePassword(final String trustStorePassword) {
+      this.trustStorePassword = trustStorePassword;
+      return this;
+   }
+
+   public String getTrustStoreType() {
+      return trustStoreType;
+   }
+
+   public TlsSettings setTrustStoreType(final String trustStoreType) {
+      this.trustStoreType = trustStoreType;
+      return this;
+   }
+
+   public String getProtocols() {
+      return protocols;
+   }
+
+   public TlsSettings setProtocols(final String protocols) {
+      this.protocols = protocols;
+      return this;
+   }
+
+   public String getCipherSuites() {
+      return cipherSuites;
+   }
+
+   public TlsSettings setCipherSuites(final String cipherSuites) {
+      this.cipherSuites = cipherSuites;
+      return this;
+   }
+
+   public int getSessionCacheSize() {
+      return sessionCacheSize;
+   }
+
+   public TlsSettings setSessionCacheSize(final int sessionCacheSize) {
+      this.sessionCacheSize = sessionCacheSize;
+      return this;
+   }
+
+   public int getSessionTimeout() {
+      return sessionTimeout;
+   }
+
+   public TlsSettings setSessionTimeout(final int sessionTimeout) {
+      this.sessionTimeout = sessionTimeout;
+      return this;
+   }
+
+   public boolean isFullHandshake() {
+      return fullHandshake;
+   }
+
+   public TlsSettings setFullHandshake(final boolean fullHandshake) {
+      this.fullHandshake = fullHandshake;
+      return this;
+   }
+
+   @Override
+   public boolean equals(final Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+      final TlsSettings that = (TlsSettings) o;
+      return Objects.equals(keyStore, that.keyStore)
+            && Objects.equals(keyStorePassword, that.keyStorePassword)
+            && Objects.equals(keyStoreType, that.keyStoreType)
+            && Objects.equals(trustStore, that.trustStore)
+            && Objects.equals(trustStorePassword, that.trustStorePassword)
+            && Objects.equals(trustStoreType, that.trustStoreType)
+            && Objects.equals(protocols, that.protocols)
+            && Objects.equals(cipherSuites, that.cipherSuites)
+            && sessionCacheSize == that.sessionCacheSize
+            && sessionTimeout == that.sessionTimeout
+            && fullHandshake == that.fullHandshake;
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hash(keyStore, keyStorePassword, keyStoreType, trustStore, trustStorePassword, trustStoreType, protocols, cipherSuites, sessionCacheSize, sessionTimeout, fullHandshake);
+   }
+}
@@ -0,0 +1,73 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Counts the TLS handshakes performed by a pooled HTTP client.
+ * A handshake is considered abbreviated (resumed) when the negotiated session had been created before the handshake started.
+ */
+public class TlsStatistics {
+
+   /**
+    * Number of all the handshakes.
+    */
+   private final AtomicLong handshakes = new AtomicLong();
+
+   /**
+    * Number of the handshakes that resumed a cached session.
+    */
+   private final AtomicLong resumedHandshakes = new AtomicLong();
+
+   /**
+    * Records a completed handshake.
+    *
+    * @param session
+    *       The negotiated session.
+    * @param startedAt
+    *       The time the handshake started in milliseconds.
+    */
+   public void record(final SSLSession session, final long startedAt) {
+      handshakes.incrementAndGet();
+      if (session.getCreationTime() < startedAt) {
+         resumedHandshakes.incrementAndGet();
+      }
+   }
+
+   /**
+    * Gets the number of all the handshakes.
+    *
+    * @return The number of handshakes.
+    */
+   public long getHandshakes() {
+      return handshakes.get();
+   }
+
+   /**
+    * Gets the number of the handshakes that resumed a cached session.
+    *
+    * @return The number of resumed handshakes.
+    */
+   public long getResumedHandshakes() {
+      return resumedHandshakes.get();
+   }
+}
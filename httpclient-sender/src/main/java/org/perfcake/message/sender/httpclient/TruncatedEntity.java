@@ -0,0 +1,103 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Response entity of which only the beginning was kept while it was received, the rest was discarded.
+ * The size of the whole body is recorded.
+ */
+public class TruncatedEntity extends AbstractHttpEntity {
+
+   /**
+    * The kept beginning of the body.
+    */
+   private final byte[] prefix;
+
+   /**
+    * Number of valid bytes in {@link #prefix}.
+    */
+   private final int length;
+
+   /**
+    * Size of the whole body.
+    */
+   private final long size;
+
+   /**
+    * Creates the entity.
+    *
+    * @param entity
+    *       The received entity to take the content type from.
+    * @param prefix
+    *       The kept beginning of the body.
+    * @param length
+    *       The number of valid bytes in the prefix.
+    * @param size
+    *       The number of bytes of the whole body.
+    */
+   public TruncatedEntity(final HttpEntity entity, final byte[] prefix, final int length, final long size) {
+      this.prefix = prefix;
+      this.length = length;
+      this.size = size;
+      setContentType(entity.getContentType());
+   }
+
+   /**
+    * Gets the number of bytes of the whole body as it was received.
+    *
+    * @return The size of the body.
+    */
+   public long getSize() {
+      return size;
+   }
+
+   @Override
+   public boolean isRepeatable() {
+      return true;
+   }
+
+   @Override
+   public long getContentLength() {
+      return length;
+   }
+
+   @Override
+   public InputStream getContent() {
+      return new ByteArrayInputStream(prefix, 0, length);
+   }
+
+   @Override
+   public void writeTo(final OutputStream out) throws IOException {
+      out.write(prefix, 0, length);
+   }
+
+   @Override
+   public boolean isStreaming() {
+      return false;
+   }
+}
@@ -21,14 +21,27 @@ package org.perfcake.message.sender;
 
 import org.perfcake.PerfCakeException;
 import org.perfcake.message.Message;
+import org.perfcake.message.sender.httpclient.ArrivalSchedule;
+import org.perfcake.message.sender.httpclient.CookieJar;
+import org.perfcake.message.sender.httpclient.CookieSessionStore;
+import org.perfcake.message.sender.httpclient.DecodingEntity;
+import org.perfcake.message.sender.httpclient.PhaseTimings;
+import org.perfcake.message.sender.httpclient.PoolSettings;
+import org.perfcake.message.sender.httpclient.RequestBatch;
+import org.perfcake.message.sender.httpclient.ResponseCodeCounters;
+import org.perfcake.message.sender.httpclient.ResponseCodeMatcher;
+import org.perfcake.message.sender.httpclient.SharedHttpClient;
+import org.perfcake.message.sender.httpclient.TimedResponseConsumer;
+import org.perfcake.message.sender.httpclient.TlsSettings;
+import org.perfcake.message.sender.httpclient.TlsStatistics;
+import org.perfcake.message.sender.httpclient.TruncatedEntity;
 import org.perfcake.reporting.MeasurementUnit;
 import org.perfcake.util.StringTemplate;
 import org.perfcake.util.Utils;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
@@ -37,29 +50,42 @@ import org.apache.http.client.methods.HttpOptions;
 import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpTrace;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.HeaderGroup;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.entity.NFileEntity;
 import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
-import java.net.CookieManager;
-import java.net.CookiePolicy;
-import java.net.HttpCookie;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 /**
  * Sends messages via HTTP protocol.
@@ -79,342 +105,2315 @@ public class HttpClientSender extends AbstractSender {
     */
    private static final String COOKIES_HEADER = "Set-Cookie";
 
+   /**
+    * Name of the measurement result carrying the response time measured by the I/O thread in the asynchronous mode.
+    */
+   public static final String RESPONSE_TIME_RESULT = "ResponseTime";
+
+   /**
+    * Name of the measurement result carrying the number of bytes of the received response body.
+    */
+   public static final String RESPONSE_SIZE_RESULT = "ResponseSize";
+
+   /**
+    * Name of the measurement result carrying the number of requests sent in a batch.
+    */
+   public static final String BATCH_SIZE_RESULT = "BatchSize";
+
+   /**
+    * Name of the measurement result carrying the list of response times of the requests in a batch.
+    */
+   public static final String BATCH_RESPONSE_TIMES_RESULT = "BatchResponseTimes";
+
+   /**
+    * Name of the measurement result carrying the minimal response time of the requests in a batch.
+    */
+   public static final String BATCH_MIN_RESPONSE_TIME_RESULT = "BatchMinResponseTime";
+
+   /**
+    * Name of the measurement result carrying the average response time of the requests in a batch.
+    */
+   public static final String BATCH_AVG_RESPONSE_TIME_RESULT = "BatchAvgResponseTime";
+
+   /**
+    * Name of the measurement result carrying the maximal response time of the requests in a batch.
+    */
+   public static final String BATCH_MAX_RESPONSE_TIME_RESULT = "BatchMaxResponseTime";
+
+   /**
+    * Name of the measurement result carrying the received response code.
+    */
+   public static final String RESPONSE_CODE_RESULT = "ResponseCode";
+
+   /**
+    * Name of the measurement result carrying the total number of unexpected response codes received from the target.
+    */
+   public static final String UNEXPECTED_RESPONSES_RESULT = "UnexpectedResponses";
+
+   /**
+    * Name of the measurement result carrying the duration of the host name resolution.
+    */
+   public static final String DNS_TIME_RESULT = "DnsTime";
+
+   /**
+    * Name of the measurement result carrying the duration of the TCP connection establishment.
+    */
+   public static final String CONNECT_TIME_RESULT = "ConnectTime";
+
+   /**
+    * Name of the measurement result carrying the duration of the TLS handshake.
+    */
+   public static final String TLS_HANDSHAKE_TIME_RESULT = "TlsHandshakeTime";
+
+   /**
+    * Name of the measurement result carrying the time between sending the request and receiving the response headers.
+    */
+   public static final String TIME_TO_FIRST_BYTE_RESULT = "TimeToFirstByte";
+
+   /**
+    * Name of the measurement result carrying the time of receiving the response body.
+    */
+   public static final String TRANSFER_TIME_RESULT = "TransferTime";
+
+   /**
+    * Name of the measurement result carrying the flag whether the request was sent over a pooled connection.
+    */
+   public static final String CONNECTION_REUSED_RESULT = "ConnectionReused";
+
+   /**
+    * Name of the measurement result carrying the number of bytes of the response body received on the wire. In the batch mode,
+    * the sum over all the responses of the batch.
+    */
+   public static final String WIRE_SIZE_RESULT = "WireSize";
+
+   /**
+    * Name of the measurement result carrying the time spent in the decompression of the response body. In the batch mode,
+    * the sum over all the responses of the batch.
+    */
+   public static final String DECOMPRESSION_TIME_RESULT = "DecompressionTime";
+
+   /**
+    * Name of the measurement result carrying the flag whether the response body was compressed. In the batch mode,
+    * whether any of the responses of the batch was compressed.
+    */
+   public static final String RESPONSE_COMPRESSED_RESULT = "ResponseCompressed";
+
+   /**
+    * Name of the measurement result carrying the total number of TLS handshakes performed by the client.
+    */
+   public static final String TLS_HANDSHAKES_RESULT = "TlsHandshakes";
+
+   /**
+    * Name of the measurement result carrying the total number of TLS handshakes that resumed a cached session.
+    */
+   public static final String TLS_RESUMED_HANDSHAKES_RESULT = "TlsResumedHandshakes";
+
+   /**
+    * Name of the measurement result carrying the latency measured from the intended start time in the open model.
+    * It is also the prefix of the reported percentiles of the corrected latencies (e.g. <code>CorrectedLatencyP99.9</code>).
+    */
+   public static final String CORRECTED_LATENCY_RESULT = "CorrectedLatency";
+
+   /**
+    * Name of the measurement result carrying the latency measured from the actual start time in the open model.
+    * It is also the prefix of the reported percentiles of the uncorrected latencies (e.g. <code>UncorrectedLatencyP99.9</code>).
+    */
+   public static final String UNCORRECTED_LATENCY_RESULT = "UncorrectedLatency";
+
+   /**
+    * Names of the measurement results carrying the total number of responses in each response class received from the target.
+    */
+   private static final String[] RESPONSE_CLASS_RESULTS = new String[ResponseCodeCounters.getClassCount()];
+
+   static {
+      for (int i = 0; i < RESPONSE_CLASS_RESULTS.length; i++) {
+         RESPONSE_CLASS_RESULTS[i] = "Responses" + ResponseCodeCounters.getClassName(i);
+      }
+   }
+
    /**
     * The URL where the HTTP request is sent.
     */
    private URL url;
 
    /**
-    * The HTTP method that will be used.
+    * The HTTP method that will be used.
+    */
+   private Method method = Method.POST;
+
+   /**
+    * A string template determining the HTTP method to be used dynamically for each request.
+    * If not configured (set to null), static configuration in {@link #method} is used instead.
+    */
+   private StringTemplate dynamicMethod = null;
+
+   /**
+    * HTTP method resolved from a dynamic method template without any placeholders, null when the template is really dynamic.
+    */
+   private Method constantDynamicMethod = null;
+
+   /**
+    * HTTP method that should be used for the current send operation, pre-calculated in {@link #preSend(Message, Properties)}.
+    */
+   private Method currentMethod;
+
+   /**
+    * The pooled HTTP client obtained in {@link #doInit(Properties)}.
+    */
+   private SharedHttpClient sharedHttpClient;
+
+   /**
+    * When true, the HTTP client and its connection pool are shared among all the sender instances connecting to the same target.
+    */
+   private boolean sharedConnectionPool = true;
+
+   /**
+    * Maximum number of connections in the connection pool.
+    */
+   private int maxConnections = 200;
+
+   /**
+    * Maximum number of connections per a single route in the connection pool.
+    */
+   private int maxConnectionsPerRoute = 200;
+
+   /**
+    * Number of connections to the target opened during the initialization, zero means that the connections are opened on demand.
+    */
+   private int warmUpConnections = 0;
+
+   /**
+    * Number of times the first request is sent by each sender before the measurement starts. The responses are read and discarded.
+    */
+   private int warmUpIterations = 0;
+
+   /**
+    * Whether the warm-up iterations have already been performed.
+    */
+   private boolean warmedUp;
+
+   /**
+    * True while the warm-up iterations are being sent, their responses are not counted.
+    */
+   private boolean warmingUp = false;
+
+   /**
+    * Maximum time in milliseconds a connection is kept alive. A negative value means that the server provided Keep-Alive header is used.
+    */
+   private long keepAliveTimeout = -1;
+
+   /**
+    * Time in milliseconds after which an idle connection is closed and evicted from the pool. Zero or a negative value disables the eviction.
+    */
+   private long idleConnectionTimeout = 30_000;
+
+   /**
+    * Period of inactivity in milliseconds after which a pooled connection is validated before it is reused.
+    */
+   private int validateAfterInactivity = 2_000;
+
+   /**
+    * Timeout in milliseconds of the connection establishment, zero means no timeout.
+    */
+   private int connectTimeout = 10_000;
+
+   /**
+    * When true, the requests are dispatched by a non-blocking client with a fixed number of I/O threads instead of a socket
+    * being held by each sender thread for the whole round trip.
+    */
+   private boolean async = false;
+
+   /**
+    * Number of I/O dispatch threads used in the asynchronous mode.
+    */
+   private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+   /**
+    * Number of requests sent by a single sender invocation. Values greater than 1 enable the batch mode, which cannot be combined with {@link #http2}.
+    */
+   private int batchSize = 1;
+
+   /**
+    * When set, the message payload is split by this separator and each part is sent as a separate request of a batch.
+    */
+   private String batchSeparator = null;
+
+   /**
+    * When true, the requests of a batch are pipelined over a single HTTP/1.1 connection. Otherwise, they are sent
+    * concurrently over the connection pool. The pipelining client always uses the keep-alive duration provided by the server,
+    * so it cannot be combined with {@link #keepAliveTimeout} or a full TLS handshake of each request.
+    */
+   private boolean pipelining = false;
+
+   /**
+    * When true, HTTP/2 is used (h2 for https targets, h2c with prior knowledge for http targets) and the requests of all
+    * the senders are multiplexed over {@link #http2Connections} connections.
+    */
+   private boolean http2 = false;
+
+   /**
+    * Number of multiplexed HTTP/2 connections.
+    */
+   private int http2Connections = 1;
+
+   /**
+    * Maximum number of concurrent streams on a single HTTP/2 connection. Further requests wait for a stream to be freed.
+    */
+   private int maxConcurrentStreams = 100;
+
+   /**
+    * Value of the <code>Accept-Encoding</code> request header advertising the supported response compressions. Null or empty
+    * means that no compression is requested. A header set in the message takes precedence.
+    */
+   private String acceptEncoding = "gzip, deflate";
+
+   /**
+    * When true, the wire size of the response body, the decompression time and whether the response was compressed are
+    * reported as measurement results.
+    */
+   private boolean compressionMetrics = false;
+
+   /**
+    * TLS configuration of the secured connections.
+    */
+   private final TlsSettings tls = new TlsSettings();
+
+   /**
+    * When true, the total numbers of the TLS handshakes performed by the client are reported as measurement results.
+    */
+   private boolean countTlsHandshakes = false;
+
+   /**
+    * When true, the durations of the individual request phases are reported as measurement results.
+    */
+   private boolean phaseTimings = false;
+
+   /**
+    * Phase timings of the current request, reused for all the requests of this sender.
+    */
+   private final PhaseTimings requestPhaseTimings = new PhaseTimings();
+
+   /**
+    * Request context passing {@link #requestPhaseTimings} to the blocking client.
+    */
+   private HttpClientContext phaseTimingsContext;
+
+   /**
+    * Arrival rate of the requests in requests per second for all the senders connecting to the same target.
+    * A positive value enables the open model, in which the requests are started according to a fixed schedule instead of
+    * immediately after the previous ones.
+    */
+   private double arrivalRate = 0;
+
+   /**
+    * Arrival rate at the beginning of the ramp up in requests per second.
+    */
+   private double initialArrivalRate = 0;
+
+   /**
+    * Duration of the linear ramp up from {@link #initialArrivalRate} to {@link #arrivalRate} in milliseconds. Zero means
+    * a constant arrival rate from the beginning.
+    */
+   private long rampUpPeriod = 0;
+
+   /**
+    * Comma separated list of the latency percentiles reported in the open model.
+    */
+   private String latencyPercentiles = "50,90,99,99.9";
+
+   /**
+    * The schedule of the requests in the open model, null in the closed model.
+    */
+   private ArrivalSchedule arrivalSchedule;
+
+   /**
+    * Names of the measurement results carrying the percentiles of the corrected latencies.
+    */
+   private String[] correctedPercentileResults;
+
+   /**
+    * Names of the measurement results carrying the percentiles of the uncorrected latencies.
+    */
+   private String[] uncorrectedPercentileResults;
+
+   /**
+    * Intended start time of the current request in the open model as returned by {@link System#nanoTime()}.
+    */
+   private long intendedStart;
+
+   /**
+    * Actual start time of the current request in the open model as returned by {@link System#nanoTime()}.
+    */
+   private long actualStart;
+
+   private HttpUriRequest currentRequest;
+   private HttpResponse currentHttpResponse;
+
+   /**
+    * Enumeration on available HTTP methods.
+    */
+   public static enum Method {
+      GET, POST, HEAD, OPTIONS, PUT, DELETE, TRACE, PATCH
+   }
+
+   /**
+    * HTTP methods indexed by their upper and lower case names for a fast lookup of dynamically determined methods.
+    */
+   private static final Map<String, Method> METHODS = new HashMap<>();
+
+   static {
+      for (final Method m : Method.values()) {
+         METHODS.put(m.name(), m);
+         METHODS.put(m.name().toLowerCase(), m);
+      }
+   }
+
+   /**
+    * Determines what is done with the response body.
+    */
+   public static enum ResponseHandling {
+      /**
+       * The body is read into a reusable buffer and thrown away, only its size is recorded.
+       */
+      DISCARD,
+
+      /**
+       * The body is returned as a byte array.
+       */
+      BYTES,
+
+      /**
+       * The body is decoded and returned as a string.
+       */
+      STRING,
+
+      /**
+       * Only the first {@link #responsePrefixSize} bytes of the body are decoded and returned as a string, the rest is discarded.
+       */
+      PREFIX
+   }
+
+   /**
+    * What is done with the response body. In the asynchronous and batch modes, the discarded parts of the body are drained
+    * by the I/O threads as they arrive, except for a compressed body that is received whole to be decoded.
+    */
+   private ResponseHandling responseHandling = ResponseHandling.STRING;
+
+   /**
+    * Number of bytes of the response body kept in the {@link ResponseHandling#PREFIX} mode.
+    */
+   private int responsePrefixSize = 1024;
+
+   /**
+    * Buffer used to drain the discarded parts of the response bodies.
+    */
+   private final byte[] drainBuffer = new byte[8192];
+
+   /**
+    * The response codes that are expected to be returned by HTTP response.
+    */
+   private ResponseCodeMatcher expectedResponseCodeMatcher = new ResponseCodeMatcher(null);
+
+   /**
+    * When true, an unexpected response code fails the request. Otherwise, it is only counted.
+    */
+   private boolean failOnUnexpectedResponseCode = true;
+
+   /**
+    * When true, the responses are counted by their class and the counters are reported as measurement results.
+    */
+   private boolean countResponseCodes = false;
+
+   /**
+    * Response counters of the target, used when {@link #countResponseCodes} is enabled.
+    */
+   private ResponseCodeCounters responseCodeCounters;
+
+   /**
+    * The property for expected response codes.
+    */
+   private String expectedResponseCodes = null;
+
+   /**
+    * When true, cookies are stored between HTTP requests.
+    */
+   private boolean storeCookies = false;
+
+   /**
+    * A string template determining the session (virtual user) the cookies belong to. When not set, each sender thread
+    * is a separate session.
+    */
+   private String cookieSession = null;
+
+   /**
+    * The compiled {@link #cookieSession} template.
+    */
+   private StringTemplate cookieSessionTemplate = null;
+
+   /**
+    * Maximum number of sessions with stored cookies. The least recently used sessions are evicted when exceeded.
+    */
+   private int maxCookieSessions = 10_000;
+
+   /**
+    * The shared store of the session cookies, obtained in {@link #doInit(Properties)} when the cookies are stored.
+    */
+   private CookieSessionStore cookieSessionStore;
+
+   /**
+    * Cookies of the session of the current send operation.
+    */
+   private CookieJar currentCookieJar;
+
+   /**
+    * The target URI, computed once in {@link #doInit(Properties)}.
+    */
+   private URI uri;
+
+   /**
+    * Content type of the request payload. A text type without an explicit charset is encoded in the default encoding.
+    */
+   private String contentType = "text/plain";
+
+   /**
+    * Content type of the request payload parsed in {@link #doInit(Properties)}.
+    */
+   private ContentType requestContentType;
+
+   /**
+    * Charset used to encode textual payloads.
+    */
+   private Charset payloadCharset;
+
+   /**
+    * When set, the content of this file is streamed as the body of each request instead of the message payload.
+    */
+   private File payloadFile = null;
+
+   /**
+    * When true, the request body is sent using the chunked transfer encoding instead of a known content length.
+    */
+   private boolean chunked = false;
+
+   /**
+    * Reusable requests, one per HTTP method, created on their first use.
+    */
+   private final Map<Method, HttpRequestBase> requests = new EnumMap<>(Method.class);
+
+   /**
+    * The message the cached headers and entity were computed for.
+    */
+   private Message cachedMessage;
+
+   /**
+    * The payload of {@link #cachedMessage} at the time the entity was computed.
+    */
+   private Serializable cachedPayload;
+
+   /**
+    * HTTP headers computed from the properties and headers of {@link #cachedMessage}.
+    */
+   private Header[] cachedHeaders;
+
+   /**
+    * Request entity with the encoded payload of {@link #cachedMessage}.
+    */
+   private HttpEntity cachedEntity;
+
+   /**
+    * Request entities with the encoded parts of the payload of {@link #cachedMessage} split by {@link #batchSeparator}.
+    */
+   private HttpEntity[] cachedBatchEntities;
+
+   /**
+    * Size of the response body read by {@link #readResponse(HttpEntity)}.
+    */
+   private long responseSize;
+
+   /**
+    * Number of bytes of the response body received on the wire by {@link #processResponse(MeasurementUnit)}.
+    */
+   private long responseWireSize;
+
+   /**
+    * Time in milliseconds spent in the decompression of the response body by {@link #processResponse(MeasurementUnit)}.
+    */
+   private double responseDecompressionTime;
+
+   /**
+    * Whether the response body read by {@link #processResponse(MeasurementUnit)} was compressed.
+    */
+   private boolean responseCompressed;
+
+   @Override
+   public void doInit(final Properties messageAttributes) throws PerfCakeException {
+      final String targetUrl = safeGetTarget(messageAttributes);
+      try {
+         if (log.isDebugEnabled()) {
+            log.debug("Setting target URL to: " + targetUrl);
+         }
+         url = new URL(targetUrl);
+         uri = url.toURI();
+      } catch (MalformedURLException | URISyntaxException e) {
+         throw new PerfCakeException(String.format("Cannot initialize HTTP connection, invalid URL %s: ", targetUrl), e);
+      }
+
+      try {
+         requestContentType = ContentType.parse(contentType);
+      } catch (RuntimeException e) {
+         throw new PerfCakeException("Invalid content type: " + contentType, e);
+      }
+      if (requestContentType.getCharset() == null && requestContentType.getMimeType().startsWith("text/")) {
+         requestContentType = requestContentType.withCharset(Utils.getDefaultEncoding());
+      }
+      payloadCharset = requestContentType.getCharset() != null ? requestContentType.getCharset() : Charset.forName(Utils.getDefaultEncoding());
+
+      if (payloadFile != null && !payloadFile.canRead()) {
+         throw new PerfCakeException("Cannot read the payload file: " + payloadFile.getAbsolutePath());
+      }
+
+      if (http2 && isBatch()) {
+         throw new PerfCakeException("The batch mode is not supported with HTTP/2, the requests are multiplexed over the HTTP/2 connections instead.");
+      }
+      if (pipelining && isBatch() && (keepAliveTimeout >= 0 || tls.isFullHandshake())) {
+         throw new PerfCakeException("The pipelined batch mode keeps the connections alive as long as the server allows, it supports neither keepAliveTimeout nor tlsFullHandshake.");
+      }
+
+      if (countResponseCodes) {
+         responseCodeCounters = ResponseCodeCounters.acquire(targetUrl);
+      }
+      if (storeCookies) {
+         cookieSessionStore = CookieSessionStore.acquire();
+      }
+      if (phaseTimings) {
+         phaseTimingsContext = HttpClientContext.create();
+         phaseTimingsContext.setAttribute(PhaseTimings.CONTEXT_ATTRIBUTE, requestPhaseTimings);
+      }
+      requests.clear();
+      cachedMessage = null;
+      cachedPayload = null;
+
+      final PoolSettings poolSettings = new PoolSettings().setMaxConnections(maxConnections)
+                                                          .setMaxConnectionsPerRoute(maxConnectionsPerRoute)
+                                                          .setKeepAliveTimeout(keepAliveTimeout)
+                                                          .setIdleConnectionTimeout(idleConnectionTimeout)
+                                                          .setValidateAfterInactivity(validateAfterInactivity)
+                                                          .setConnectTimeout(connectTimeout)
+                                                          .setAsync(async || isBatch())
+                                                          .setPipelining(pipelining && isBatch())
+                                                          .setIoThreads(ioThreads)
+                                                          .setHttp2(http2)
+                                                          .setHttp2Connections(http2Connections)
+                                                          .setMaxConcurrentStreams(maxConcurrentStreams)
+                                                          .setTls(tls);
+      try {
+         sharedHttpClient = SharedHttpClient.acquire(url.getProtocol() + "://" + url.getAuthority(), poolSettings, sharedConnectionPool);
+      } catch (IOException | GeneralSecurityException e) {
+         throw new PerfCakeException("Cannot create the HTTP client: ", e);
+      }
+
+      if (warmUpConnections > 0 && !tls.isFullHandshake()) {
+         try {
+            sharedHttpClient.warmUp(uri, Math.min(warmUpConnections, Math.min(maxConnections, maxConnectionsPerRoute)));
+         } catch (IOException | InterruptedException e) {
+            throw new PerfCakeException("Unable to open the connections in advance: ", e);
+         }
+      }
+      warmedUp = warmUpIterations <= 0;
+
+      if (arrivalRate > 0) {
+         initArrivalSchedule(targetUrl);
+      }
+   }
+
+   /**
+    * Obtains the shared schedule of the requests for the open model and prepares the names of the reported percentiles.
+    *
+    * @param targetUrl
+    *    The target URL.
+    * @throws PerfCakeException
+    *    When the schedule or the percentiles are not valid.
+    */
+   private void initArrivalSchedule(final String targetUrl) throws PerfCakeException {
+      final String[] names = latencyPercentiles.split(",");
+      final double[] percentiles = new double[names.length];
+      correctedPercentileResults = new String[names.length];
+      uncorrectedPercentileResults = new String[names.length];
+
+      try {
+         for (int i = 0; i < names.length; i++) {
+            final String name = names[i].trim();
+            percentiles[i] = Double.parseDouble(name);
+            correctedPercentileResults[i] = CORRECTED_LATENCY_RESULT + "P" + name;
+            uncorrectedPercentileResults[i] = UNCORRECTED_LATENCY_RESULT + "P" + name;
+         }
+         arrivalSchedule = ArrivalSchedule.acquire(targetUrl, arrivalRate, initialArrivalRate, rampUpPeriod, percentiles);
+      } catch (IllegalArgumentException e) {
+         throw new PerfCakeException("Invalid configuration of the open model: ", e);
+      }
+   }
+
+   @Override
+   public void doClose() {
+      if (responseCodeCounters != null) {
+         responseCodeCounters.release();
+         responseCodeCounters = null;
+      }
+      if (arrivalSchedule != null) {
+         arrivalSchedule.release();
+         arrivalSchedule = null;
+      }
+      if (cookieSessionStore != null) {
+         cookieSessionStore.release();
+         cookieSessionStore = null;
+         currentCookieJar = null;
+      }
+      if (sharedHttpClient != null) {
+         sharedHttpClient.release();
+         sharedHttpClient = null;
+      }
+   }
+
+   /**
+    * Sets the value of expectedResponseCodes property.
+    *
+    * @param expectedResponseCodes
+    *    The expectedResponseCodes property to set.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setExpectedResponseCodes(final String expectedResponseCodes) {
+      this.expectedResponseCodes = expectedResponseCodes;
+      setExpectedResponseCodesList(expectedResponseCodes.split(","));
+      return this;
+   }
+
+   /**
+    * Gets the list of expected response codes.
+    *
+    * @return The list of expected response codes, empty when any code is expected.
+    */
+   public List<Integer> getExpectedResponseCodeList() {
+      return expectedResponseCodeMatcher.toList();
+   }
+
+   /**
+    * Gets the value of expectedResponseCodes property.
+    *
+    * @return The expectedResponseCodes.
+    */
+   public String getExpectedResponseCodes() {
+      return expectedResponseCodes;
+   }
+
+   /**
+    * Sets a list of expected response codes. Besides single codes, the items can be ranges (<code>200-299</code>),
+    * classes (<code>2xx</code>) and exclusions (<code>!503</code>), see {@link ResponseCodeMatcher}.
+    *
+    * @param codes
+    *    The array of codes.
+    * @return Instance of this to support fluent API.
+    */
+   protected HttpClientSender setExpectedResponseCodesList(final String[] codes) {
+      expectedResponseCodeMatcher = new ResponseCodeMatcher(String.join(",", codes));
+
+      return this;
+   }
+
+   /**
+    * Checks if the code is expected.
+    *
+    * @param code
+    *    Checked response code.
+    * @return true/false according to if the code is expected or not.
+    */
+   private boolean checkResponseCode(final int code) {
+      return expectedResponseCodeMatcher.matches(code);
+   }
+
+   @Override
+   public void preSend(final Message message, final Properties messageAttributes) throws Exception {
+      super.preSend(message, messageAttributes);
+
+      if (storeCookies) {
+         final Object sessionId = cookieSessionTemplate == null ? Thread.currentThread().getId() : cookieSessionTemplate.toString(messageAttributes);
+         currentCookieJar = cookieSessionStore.getJar(sessionId, maxCookieSessions);
+      }
+
+      currentMethod = getDynamicMethod(messageAttributes);
+
+      if (message != cachedMessage || (message != null && message.getPayload() != cachedPayload)) {
+         cacheMessage(message);
+      }
+
+      final HttpRequestBase request = getRequest(currentMethod);
+      request.setHeaders(cachedHeaders);
+      if (request instanceof HttpEntityEnclosingRequestBase) {
+         ((HttpEntityEnclosingRequestBase) request).setEntity(cachedEntity);
+      }
+      currentRequest = request;
+
+      if (storeCookies) {
+         popCookies();
+      }
+
+      if (!warmedUp) {
+         warmedUp = true;
+         warmUp();
+      }
+
+      // the request is fully prepared, so that it is sent as close to its intended start time as possible
+      if (arrivalSchedule != null) {
+         intendedStart = arrivalSchedule.awaitNext();
+         actualStart = System.nanoTime();
+      }
+   }
+
+   /**
+    * Gets the reusable request for the given HTTP method. The request is created on the first use and reset on every subsequent one.
+    *
+    * @param method
+    *    The HTTP method.
+    * @return The request ready to be populated with headers and payload.
+    */
+   private HttpRequestBase getRequest(final Method method) {
+      HttpRequestBase request = requests.get(method);
+
+      if (request == null) {
+         switch (method) {
+            case GET:
+               request = new HttpGet(uri);
+               break;
+            case POST:
+               request = new HttpPost(uri);
+               break;
+            case PUT:
+               request = new HttpPut(uri);
+               break;
+            case PATCH:
+               request = new HttpPatch(uri);
+               break;
+            case DELETE:
+               request = new HttpDelete(uri);
+               break;
+            case HEAD:
+               request = new HttpHead(uri);
+               break;
+            case TRACE:
+               request = new HttpTrace(uri);
+               break;
+            default:
+               request = new HttpOptions(uri);
+         }
+         requests.put(method, request);
+      } else {
+         request.reset();
+      }
+
+      return request;
+   }
+
+   /**
+    * Precomputes the HTTP headers and the encoded payload of the message. The result is reused as long as the same message
+    * with the same payload is being sent, which is the case for messages without placeholders.
+    *
+    * @param message
+    *    The message to be sent.
+    */
+   private void cacheMessage(final Message message) {
+      cachedMessage = message;
+      cachedPayload = message == null ? null : message.getPayload();
+      if (payloadFile != null) {
+         cachedEntity = createEntity(payloadFile);
+      } else {
+         cachedEntity = cachedPayload == null ? null : createEntity(cachedPayload);
+      }
+
+      // binary payloads are never split
+      cachedBatchEntities = null;
+      if (batchSeparator != null && cachedPayload != null && payloadFile == null && !isBinary(cachedPayload)) {
+         final String[] parts = cachedPayload.toString().split(Pattern.quote(batchSeparator));
+         cachedBatchEntities = new HttpEntity[parts.length];
+         for (int i = 0; i < parts.length; i++) {
+            cachedBatchEntities[i] = createEntity(parts[i]);
+         }
+      }
+
+      final HeaderGroup headers = new HeaderGroup();
+      if (acceptEncoding != null) {
+         headers.addHeader(new BasicHeader("Accept-Encoding", acceptEncoding));
+      }
+
+      if (log.isDebugEnabled()) {
+         log.debug("Setting HTTP headers: ");
+      }
+
+      if (message != null) {
+         // set message properties as HTTP headers
+         for (final Entry<Object, Object> property : message.getProperties().entrySet()) {
+            final String pKey = property.getKey().toString();
+            final String pValue = property.getValue().toString();
+            headers.updateHeader(new BasicHeader(pKey, pValue));
+            if (log.isDebugEnabled()) {
+               log.debug(pKey + ": " + pValue);
+            }
+         }
+
+         // set message headers as HTTP headers
+         for (final Entry<Object, Object> property : message.getHeaders().entrySet()) {
+            final String pKey = property.getKey().toString();
+            final String pValue = property.getValue().toString();
+            headers.updateHeader(new BasicHeader(pKey, pValue));
+            if (log.isDebugEnabled()) {
+               log.debug(pKey + ": " + pValue);
+            }
+         }
+      }
+
+      if (log.isDebugEnabled()) {
+         log.debug("End of HTTP headers.");
+      }
+
+      cachedHeaders = headers.getAllHeaders();
+   }
+
+   /**
+    * Creates the request entity for the payload. Files are streamed from the disk and byte arrays are sent as they are,
+    * any other payload is converted to a string and encoded.
+    *
+    * @param payload
+    *    The payload to be sent.
+    * @return The request entity.
+    */
+   private HttpEntity createEntity(final Serializable payload) {
+      final AbstractHttpEntity entity;
+
+      if (payload instanceof File) {
+         // the non-blocking client transfers the file directly from the file channel to the socket
+         entity = async || isBatch() ? new NFileEntity((File) payload, requestContentType) : new FileEntity((File) payload, requestContentType);
+      } else if (payload instanceof byte[]) {
+         entity = new ByteArrayEntity((byte[]) payload, requestContentType);
+      } else {
+         entity = new ByteArrayEntity(payload.toString().getBytes(payloadCharset), requestContentType);
+      }
+      entity.setChunked(chunked);
+
+      return entity;
+   }
+
+   /**
+    * Checks whether the payload is sent as raw bytes.
+    *
+    * @param payload
+    *    The payload.
+    * @return True if and only if the payload is a file or a byte array.
+    */
+   private static boolean isBinary(final Serializable payload) {
+      return payload instanceof File || payload instanceof byte[];
+   }
+
+   /**
+    * Sends the current request {@link #warmUpIterations} times and discards the responses. The requests are not a part
+    * of the arrival schedule and their response codes are not counted. A failure stops the warm-up, the request is then
+    * sent in the measured iteration and fails there.
+    */
+   private void warmUp() {
+      warmingUp = true;
+      try {
+         for (int i = 0; i < warmUpIterations; i++) {
+            sendRequest(new MeasurementUnit(-1));
+         }
+      } catch (Exception e) {
+         log.warn("Warm-up request failed: ", e);
+      } finally {
+         warmingUp = false;
+      }
+   }
+
+   @Override
+   public Serializable doSend(final Message message, final MeasurementUnit measurementUnit) throws Exception {
+      if (arrivalSchedule == null) {
+         return sendRequest(measurementUnit);
+      }
+
+      try {
+         return sendRequest(measurementUnit);
+      } finally {
+         // failed requests are recorded as well, their latency is a part of what the clients experience
+         final long completedAt = System.nanoTime();
+         arrivalSchedule.record(intendedStart, actualStart, completedAt);
+         measurementUnit.appendResult(CORRECTED_LATENCY_RESULT, (completedAt - intendedStart) / 1_000_000d);
+         measurementUnit.appendResult(UNCORRECTED_LATENCY_RESULT, (completedAt - actualStart) / 1_000_000d);
+
+         final ArrivalSchedule.Percentiles latencies = arrivalSchedule.getPercentiles();
+         final double[] corrected = latencies.getCorrected();
+         final double[] uncorrected = latencies.getUncorrected();
+         for (int i = 0; i < corrected.length; i++) {
+            measurementUnit.appendResult(correctedPercentileResults[i], corrected[i]);
+            measurementUnit.appendResult(uncorrectedPercentileResults[i], uncorrected[i]);
+         }
+      }
+   }
+
+   /**
+    * Sends the current request, or a batch of requests, and processes the response.
+    *
+    * @param measurementUnit
+    *    The measurement unit to store the additional results in.
+    * @return The response body in the form given by {@link #responseHandling}.
+    * @throws Exception
+    *    When the request failed or returned an unexpected response code.
+    */
+   private Serializable sendRequest(final MeasurementUnit measurementUnit) throws Exception {
+      if (isBatch()) {
+         return sendBatch(measurementUnit);
+      }
+
+      if (http2) {
+         currentHttpResponse = sharedHttpClient.getHttp2Client().execute(currentRequest);
+      } else if (async) {
+         currentHttpResponse = executeAsync(measurementUnit);
+      } else if (phaseTimings) {
+         requestPhaseTimings.reset();
+         currentHttpResponse = sharedHttpClient.getHttpClient().execute(currentRequest, phaseTimingsContext);
+      } else {
+         currentHttpResponse = sharedHttpClient.getHttpClient().execute(currentRequest);
+      }
+
+      final Serializable result = processResponse(measurementUnit);
+      measurementUnit.appendResult(RESPONSE_SIZE_RESULT, responseSize);
+      if (compressionMetrics) {
+         appendCompressionResults(measurementUnit, responseWireSize, responseDecompressionTime, responseCompressed);
+      }
+
+      if (phaseTimings && !http2 && !async) {
+         measurementUnit.appendResult(DNS_TIME_RESULT, requestPhaseTimings.getDnsTime());
+         measurementUnit.appendResult(CONNECT_TIME_RESULT, requestPhaseTimings.getConnectTime());
+         measurementUnit.appendResult(TLS_HANDSHAKE_TIME_RESULT, requestPhaseTimings.getTlsHandshakeTime());
+         measurementUnit.appendResult(TIME_TO_FIRST_BYTE_RESULT, requestPhaseTimings.getTimeToFirstByte());
+         measurementUnit.appendResult(TRANSFER_TIME_RESULT, (System.nanoTime() - requestPhaseTimings.getResponseReceivedAt()) / 1_000_000d);
+         measurementUnit.appendResult(CONNECTION_REUSED_RESULT, requestPhaseTimings.isConnectionReused());
+      }
+
+      return result;
+   }
+
+   /**
+    * Checks the response code of {@link #currentHttpResponse} and reads its body.
+    *
+    * @param measurementUnit
+    *    The measurement unit to store the response code statistics in.
+    * @return The response body in the form given by {@link #responseHandling}.
+    * @throws Exception
+    *    When the response code was not expected or it was not possible to read the response.
+    */
+   private Serializable processResponse(final MeasurementUnit measurementUnit) throws Exception {
+      final int respCode = currentHttpResponse.getStatusLine().getStatusCode();
+      final boolean expected = checkResponseCode(respCode);
+
+      if (countResponseCodes && !warmingUp) {
+         final int responseClass = responseCodeCounters.record(respCode, expected);
+         measurementUnit.appendResult(RESPONSE_CODE_RESULT, respCode);
+         measurementUnit.appendResult(RESPONSE_CLASS_RESULTS[responseClass], responseCodeCounters.getResponses(responseClass));
+         measurementUnit.appendResult(UNEXPECTED_RESPONSES_RESULT, responseCodeCounters.getUnexpectedResponses());
+      }
+
+      if (countTlsHandshakes) {
+         final TlsStatistics tlsStatistics = sharedHttpClient.getTlsStatistics();
+         measurementUnit.appendResult(TLS_HANDSHAKES_RESULT, tlsStatistics.getHandshakes());
+         measurementUnit.appendResult(TLS_RESUMED_HANDSHAKES_RESULT, tlsStatistics.getResumedHandshakes());
+      }
+
+      if (!expected && failOnUnexpectedResponseCode) {
+         // return the connection to the pool before failing
+         EntityUtils.consumeQuietly(currentHttpResponse.getEntity());
+         throw new PerfCakeException("The server returned an unexpected HTTP response code: " + respCode + " \"" + currentHttpResponse.getStatusLine().getReasonPhrase()
+               + "\". Expected HTTP codes are " + expectedResponseCodes + ".");
+      }
+
+      final HttpEntity entity = currentHttpResponse.getEntity();
+      final DecodingEntity decodingEntity = DecodingEntity.create(entity, currentHttpResponse.getFirstHeader("Content-Encoding"));
+      final Serializable result = readResponse(decodingEntity != null ? decodingEntity : entity);
+
+      responseCompressed = decodingEntity != null;
+      responseWireSize = responseCompressed ? decodingEntity.getWireSize() : responseSize;
+      responseDecompressionTime = responseCompressed ? decodingEntity.getDecompressionTime() : 0d;
+
+      return result;
+   }
+
+   /**
+    * Stores the response compression statistics in the measurement unit.
+    *
+    * @param measurementUnit
+    *    The measurement unit to store the statistics in.
+    * @param wireSize
+    *    The number of bytes received on the wire.
+    * @param decompressionTime
+    *    The time spent in the decompression in milliseconds.
+    * @param compressed
+    *    Whether the response body was compressed.
+    */
+   private static void appendCompressionResults(final MeasurementUnit measurementUnit, final long wireSize, final double decompressionTime, final boolean compressed) {
+      measurementUnit.appendResult(WIRE_SIZE_RESULT, wireSize);
+      measurementUnit.appendResult(DECOMPRESSION_TIME_RESULT, decompressionTime);
+      measurementUnit.appendResult(RESPONSE_COMPRESSED_RESULT, compressed);
+   }
+
+   /**
+    * Sends a batch of requests based on the current request. Either the payload parts split by {@link #batchSeparator}
+    * or {@link #batchSize} copies of the current request are sent. The cookies of each response are stored and the compression
+    * statistics are summed up over all the responses.
+    *
+    * @param measurementUnit
+    *    The measurement unit to store the per-request and aggregated response times in.
+    * @return The list of response bodies.
+    * @throws Exception
+    *    When any of the requests failed or returned an unexpected response code.
+    */
+   private Serializable sendBatch(final MeasurementUnit measurementUnit) throws Exception {
+      final RequestBatch batch = new RequestBatch(uri, getKeptResponseBytes(), drainBuffer);
+      final String batchMethod = currentRequest.getMethod();
+      final Header[] headers = currentRequest.getAllHeaders();
+      final boolean enclosing = currentRequest instanceof HttpEntityEnclosingRequestBase;
+
+      if (cachedBatchEntities != null) {
+         for (final HttpEntity entity : cachedBatchEntities) {
+            batch.add(batchMethod, uri, headers, enclosing ? entity : null);
+         }
+      } else {
+         // a file entity keeps the position of its transfer, so each of the concurrent requests needs its own
+         final boolean perRequestEntity = cachedEntity instanceof NFileEntity;
+         for (int i = 0; i < batchSize; i++) {
+            batch.add(batchMethod, uri, headers, enclosing ? (perRequestEntity ? createEntity(payloadFile != null ? payloadFile : cachedPayload) : cachedEntity) : null);
+         }
+      }
+
+      batch.execute(sharedHttpClient.getHttpAsyncClient(), pipelining);
+
+      final ArrayList<Serializable> results = new ArrayList<>(batch.size());
+      final ArrayList<Double> responseTimes = new ArrayList<>(batch.size());
+      double min = Double.MAX_VALUE;
+      double max = 0;
+      double sum = 0;
+      long size = 0;
+      long wireSize = 0;
+      double decompressionTime = 0;
+      boolean compressed = false;
+      PerfCakeException failure = null;
+
+      for (int i = 0; i < batch.size(); i++) {
+         final double time = batch.getResponseTime(i);
+         responseTimes.add(time);
+         min = Math.min(min, time);
+         max = Math.max(max, time);
+         sum += time;
+
+         currentHttpResponse = batch.getResponse(i);
+         if (storeCookies) {
+            pushCookies();
+         }
+         try {
+            results.add(processResponse(measurementUnit));
+            size += responseSize;
+            wireSize += responseWireSize;
+            decompressionTime += responseDecompressionTime;
+            compressed |= responseCompressed;
+         } catch (PerfCakeException e) {
+            if (failure == null) {
+               failure = e;
+            }
+         }
+      }
+
+      measurementUnit.appendResult(BATCH_SIZE_RESULT, batch.size());
+      measurementUnit.appendResult(BATCH_RESPONSE_TIMES_RESULT, responseTimes);
+      if (batch.size() > 0) {
+         measurementUnit.appendResult(BATCH_MIN_RESPONSE_TIME_RESULT, min);
+         measurementUnit.appendResult(BATCH_AVG_RESPONSE_TIME_RESULT, sum / batch.size());
+         measurementUnit.appendResult(BATCH_MAX_RESPONSE_TIME_RESULT, max);
+      }
+      measurementUnit.appendResult(RESPONSE_SIZE_RESULT, size);
+      if (compressionMetrics) {
+         appendCompressionResults(measurementUnit, wireSize, decompressionTime, compressed);
+      }
+
+      if (failure != null) {
+         throw failure;
+      }
+
+      return results;
+   }
+
+   /**
+    * Checks whether the batch mode is enabled.
+    *
+    * @return True if and only if a single invocation sends more requests.
+    */
+   private boolean isBatch() {
+      return batchSize > 1 || batchSeparator != null;
+   }
+
+   /**
+    * Reads the response body according to {@link #responseHandling} and records its size in {@link #responseSize}.
+    *
+    * @param entity
+    *    The response entity, can be null.
+    * @return The response body in the form given by {@link #responseHandling}, or null when it is discarded or there is none.
+    * @throws IOException
+    *    When it was not possible to read the response.
+    */
+   private Serializable readResponse(final HttpEntity entity) throws IOException {
+      if (entity == null) {
+         responseSize = 0;
+         return null;
+      }
+
+      final Serializable result;
+      long size;
+
+      switch (responseHandling) {
+         case DISCARD:
+            try (InputStream in = entity.getContent()) {
+               size = drain(in);
+            }
+            result = null;
+            break;
+         case PREFIX:
+            try (InputStream in = entity.getContent()) {
+               final byte[] prefix = new byte[responsePrefixSize];
+               int read = 0;
+               int n;
+               while (read < prefix.length && (n = in.read(prefix, read, prefix.length - read)) != -1) {
+                  read += n;
+               }
+               size = read + drain(in);
+               result = new String(prefix, 0, read, Utils.getDefaultEncoding());
+            }
+            break;
+         case BYTES:
+            final byte[] bytes = EntityUtils.toByteArray(entity);
+            size = bytes.length;
+            result = bytes;
+            break;
+         default:
+            final byte[] body = EntityUtils.toByteArray(entity);
+            size = body.length;
+            result = new String(body, Utils.getDefaultEncoding());
+      }
+
+      // the non-blocking client keeps only the needed beginning of the body and counts the rest as it arrives
+      responseSize = entity instanceof TruncatedEntity ? ((TruncatedEntity) entity).getSize() : size;
+
+      return result;
+   }
+
+   /**
+    * Gets the number of bytes of the response body the non-blocking client needs to keep according to {@link #responseHandling}.
+    *
+    * @return The number of bytes kept from the beginning of the body, {@link TimedResponseConsumer#WHOLE_BODY} when all of them are needed.
+    */
+   private int getKeptResponseBytes() {
+      switch (responseHandling) {
+         case DISCARD:
+            return 0;
+         case PREFIX:
+            return responsePrefixSize;
+         default:
+            return TimedResponseConsumer.WHOLE_BODY;
+      }
+   }
+
+   /**
+    * Reads the rest of the stream into {@link #drainBuffer}.
+    *
+    * @param in
+    *    The stream to be drained.
+    * @return The number of bytes read.
+    * @throws IOException
+    *    When it was not possible to read the stream.
+    */
+   private long drain(final InputStream in) throws IOException {
+      long size = 0;
+      int n;
+      while ((n = in.read(drainBuffer)) != -1) {
+         size += n;
+      }
+      return size;
+   }
+
+   /**
+    * Dispatches the current request to the non-blocking client and waits for its completion.
+    * The response time is measured between the dispatch and the completion reported by the I/O thread.
+    * When the phase timings are enabled, the time to first byte (including a possible connection establishment)
+    * and the transfer time are reported as well.
+    *
+    * @param measurementUnit
+    *    The measurement unit to store the response time in.
+    * @return The received HTTP response.
+    * @throws Exception
+    *    When the request failed.
+    */
+   private HttpResponse executeAsync(final MeasurementUnit measurementUnit) throws Exception {
+      final long[] completedAt = new long[1];
+      final long[] receivedAt = phaseTimings ? new long[1] : null;
+      final long dispatchedAt = System.nanoTime();
+      final Future<HttpResponse> response = sharedHttpClient.getHttpAsyncClient().execute(HttpAsyncMethods.create(currentRequest), new TimedResponseConsumer(completedAt, receivedAt, 0, getKeptResponseBytes(), drainBuffer), null);
+
+      try {
+         final HttpResponse result = response.get();
+         measurementUnit.appendResult(RESPONSE_TIME_RESULT, (completedAt[0] - dispatchedAt) / 1_000_000d);
+         if (receivedAt != null) {
+            measurementUnit.appendResult(TIME_TO_FIRST_BYTE_RESULT, (receivedAt[0] - dispatchedAt) / 1_000_000d);
+            measurementUnit.appendResult(TRANSFER_TIME_RESULT, (completedAt[0] - receivedAt[0]) / 1_000_000d);
+         }
+         return result;
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+         }
+         throw e;
+      }
+   }
+
+   @Override
+   public void postSend(final Message message) throws Exception {
+      super.postSend(message);
+
+      // the cookies of the batch responses were stored one by one when the batch completed
+      if (storeCookies && !isBatch()) {
+         pushCookies();
+      }
+   }
+
+   /**
+    * Stores cookies from the response in the cookie jar of the current session.
+    */
+   private void pushCookies() {
+      final Header[] cookiesHeader = currentHttpResponse.getHeaders(COOKIES_HEADER);
+
+      if (cookiesHeader.length > 0) {
+         final List<String> values = new ArrayList<>(cookiesHeader.length);
+         for (final Header cookie : cookiesHeader) {
+            values.add(cookie.getValue());
+         }
+         currentCookieJar.store(uri, values);
+      }
+   }
+
+   /**
+    * Sets the stored cookies of the current session to the request.
+    */
+   private void popCookies() {
+      // a cookie header set explicitly in the message takes precedence
+      if (!currentRequest.containsHeader("Cookie")) {
+         final String cookies = currentCookieJar.getCookieHeader(uri);
+         if (cookies != null) {
+            currentRequest.setHeader("Cookie", cookies);
+         }
+      }
+   }
+
+   /**
+    * Gets the value of HTTP method.
+    *
+    * @return The HTTP method.
+    */
+   public Method getMethod() {
+      return method;
+   }
+
+   /**
+    * Sets the value of HTTP method.
+    *
+    * @param method
+    *    The HTTP method to set.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setMethod(final Method method) {
+      this.method = method;
+      return this;
+   }
+
+   /**
+    * Sets the template used to determine HTTP method dynamically.
+    *
+    * @param dynamicMethod
+    *    The string template to dynamically determine HTTP method.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setDynamicMethod(final String dynamicMethod) {
+      this.constantDynamicMethod = null;
+      if (dynamicMethod == null || dynamicMethod.isEmpty()) {
+         this.dynamicMethod = null;
+      } else {
+         this.dynamicMethod = new StringTemplate(dynamicMethod);
+         // a template without placeholders is resolved just once
+         if (!this.dynamicMethod.hasPlaceholders()) {
+            this.constantDynamicMethod = lookupMethod(this.dynamicMethod.toString());
+         }
+      }
+      return this;
+   }
+
+   /**
+    * Gets the template used to determine HTTP method dynamically.
+    *
+    * @param placeholders
+    *    The properties to render the string template.
+    * @return The HTTP method.
+    */
+   public Method getDynamicMethod(final Properties placeholders) {
+      if (dynamicMethod == null) {
+         return this.method;
+      } else if (constantDynamicMethod != null) {
+         return constantDynamicMethod;
+      } else {
+         return lookupMethod(dynamicMethod.toString(placeholders));
+      }
+   }
+
+   /**
+    * Finds the HTTP method by its name.
+    *
+    * @param name
+    *    The name of the HTTP method.
+    * @return The HTTP method.
+    * @throws IllegalArgumentException
+    *    When there is no such HTTP method.
+    */
+   private static Method lookupMethod(final String name) {
+      Method m = METHODS.get(name);
+      if (m == null) {
+         m = METHODS.get(name.trim().toUpperCase());
+         if (m == null) {
+            throw new IllegalArgumentException("Unsupported HTTP method: " + name);
+         }
+      }
+      return m;
+   }
+
+   /**
+    * Gets whether the HTTP client and its connection pool are shared among the sender instances connecting to the same target.
+    *
+    * @return True if and only if the connection pool is shared.
+    */
+   public boolean isSharedConnectionPool() {
+      return sharedConnectionPool;
+   }
+
+   /**
+    * Sets whether the HTTP client and its connection pool are shared among the sender instances connecting to the same target.
+    *
+    * @param sharedConnectionPool
+    *    True if and only if the connection pool should be shared.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setSharedConnectionPool(final boolean sharedConnectionPool) {
+      this.sharedConnectionPool = sharedConnectionPool;
+      return this;
+   }
+
+   /**
+    * Gets the maximum number of connections in the connection pool.
+    *
+    * @return The maximum number of connections.
+    */
+   public int getMaxConnections() {
+      return maxConnections;
+   }
+
+   /**
+    * Sets the maximum number of connections in the connection pool.
+    *
+    * @param maxConnections
+    *    The maximum number of connections.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setMaxConnections(final int maxConnections) {
+      this.maxConnections = maxConnections;
+      return this;
+   }
+
+   /**
+    * Gets the maximum number of connections per a single route in the connection pool.
+    *
+    * @return The maximum number of connections per route.
+    */
+   public int getMaxConnectionsPerRoute() {
+      return maxConnectionsPerRoute;
+   }
+
+   /**
+    * Sets the maximum number of connections per a single route in the connection pool.
+    *
+    * @param maxConnectionsPerRoute
+    *    The maximum number of connections per route.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setMaxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+      this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+      return this;
+   }
+
+   /**
+    * Gets the number of connections opened during the initialization.
+    *
+    * @return The number of connections opened in advance.
+    */
+   public int getWarmUpConnections() {
+      return warmUpConnections;
+   }
+
+   /**
+    * Sets the number of connections to the target opened during the initialization, including the TLS handshakes, so that
+    * the first requests do not pay for the connection establishment. The connections are opened only once for a shared connection
+    * pool and the number is limited by the pool size. It has no effect in the HTTP/2 mode and with full TLS handshakes.
+    *
+    * @param warmUpConnections
+    *    The number of connections, zero to open them on demand.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setWarmUpConnections(final int warmUpConnections) {
+      this.warmUpConnections = warmUpConnections;
+      return this;
+   }
+
+   /**
+    * Gets the number of discarded requests sent by each sender before the measurement.
+    *
+    * @return The number of warm-up iterations.
+    */
+   public int getWarmUpIterations() {
+      return warmUpIterations;
+   }
+
+   /**
+    * Sets the number of times the first request is sent by each sender before it is measured. The responses of these requests
+    * are discarded, which keeps the JIT compilation and the connection establishment out of the results.
+    *
+    * @param warmUpIterations
+    *    The number of warm-up iterations, zero to disable the warm-up.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setWarmUpIterations(final int warmUpIterations) {
+      this.warmUpIterations = warmUpIterations;
+      return this;
+   }
+
+   /**
+    * Gets the maximum time in milliseconds a connection is kept alive.
+    *
+    * @return The keep-alive timeout, a negative value when the server provided value is used.
+    */
+   public long getKeepAliveTimeout() {
+      return keepAliveTimeout;
+   }
+
+   /**
+    * Sets the maximum time in milliseconds a connection is kept alive. The server provided Keep-Alive header is honored when lower.
+    *
+    * @param keepAliveTimeout
+    *    The keep-alive timeout, a negative value to use the server provided value.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setKeepAliveTimeout(final long keepAliveTimeout) {
+      this.keepAliveTimeout = keepAliveTimeout;
+      return this;
+   }
+
+   /**
+    * Gets the time in milliseconds after which an idle connection is evicted from the pool.
+    *
+    * @return The idle connection timeout.
+    */
+   public long getIdleConnectionTimeout() {
+      return idleConnectionTimeout;
+   }
+
+   /**
+    * Sets the time in milliseconds after which an idle connection is evicted from the pool.
+    *
+    * @param idleConnectionTimeout
+    *    The idle connection timeout, zero or a negative value disables the eviction.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setIdleConnectionTimeout(final long idleConnectionTimeout) {
+      this.idleConnectionTimeout = idleConnectionTimeout;
+      return this;
+   }
+
+   /**
+    * Gets the period of inactivity in milliseconds after which a pooled connection is validated before it is reused.
+    *
+    * @return The validation period.
+    */
+   public int getValidateAfterInactivity() {
+      return validateAfterInactivity;
+   }
+
+   /**
+    * Sets the period of inactivity in milliseconds after which a pooled connection is validated before it is reused.
+    *
+    * @param validateAfterInactivity
+    *    The validation period.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setValidateAfterInactivity(final int validateAfterInactivity) {
+      this.validateAfterInactivity = validateAfterInactivity;
+      return this;
+   }
+
+   /**
+    * Gets the timeout in milliseconds of the connection establishment.
+    *
+    * @return The connect timeout, zero when there is no timeout.
+    */
+   public int getConnectTimeout() {
+      return connectTimeout;
+   }
+
+   /**
+    * Sets the timeout in milliseconds of the connection establishment. It applies to the requests as well as to the connections
+    * opened in advance.
+    *
+    * @param connectTimeout
+    *    The connect timeout, zero for no timeout.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setConnectTimeout(final int connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+   }
+
+   /**
+    * Gets whether an unexpected response code fails the request.
+    *
+    * @return True if and only if an unexpected response code fails the request.
+    */
+   public boolean isFailOnUnexpectedResponseCode() {
+      return failOnUnexpectedResponseCode;
+   }
+
+   /**
+    * Sets whether an unexpected response code fails the request. When set to false, it is only counted.
+    *
+    * @param failOnUnexpectedResponseCode
+    *    True if and only if an unexpected response code should fail the request.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setFailOnUnexpectedResponseCode(final boolean failOnUnexpectedResponseCode) {
+      this.failOnUnexpectedResponseCode = failOnUnexpectedResponseCode;
+      return this;
+   }
+
+   /**
+    * Gets whether the responses are counted by their class.
+    *
+    * @return True if and only if the responses are counted.
+    */
+   public boolean isCountResponseCodes() {
+      return countResponseCodes;
+   }
+
+   /**
+    * Sets whether the responses are counted by their class (1xx - 5xx). The response code and the running totals of
+    * its class and of the unexpected responses are reported as measurement results.
+    *
+    * @param countResponseCodes
+    *    True if and only if the responses should be counted.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setCountResponseCodes(final boolean countResponseCodes) {
+      this.countResponseCodes = countResponseCodes;
+      return this;
+   }
+
+   /**
+    * Gets whether the requests are dispatched by a non-blocking client.
+    *
+    * @return True if and only if the asynchronous mode is enabled.
+    */
+   public boolean isAsync() {
+      return async;
+   }
+
+   /**
+    * Sets whether the requests are dispatched by a non-blocking client.
+    *
+    * @param async
+    *    True if and only if the asynchronous mode should be enabled.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setAsync(final boolean async) {
+      this.async = async;
+      return this;
+   }
+
+   /**
+    * Gets the number of I/O dispatch threads used in the asynchronous mode.
+    *
+    * @return The number of I/O threads.
+    */
+   public int getIoThreads() {
+      return ioThreads;
+   }
+
+   /**
+    * Sets the number of I/O dispatch threads used in the asynchronous mode.
+    *
+    * @param ioThreads
+    *    The number of I/O threads.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setIoThreads(final int ioThreads) {
+      this.ioThreads = ioThreads;
+      return this;
+   }
+
+   /**
+    * Gets the number of requests sent by a single sender invocation.
+    *
+    * @return The batch size.
+    */
+   public int getBatchSize() {
+      return batchSize;
+   }
+
+   /**
+    * Sets the number of requests sent by a single sender invocation. Values greater than 1 enable the batch mode
+    * in which the requests are executed by the non-blocking client. The batch mode is not supported with HTTP/2.
+    *
+    * @param batchSize
+    *    The batch size.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setBatchSize(final int batchSize) {
+      this.batchSize = batchSize;
+      return this;
+   }
+
+   /**
+    * Gets the separator used to split the message payload into the requests of a batch.
+    *
+    * @return The batch separator, null when the payload is not split.
+    */
+   public String getBatchSeparator() {
+      return batchSeparator;
+   }
+
+   /**
+    * Sets the separator used to split the message payload into the requests of a batch. When set, the batch mode is enabled
+    * and each part of the payload is sent as a separate request regardless of {@link #batchSize}.
+    *
+    * @param batchSeparator
+    *    The batch separator, null or empty to disable the splitting.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setBatchSeparator(final String batchSeparator) {
+      this.batchSeparator = batchSeparator == null || batchSeparator.isEmpty() ? null : batchSeparator;
+      return this;
+   }
+
+   /**
+    * Gets whether the requests of a batch are pipelined over a single connection.
+    *
+    * @return True if and only if the requests are pipelined.
+    */
+   public boolean isPipelining() {
+      return pipelining;
+   }
+
+   /**
+    * Sets whether the requests of a batch are pipelined over a single HTTP/1.1 connection. Otherwise, they are sent
+    * concurrently over the connection pool. Pipelining cannot be combined with a keep-alive timeout or the full TLS handshakes,
+    * the sender fails to initialize then.
+    *
+    * @param pipelining
+    *    True if and only if the requests should be pipelined.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setPipelining(final boolean pipelining) {
+      this.pipelining = pipelining;
+      return this;
+   }
+
+   /**
+    * Gets whether HTTP/2 is used.
+    *
+    * @return True if and only if HTTP/2 is used.
+    */
+   public boolean isHttp2() {
+      return http2;
+   }
+
+   /**
+    * Sets whether HTTP/2 is used. HTTP/2 cannot be combined with the batch mode, the sender fails to initialize then.
+    *
+    * @param http2
+    *    True if and only if HTTP/2 should be used.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setHttp2(final boolean http2) {
+      this.http2 = http2;
+      return this;
+   }
+
+   /**
+    * Gets the number of multiplexed HTTP/2 connections.
+    *
+    * @return The number of HTTP/2 connections.
+    */
+   public int getHttp2Connections() {
+      return http2Connections;
+   }
+
+   /**
+    * Sets the number of multiplexed HTTP/2 connections.
+    *
+    * @param http2Connections
+    *    The number of HTTP/2 connections.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setHttp2Connections(final int http2Connections) {
+      this.http2Connections = http2Connections;
+      return this;
+   }
+
+   /**
+    * Gets the maximum number of concurrent streams on a single HTTP/2 connection.
+    *
+    * @return The maximum number of concurrent streams.
+    */
+   public int getMaxConcurrentStreams() {
+      return maxConcurrentStreams;
+   }
+
+   /**
+    * Sets the maximum number of concurrent streams on a single HTTP/2 connection.
+    *
+    * @param maxConcurrentStreams
+    *    The maximum number of concurrent streams.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setMaxConcurrentStreams(final int maxConcurrentStreams) {
+      this.maxConcurrentStreams = maxConcurrentStreams;
+      return this;
+   }
+
+   /**
+    * Gets what is done with the response body.
+    *
+    * @return The response handling mode.
+    */
+   public ResponseHandling getResponseHandling() {
+      return responseHandling;
+   }
+
+   /**
+    * Sets what is done with the response body.
+    *
+    * @param responseHandling
+    *    The response handling mode.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setResponseHandling(final ResponseHandling responseHandling) {
+      this.responseHandling = responseHandling;
+      return this;
+   }
+
+   /**
+    * Gets the number of bytes of the response body kept in the {@link ResponseHandling#PREFIX} mode.
+    *
+    * @return The number of bytes kept.
+    */
+   public int getResponsePrefixSize() {
+      return responsePrefixSize;
+   }
+
+   /**
+    * Sets the number of bytes of the response body kept in the {@link ResponseHandling#PREFIX} mode.
+    *
+    * @param responsePrefixSize
+    *    The number of bytes kept.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setResponsePrefixSize(final int responsePrefixSize) {
+      this.responsePrefixSize = responsePrefixSize;
+      return this;
+   }
+
+   /**
+    * Gets the value of the <code>Accept-Encoding</code> request header.
+    *
+    * @return The advertised content encodings, null when no compression is requested.
+    */
+   public String getAcceptEncoding() {
+      return acceptEncoding;
+   }
+
+   /**
+    * Sets the value of the <code>Accept-Encoding</code> request header. Responses compressed using <code>gzip</code>,
+    * <code>deflate</code> or <code>br</code> are decompressed while being read.
+    *
+    * @param acceptEncoding
+    *    The advertised content encodings (e.g. <code>gzip, deflate, br</code>), null or empty to request no compression.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setAcceptEncoding(final String acceptEncoding) {
+      this.acceptEncoding = acceptEncoding == null || acceptEncoding.isEmpty() ? null : acceptEncoding;
+      return this;
+   }
+
+   /**
+    * Gets whether the compression metrics are reported.
+    *
+    * @return True if and only if the compression metrics are reported.
+    */
+   public boolean isCompressionMetrics() {
+      return compressionMetrics;
+   }
+
+   /**
+    * Sets whether the number of bytes of the response body received on the wire, the time spent in its decompression
+    * and whether it was compressed are reported as measurement results. The decoded size is reported as the response size.
+    *
+    * @param compressionMetrics
+    *    True if and only if the compression metrics should be reported.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setCompressionMetrics(final boolean compressionMetrics) {
+      this.compressionMetrics = compressionMetrics;
+      return this;
+   }
+
+   /**
+    * Gets the path to the key store with the client certificate.
+    *
+    * @return The path to the key store.
+    */
+   public String getKeyStore() {
+      return tls.getKeyStore();
+   }
+
+   /**
+    * Sets the path to the key store with the client certificate.
+    *
+    * @param keyStore
+    *    The path to the key store, null when no client certificate is used.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setKeyStore(final String keyStore) {
+      tls.setKeyStore(keyStore);
+      return this;
+   }
+
+   /**
+    * Gets the password of the key store and its keys.
+    *
+    * @return The key store password.
+    */
+   public String getKeyStorePassword() {
+      return tls.getKeyStorePassword();
+   }
+
+   /**
+    * Sets the password of the key store and its keys.
+    *
+    * @param keyStorePassword
+    *    The key store password.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setKeyStorePassword(final String keyStorePassword) {
+      tls.setKeyStorePassword(keyStorePassword);
+      return this;
+   }
+
+   /**
+    * Gets the type of the key store.
+    *
+    * @return The key store type.
+    */
+   public String getKeyStoreType() {
+      return tls.getKeyStoreType();
+   }
+
+   /**
+    * Sets the type of the key store.
+    *
+    * @param keyStoreType
+    *    The key store type (e.g. <code>PKCS12</code>).
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setKeyStoreType(final String keyStoreType) {
+      tls.setKeyStoreType(keyStoreType);
+      return this;
+   }
+
+   /**
+    * Gets the path to the trust store with the trusted server certificates.
+    *
+    * @return The path to the trust store.
+    */
+   public String getTrustStore() {
+      return tls.getTrustStore();
+   }
+
+   /**
+    * Sets the path to the trust store with the trusted server certificates.
+    *
+    * @param trustStore
+    *    The path to the trust store, null to use the default one.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setTrustStore(final String trustStore) {
+      tls.setTrustStore(trustStore);
+      return this;
+   }
+
+   /**
+    * Gets the password of the trust store.
+    *
+    * @return The trust store password.
+    */
+   public String getTrustStorePassword() {
+      return tls.getTrustStorePassword();
+   }
+
+   /**
+    * Sets the password of the trust store.
+    *
+    * @param trustStorePassword
+    *    The trust store password.
+    * @return Instance of this to support fluent API.
     */
-   private Method method = Method.POST;
+   public HttpClientSender setTrustStorePassword(final String trustStorePassword) {
+      tls.setTrustStorePassword(trustStorePassword);
+      return this;
+   }
 
    /**
-    * A string template determining the HTTP method to be used dynamically for each request.
-    * If not configured (set to null), static configuration in {@link #method} is used instead.
+    * Gets the type of the trust store.
+    *
+    * @return The trust store type.
     */
-   private StringTemplate dynamicMethod = null;
+   public String getTrustStoreType() {
+      return tls.getTrustStoreType();
+   }
 
    /**
-    * HTTP method that should be used for the current send operation, pre-calculated in {@link #preSend(Message, Properties)}.
+    * Sets the type of the trust store.
+    *
+    * @param trustStoreType
+    *    The trust store type (e.g. <code>PKCS12</code>).
+    * @return Instance of this to support fluent API.
     */
-   private Method currentMethod;
-
-   private HttpClient httpClient = HttpClients.createSystem();
-
-   private HttpUriRequest currentRequest;
-   private HttpResponse currentHttpResponse;
+   public HttpClientSender setTrustStoreType(final String trustStoreType) {
+      tls.setTrustStoreType(trustStoreType);
+      return this;
+   }
 
    /**
-    * Enumeration on available HTTP methods.
+    * Gets the comma separated list of the enabled TLS protocols.
+    *
+    * @return The enabled protocols, null when the <code>https.protocols</code> system property is used.
     */
-   public static enum Method {
-      GET, POST, HEAD, OPTIONS, PUT, DELETE, TRACE, PATCH
+   public String getTlsProtocols() {
+      return tls.getProtocols();
    }
 
    /**
-    * The list of response codes that are expected to be returned by HTTP response.
+    * Sets the comma separated list of the enabled TLS protocols.
+    *
+    * @param tlsProtocols
+    *    The enabled protocols (e.g. <code>TLSv1.2,TLSv1.3</code>), null to use the <code>https.protocols</code> system property.
+    * @return Instance of this to support fluent API.
     */
-   private List<Integer> expectedResponseCodeList = new ArrayList<>();
+   public HttpClientSender setTlsProtocols(final String tlsProtocols) {
+      tls.setProtocols(tlsProtocols);
+      return this;
+   }
 
    /**
-    * The property for expected response codes.
+    * Gets the comma separated list of the enabled TLS cipher suites.
+    *
+    * @return The enabled cipher suites, null when the <code>https.cipherSuites</code> system property is used.
     */
-   private String expectedResponseCodes = null;
+   public String getTlsCipherSuites() {
+      return tls.getCipherSuites();
+   }
 
    /**
-    * When true, cookies are stored between HTTP requests.
+    * Sets the comma separated list of the enabled TLS cipher suites.
+    *
+    * @param tlsCipherSuites
+    *    The enabled cipher suites, null to use the <code>https.cipherSuites</code> system property.
+    * @return Instance of this to support fluent API.
     */
-   private boolean storeCookies = false;
+   public HttpClientSender setTlsCipherSuites(final String tlsCipherSuites) {
+      tls.setCipherSuites(tlsCipherSuites);
+      return this;
+   }
 
    /**
-    * Cookies storage for each client.
+    * Gets the maximum number of cached TLS client sessions.
+    *
+    * @return The session cache size, a negative value when the JVM default is used.
     */
-   private static ThreadLocal<CookieManager> localCookieManager = new ThreadLocal<>();
+   public int getTlsSessionCacheSize() {
+      return tls.getSessionCacheSize();
+   }
 
    /**
-    * The request payload.
+    * Sets the maximum number of cached TLS client sessions.
+    *
+    * @param tlsSessionCacheSize
+    *    The session cache size, zero for an unlimited cache, a negative value to keep the JVM default.
+    * @return Instance of this to support fluent API.
     */
-   private String payload;
+   public HttpClientSender setTlsSessionCacheSize(final int tlsSessionCacheSize) {
+      tls.setSessionCacheSize(tlsSessionCacheSize);
+      return this;
+   }
 
    /**
-    * The request payload length.
+    * Gets the timeout of the cached TLS client sessions in seconds.
+    *
+    * @return The session timeout, a negative value when the JVM default is used.
     */
-   private int payloadLength;
+   public int getTlsSessionTimeout() {
+      return tls.getSessionTimeout();
+   }
 
-   @Override
-   public void doInit(final Properties messageAttributes) throws PerfCakeException {
-      final String targetUrl = safeGetTarget(messageAttributes);
-      try {
-         if (log.isDebugEnabled()) {
-            log.debug("Setting target URL to: " + targetUrl);
-         }
-         url = new URL(targetUrl);
-      } catch (MalformedURLException e) {
-         throw new PerfCakeException(String.format("Cannot initialize HTTP connection, invalid URL %s: ", targetUrl), e);
-      }
+   /**
+    * Sets the timeout of the cached TLS client sessions in seconds.
+    *
+    * @param tlsSessionTimeout
+    *    The session timeout, zero for no timeout, a negative value to keep the JVM default.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setTlsSessionTimeout(final int tlsSessionTimeout) {
+      tls.setSessionTimeout(tlsSessionTimeout);
+      return this;
    }
 
-   @Override
-   public void doClose() {
-      // nop
+   /**
+    * Gets whether each request performs a full TLS handshake.
+    *
+    * @return True if and only if the sessions are never resumed and the connections are never reused.
+    */
+   public boolean isTlsFullHandshake() {
+      return tls.isFullHandshake();
    }
 
    /**
-    * Sets the value of expectedResponseCodes property.
+    * Sets whether each request performs a full TLS handshake. The negotiated sessions are invalidated and the connections
+    * are not reused, which allows testing the handshake capacity of the target.
     *
-    * @param expectedResponseCodes
-    *    The expectedResponseCodes property to set.
+    * @param tlsFullHandshake
+    *    True if and only if each request should perform a full handshake.
     * @return Instance of this to support fluent API.
     */
-   public HttpClientSender setExpectedResponseCodes(final String expectedResponseCodes) {
-      this.expectedResponseCodes = expectedResponseCodes;
-      setExpectedResponseCodesList(expectedResponseCodes.split(","));
+   public HttpClientSender setTlsFullHandshake(final boolean tlsFullHandshake) {
+      tls.setFullHandshake(tlsFullHandshake);
       return this;
    }
 
    /**
-    * Gets the list of expected response codes.
+    * Gets whether the numbers of the TLS handshakes are reported.
     *
-    * @return The list of expected response codes.
+    * @return True if and only if the TLS handshakes are counted.
     */
-   public List<Integer> getExpectedResponseCodeList() {
-      return expectedResponseCodeList;
+   public boolean isCountTlsHandshakes() {
+      return countTlsHandshakes;
    }
 
    /**
-    * Gets the value of expectedResponseCodes property.
+    * Sets whether the total numbers of the TLS handshakes and the resumed handshakes performed by the client are reported
+    * as measurement results. The handshakes in the HTTP/2 mode are not counted.
     *
-    * @return The expectedResponseCodes.
+    * @param countTlsHandshakes
+    *    True if and only if the TLS handshakes should be counted.
+    * @return Instance of this to support fluent API.
     */
-   public String getExpectedResponseCodes() {
-      return expectedResponseCodes;
+   public HttpClientSender setCountTlsHandshakes(final boolean countTlsHandshakes) {
+      this.countTlsHandshakes = countTlsHandshakes;
+      return this;
    }
 
    /**
-    * Sets a list of expected response codes.
+    * Gets the arrival rate of the requests in the open model.
     *
-    * @param codes
-    *    The array of codes.
-    * @return Instance of this to support fluent API.
+    * @return The arrival rate in requests per second, zero when the open model is disabled.
     */
-   protected HttpClientSender setExpectedResponseCodesList(final String[] codes) {
-      final LinkedList<Integer> numCodes = new LinkedList<Integer>();
-      for (final String code : codes) {
-         numCodes.add(Integer.parseInt(code.trim()));
-      }
-      expectedResponseCodeList = numCodes;
+   public double getArrivalRate() {
+      return arrivalRate;
+   }
 
+   /**
+    * Sets the arrival rate of the requests for all the senders connecting to the same target. A positive value enables
+    * the open model, in which each request waits for its intended start time given by the schedule instead of being sent
+    * immediately. The latencies measured from the intended and the actual start times and their percentiles are reported
+    * as measurement results. There must be enough sender threads to keep up with the rate, otherwise the requests start late
+    * and the corrected latencies grow.
+    *
+    * @param arrivalRate
+    *    The arrival rate in requests per second, zero to disable the open model.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setArrivalRate(final double arrivalRate) {
+      this.arrivalRate = arrivalRate;
       return this;
    }
 
    /**
-    * Checks if the code is expected.
+    * Gets the arrival rate at the beginning of the ramp up.
     *
-    * @param code
-    *    Checked response code.
-    * @return true/false according to if the code is expected or not.
+    * @return The initial arrival rate in requests per second.
     */
-   private boolean checkResponseCode(final int code) {
-      if (expectedResponseCodeList.isEmpty()) {
-         return true;
-      }
-      for (final int i : expectedResponseCodeList) {
-         if (i == code) {
-            return true;
-         }
-      }
-      return false;
+   public double getInitialArrivalRate() {
+      return initialArrivalRate;
    }
 
-   @Override
-   public void preSend(final Message message, final Properties messageAttributes) throws Exception {
-      super.preSend(message, messageAttributes);
-
-      if (storeCookies && localCookieManager.get() == null) {
-         localCookieManager.set(new CookieManager(null, CookiePolicy.ACCEPT_ALL));
-      }
-
-      currentMethod = getDynamicMethod(messageAttributes);
-
-      payloadLength = 0;
-      if (message == null) {
-         payload = null;
-      } else if (message.getPayload() != null) {
-         payload = message.getPayload().toString();
-         payloadLength = payload.length();
-      }
-
-      final URI uri = url.toURI();
-      switch (currentMethod) {
-         case GET:
-            currentRequest = new HttpGet(uri);
-            break;
-         case POST:
-            currentRequest = new HttpPost(uri);
-            break;
-         case PUT:
-            currentRequest = new HttpPut(uri);
-            break;
-         case PATCH:
-            currentRequest = new HttpPatch(uri);
-            break;
-         case DELETE:
-            currentRequest = new HttpDelete(uri);
-            break;
-         case HEAD:
-            currentRequest = new HttpHead(uri);
-            break;
-         case TRACE:
-            currentRequest = new HttpTrace(uri);
-            break;
-         case OPTIONS:
-            currentRequest = new HttpOptions(uri);
-      }
-
-      StringEntity msg = null;
-      if (payload != null && (currentRequest instanceof HttpEntityEnclosingRequestBase)) {
-         ((HttpEntityEnclosingRequestBase) currentRequest).setEntity(new StringEntity(payload, ContentType.create("text/plain", Utils.getDefaultEncoding())));
-      }
-
-      if (storeCookies) {
-         popCookies();
-      }
-
-      if (log.isDebugEnabled()) {
-         log.debug("Setting HTTP headers: ");
-      }
-
-      // set message properties as HTTP headers
-      if (message != null) {
-         for (final Entry<Object, Object> property : message.getProperties().entrySet()) {
-            final String pKey = property.getKey().toString();
-            final String pValue = property.getValue().toString();
-            currentRequest.setHeader(pKey, pValue);
-            if (log.isDebugEnabled()) {
-               log.debug(pKey + ": " + pValue);
-            }
-         }
-      }
-
-      // set message headers as HTTP headers
-      if (message != null) {
-         if (message.getHeaders().size() > 0) {
-            for (final Entry<Object, Object> property : message.getHeaders().entrySet()) {
-               final String pKey = property.getKey().toString();
-               final String pValue = property.getValue().toString();
-               currentRequest.setHeader(pKey, pValue);
-               if (log.isDebugEnabled()) {
-                  log.debug(pKey + ": " + pValue);
-               }
-            }
-         }
-      }
-
-      if (log.isDebugEnabled()) {
-         log.debug("End of HTTP headers.");
-      }
+   /**
+    * Sets the arrival rate at the beginning of the ramp up.
+    *
+    * @param initialArrivalRate
+    *    The initial arrival rate in requests per second.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setInitialArrivalRate(final double initialArrivalRate) {
+      this.initialArrivalRate = initialArrivalRate;
+      return this;
    }
 
-   @Override
-   public Serializable doSend(final Message message, final MeasurementUnit measurementUnit) throws Exception {
-      currentHttpResponse = httpClient.execute(currentRequest);
-
-      final int respCode = currentHttpResponse.getStatusLine().getStatusCode();
-
-      if (!checkResponseCode(respCode)) {
-         final StringBuilder errorMess = new StringBuilder();
-         errorMess.append("The server returned an unexpected HTTP response code: ").append(respCode).append(" ").append("\"").append(currentHttpResponse.getStatusLine().getReasonPhrase()).append("\". Expected HTTP codes are ");
-         for (final int code : expectedResponseCodeList) {
-            errorMess.append(Integer.toString(code)).append(", ");
-         }
-         throw new PerfCakeException(errorMess.substring(0, errorMess.length() - 2) + ".");
-      }
-      return new String(EntityUtils.toByteArray(currentHttpResponse.getEntity()), Utils.getDefaultEncoding());
+   /**
+    * Gets the duration of the linear ramp up of the arrival rate.
+    *
+    * @return The ramp up period in milliseconds.
+    */
+   public long getRampUpPeriod() {
+      return rampUpPeriod;
    }
 
-   @Override
-   public void postSend(final Message message) throws Exception {
-      super.postSend(message);
+   /**
+    * Sets the duration of the linear ramp up from the initial to the target arrival rate.
+    *
+    * @param rampUpPeriod
+    *    The ramp up period in milliseconds, zero for a constant arrival rate.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setRampUpPeriod(final long rampUpPeriod) {
+      this.rampUpPeriod = rampUpPeriod;
+      return this;
+   }
 
-      if (storeCookies) {
-         pushCookies();
-      }
+   /**
+    * Gets the latency percentiles reported in the open model.
+    *
+    * @return The comma separated list of percentiles.
+    */
+   public String getLatencyPercentiles() {
+      return latencyPercentiles;
    }
 
    /**
-    * Stores cookies from request connection in the thread local cookie manager.
+    * Sets the latency percentiles reported in the open model.
+    *
+    * @param latencyPercentiles
+    *    The comma separated list of percentiles (e.g. <code>50,99,99.9</code>).
+    * @return Instance of this to support fluent API.
     */
-   private void pushCookies() throws IOException {
-      final List<Header> cookiesHeader = Arrays.asList(currentHttpResponse.getHeaders(COOKIES_HEADER));
+   public HttpClientSender setLatencyPercentiles(final String latencyPercentiles) {
+      this.latencyPercentiles = latencyPercentiles;
+      return this;
+   }
 
-      if (cookiesHeader != null) {
-         for (Header cookie : cookiesHeader) {
-            localCookieManager.get().getCookieStore().add(null, HttpCookie.parse(cookie.getValue()).get(0));
-         }
-      }
+   /**
+    * Gets whether the durations of the individual request phases are reported.
+    *
+    * @return True if and only if the phase timings are reported.
+    */
+   public boolean isPhaseTimings() {
+      return phaseTimings;
    }
 
    /**
-    * Sets the stored cookies to the request connection.
+    * Sets whether the durations of the individual request phases are reported as measurement results. The blocking client
+    * reports the host name resolution, connection establishment, TLS handshake, time to first byte, transfer time and whether
+    * a pooled connection was reused. The asynchronous mode reports only the time to first byte and the transfer time.
+    * All the durations are in milliseconds.
+    *
+    * @param phaseTimings
+    *    True if and only if the phase timings should be reported.
+    * @return Instance of this to support fluent API.
     */
-   private void popCookies() throws IOException {
-      if (localCookieManager.get().getCookieStore().getCookies().size() > 0) {
-         currentRequest.setHeader("Cookie",
-            StringUtils.join(localCookieManager.get().getCookieStore().getCookies(), ";"));
-      }
+   public HttpClientSender setPhaseTimings(final boolean phaseTimings) {
+      this.phaseTimings = phaseTimings;
+      return this;
    }
 
    /**
-    * Gets the value of HTTP method.
+    * Gets the content type of the request payload.
     *
-    * @return The HTTP method.
+    * @return The content type.
     */
-   public Method getMethod() {
-      return method;
+   public String getContentType() {
+      return contentType;
    }
 
    /**
-    * Sets the value of HTTP method.
+    * Sets the content type of the request payload. A text type without an explicit charset is encoded in the default encoding.
     *
-    * @param method
-    *    The HTTP method to set.
+    * @param contentType
+    *    The content type (e.g. <code>application/octet-stream</code>).
     * @return Instance of this to support fluent API.
     */
-   public HttpClientSender setMethod(final Method method) {
-      this.method = method;
+   public HttpClientSender setContentType(final String contentType) {
+      this.contentType = contentType;
       return this;
    }
 
    /**
-    * Sets the template used to determine HTTP method dynamically.
+    * Gets the path of the file streamed as the body of each request.
     *
-    * @param dynamicMethod
-    *    The string template to dynamically determine HTTP method.
+    * @return The path of the payload file, null when the message payload is sent.
+    */
+   public String getPayloadFile() {
+      return payloadFile == null ? null : payloadFile.getPath();
+   }
+
+   /**
+    * Sets the path of the file streamed as the body of each request instead of the message payload. The file is never
+    * loaded into memory, in the asynchronous and batch modes it is transferred directly from the file channel to the socket.
+    *
+    * @param payloadFile
+    *    The path of the payload file, null or empty to send the message payload.
     * @return Instance of this to support fluent API.
     */
-   public HttpClientSender setDynamicMethod(final String dynamicMethod) {
-      if (dynamicMethod == null || dynamicMethod.isEmpty()) {
-         this.dynamicMethod = null;
-      } else {
-         this.dynamicMethod = new StringTemplate(dynamicMethod);
-      }
+   public HttpClientSender setPayloadFile(final String payloadFile) {
+      this.payloadFile = payloadFile == null || payloadFile.isEmpty() ? null : new File(payloadFile);
       return this;
    }
 
    /**
-    * Gets the template used to determine HTTP method dynamically.
+    * Gets whether the request body is sent using the chunked transfer encoding.
     *
-    * @param placeholders
-    *    The properties to render the string template.
-    * @return The HTTP method.
+    * @return True if and only if the chunked transfer encoding is used.
     */
-   public Method getDynamicMethod(final Properties placeholders) {
-      if (dynamicMethod == null) {
-         return this.method;
-      } else {
-         return Method.valueOf(dynamicMethod.toString(placeholders));
-      }
+   public boolean isChunked() {
+      return chunked;
+   }
+
+   /**
+    * Sets whether the request body is sent using the chunked transfer encoding instead of a known content length.
+    *
+    * @param chunked
+    *    True if and only if the chunked transfer encoding should be used.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setChunked(final boolean chunked) {
+      this.chunked = chunked;
+      return this;
    }
 
    /**
@@ -438,4 +2437,53 @@ public class HttpClientSender extends AbstractSender {
 
       return this;
    }
+
+   /**
+    * Gets the template used to determine the session (virtual user) the cookies belong to.
+    *
+    * @return The string template of the session id, null when each sender thread is a separate session.
+    */
+   public String getCookieSession() {
+      return cookieSession;
+   }
+
+   /**
+    * Sets the template used to determine the session (virtual user) the cookies belong to.
+    *
+    * @param cookieSession
+    *    The string template rendered with the message attributes to obtain the session id, null or empty
+    *    to use a separate session for each sender thread.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setCookieSession(final String cookieSession) {
+      if (cookieSession == null || cookieSession.isEmpty()) {
+         this.cookieSession = null;
+         this.cookieSessionTemplate = null;
+      } else {
+         this.cookieSession = cookieSession;
+         this.cookieSessionTemplate = new StringTemplate(cookieSession);
+      }
+      return this;
+   }
+
+   /**
+    * Gets the maximum number of sessions with stored cookies.
+    *
+    * @return The maximum number of sessions.
+    */
+   public int getMaxCookieSessions() {
+      return maxCookieSessions;
+   }
+
+   /**
+    * Sets the maximum number of sessions with stored cookies. The least recently used sessions are evicted when exceeded.
+    *
+    * @param maxCookieSessions
+    *    The maximum number of sessions.
+    * @return Instance of this to support fluent API.
+    */
+   public HttpClientSender setMaxCookieSessions(final int maxCookieSessions) {
+      this.maxCookieSessions = maxCookieSessions;
+      return this;
+   }
 }
@@ -0,0 +1,151 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.util.EntityUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Tests the HTTP/2 transport against an embedded h2c server.
+ */
+public class Http2ClientTest {
+
+   private static final int BODY_SIZE = 4 * 1024 * 1024;
+
+   private HttpAsyncServer server;
+
+   private URI uri;
+
+   private Http2Client client;
+
+   private File payload;
+
+   @BeforeClass
+   public void startServer() throws Exception {
+      final byte[] responseBody = new byte[BODY_SIZE];
+      Arrays.fill(responseBody, (byte) 'x');
+
+      server = H2ServerBootstrap.bootstrap().setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_2).register("*", new AsyncServerRequestHandler<Message<HttpRequest, byte[]>>() {
+         @Override
+         public AsyncRequestConsumer<Message<HttpRequest, byte[]>> prepare(final HttpRequest request, final EntityDetails entityDetails, final HttpContext context) {
+            return new BasicRequestConsumer<>(entityDetails == null ? null : new BasicAsyncEntityConsumer());
+         }
+
+         @Override
+         public void handle(final Message<HttpRequest, byte[]> message, final ResponseTrigger responseTrigger, final HttpContext context) throws org.apache.hc.core5.http.HttpException, java.io.IOException {
+            final BasicHttpResponse response = new BasicHttpResponse(200);
+            response.addHeader("X-Received", message.getBody() == null ? 0 : message.getBody().length);
+            responseTrigger.submitResponse(new BasicResponseProducer(response, AsyncEntityProducers.create(responseBody, org.apache.hc.core5.http.ContentType.APPLICATION_OCTET_STREAM)), context);
+         }
+      }).create();
+      server.start();
+
+      final ListenerEndpoint endpoint = server.listen(new InetSocketAddress("localhost", 0)).get();
+      uri = new URI("http://localhost:" + ((InetSocketAddress) endpoint.getAddress()).getPort() + "/test");
+      client = new Http2Client(1, 10, 10_000, SSLContext.getDefault(), new TlsSettings());
+
+      payload = File.createTempFile("perfcake-http2-", ".bin");
+      payload.deleteOnExit();
+      try (OutputStream out = Files.newOutputStream(payload.toPath())) {
+         final byte[] chunk = new byte[64 * 1024];
+         for (int i = 0; i < BODY_SIZE / chunk.length; i++) {
+            out.write(chunk);
+         }
+      }
+   }
+
+   @AfterClass(alwaysRun = true)
+   public void stopServer() {
+      if (client != null) {
+         client.close();
+      }
+      if (server != null) {
+         server.close(CloseMode.GRACEFUL);
+      }
+      if (payload != null) {
+         payload.delete();
+      }
+   }
+
+   @Test
+   public void testFileUpload() throws Exception {
+      final HttpPost request = new HttpPost(uri);
+      request.setEntity(new FileEntity(payload, ContentType.APPLICATION_OCTET_STREAM));
+
+      final HttpResponse response = client.execute(request);
+
+      Assert.assertEquals(response.getStatusLine().getProtocolVersion().getMajor(), 2);
+      Assert.assertEquals(response.getStatusLine().getStatusCode(), 200);
+      Assert.assertEquals(response.getFirstHeader("X-Received").getValue(), String.valueOf(BODY_SIZE));
+      EntityUtils.consume(response.getEntity());
+   }
+
+   @Test
+   public void testStreamedResponse() throws Exception {
+      // more requests than streams, the streams must be freed once the bodies are read
+      for (int i = 0; i < 20; i++) {
+         final HttpResponse response = client.execute(new HttpGet(uri));
+         Assert.assertEquals(response.getStatusLine().getStatusCode(), 200);
+
+         long size = 0;
+         try (InputStream in = response.getEntity().getContent()) {
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+               size += n;
+            }
+         }
+         Assert.assertEquals(size, BODY_SIZE);
+      }
+   }
+}
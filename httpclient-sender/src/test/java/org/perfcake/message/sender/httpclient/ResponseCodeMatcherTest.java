@@ -0,0 +1,114 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.httpclient;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+/**
+ * Tests the parsing of the expected response code specifications.
+ */
+public class ResponseCodeMatcherTest {
+
+   @Test
+   public void testSingleCodes() {
+      final ResponseCodeMatcher matcher = new ResponseCodeMatcher("200, 204,404");
+
+      Assert.assertFalse(matcher.isMatchAll());
+      Assert.assertEquals(matcher.toList(), Arrays.asList(200, 204, 404));
+      Assert.assertTrue(matcher.matches(204));
+      Assert.assertFalse(matcher.matches(201));
+   }
+
+   @Test
+   public void testRangesAndClasses() {
+      final ResponseCodeMatcher matcher = new ResponseCodeMatcher("200-202,3xx, 4XX");
+
+      Assert.assertTrue(matcher.matches(200));
+      Assert.assertTrue(matcher.matches(202));
+      Assert.assertFalse(matcher.matches(203));
+      Assert.assertFalse(matcher.matches(299));
+      Assert.assertTrue(matcher.matches(300));
+      Assert.assertTrue(matcher.matches(399));
+      Assert.assertTrue(matcher.matches(404));
+      Assert.assertTrue(matcher.matches(499));
+      Assert.assertFalse(matcher.matches(500));
+      Assert.assertEquals(matcher.toList().size(), 3 + 100 + 100);
+   }
+
+   @Test
+   public void testExclusions() {
+      final ResponseCodeMatcher matcher = new ResponseCodeMatcher("!503, 500-599, !5xx, 502");
+
+      // exclusions are applied after all the inclusions regardless of the order
+      Assert.assertTrue(matcher.toList().isEmpty());
+      Assert.assertFalse(matcher.isMatchAll());
+
+      final ResponseCodeMatcher range = new ResponseCodeMatcher("200-299, !204, !206-208");
+      Assert.assertTrue(range.matches(200));
+      Assert.assertFalse(range.matches(204));
+      Assert.assertTrue(range.matches(205));
+      Assert.assertFalse(range.matches(206));
+      Assert.assertFalse(range.matches(208));
+      Assert.assertTrue(range.matches(209));
+
+      final ResponseCodeMatcher onlyExclusions = new ResponseCodeMatcher("!5xx");
+      Assert.assertFalse(onlyExclusions.isMatchAll());
+      Assert.assertTrue(onlyExclusions.matches(200));
+      Assert.assertTrue(onlyExclusions.matches(999));
+      Assert.assertFalse(onlyExclusions.matches(503));
+   }
+
+   @Test
+   public void testBoundaries() {
+      final ResponseCodeMatcher matcher = new ResponseCodeMatcher("990-999, 0");
+
+      Assert.assertTrue(matcher.matches(0));
+      Assert.assertTrue(matcher.matches(999));
+      Assert.assertFalse(matcher.matches(1000));
+      Assert.assertFalse(matcher.matches(-1));
+      Assert.assertTrue(new ResponseCodeMatcher("9xx").matches(999));
+      Assert.assertTrue(new ResponseCodeMatcher("999").matches(999));
+   }
+
+   @Test
+   public void testMatchAll() {
+      for (final String specification : new String[] { null, "", " , " }) {
+         final ResponseCodeMatcher matcher = new ResponseCodeMatcher(specification);
+         Assert.assertTrue(matcher.isMatchAll());
+         Assert.assertTrue(matcher.matches(1000));
+         Assert.assertTrue(matcher.toList().isEmpty());
+      }
+   }
+
+   @Test
+   public void testInvalidSpecifications() {
+      for (final String specification : new String[] { "abc", "1000", "998-1000", "300-200", "-1", "200-", "xx", "ax", "20x", "!", "2xx-3xx" }) {
+         try {
+            new ResponseCodeMatcher(specification);
+            Assert.fail("The specification should be rejected: " + specification);
+         } catch (IllegalArgumentException e) {
+            // expected
+         }
+      }
+   }
+}
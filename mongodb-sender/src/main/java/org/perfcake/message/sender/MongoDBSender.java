@@ -21,32 +21,69 @@ package org.perfcake.message.sender;
 
 import org.perfcake.PerfCakeException;
 import org.perfcake.message.Message;
+import org.perfcake.message.sender.mongodb.BulkStatistics;
+import org.perfcake.message.sender.mongodb.ClientSettings;
+import org.perfcake.message.sender.mongodb.CommandResults;
+import org.perfcake.message.sender.mongodb.CommandTemplate;
+import org.perfcake.message.sender.mongodb.CrudExecutor;
+import org.perfcake.message.sender.mongodb.InFlightWindow;
+import org.perfcake.message.sender.mongodb.ResultHandling;
+import org.perfcake.message.sender.mongodb.RoundTripListener;
+import org.perfcake.message.sender.mongodb.SharedMongoClient;
+import org.perfcake.message.sender.mongodb.WriteModels;
 import org.perfcake.reporting.MeasurementUnit;
 
-import com.mongodb.MongoClient;
-import com.mongodb.MongoClientOptions;
-import com.mongodb.MongoCredential;
-import com.mongodb.ServerAddress;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.bson.BsonDocument;
+import org.bson.BsonString;
 
-import java.io.BufferedReader;
 import java.io.Serializable;
-import java.io.StringReader;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 /**
  * This sender takes the message, line by line and evaluates it as commands at the connected MongoDB.
+ * In the bulk mode, the lines are documents to be inserted or write operations, and they are sent to the collection
+ * in batches using <code>insertMany</code> or <code>bulkWrite</code>.
+ * The lines of a message are parsed only once, the placeholders <code>#{attribute}</code> and <code>#{function(arguments)}</code>
+ * are replaced in the parsed commands in each iteration (see {@link CommandTemplate}). Together with {@link #repeat}, this allows
+ * generating many distinct documents from a single line template.
+ * In the asynchronous mode, the commands or bulk operations of a message are pipelined using the asynchronous driver,
+ * keeping up to {@link #maxInFlight} of them in flight at a time.
+ * The target is either an address of a single server, or a connection string (see {@link ClientSettings}). The read preference
+ * of the connection string applies to all the commands.
+ * Optionally, the time, the result code and the execution statistics of each command are reported (see {@link CommandResults}).
+ * With {@link #typedOperations}, the lines are CRUD operations executed using the collection API with streamed cursor iteration
+ * (see {@link CrudExecutor}).
+ * Before the test, the connections can be opened and authenticated in advance ({@link #warmUpConnections}) and each sender
+ * can send the first message a number of times without the results being measured ({@link #warmUpIterations}).
  *
  * @author Martin Večeřa <marvenec@gmail.com>
  */
 public class MongoDBSender extends AbstractSender {
 
    /**
-    * Client for the MongoDB
+    * The sender's logger.
     */
-   private MongoClient mongoClient;
+   private static final Logger log = LogManager.getLogger(MongoDBSender.class);
+
+   /**
+    * Client for the MongoDB, shared with the other senders using the same settings
+    */
+   private SharedMongoClient mongoClient;
 
    /**
     * Name of the database to be used
@@ -69,53 +106,575 @@ public class MongoDBSender extends AbstractSender {
    private String dbPassword = null;
 
    /**
-    * Size of the connection pool for MongoDB per one Sender instance
+    * Maximum size of the connection pool for MongoDB per server
+    */
+   private int connectionPoolSize = 100;
+
+   /**
+    * Minimum number of connections per server kept open in the pool
+    */
+   private int minPoolSize = 0;
+
+   /**
+    * Maximum number of operations waiting for a connection from the pool
+    */
+   private int maxWaitQueueSize = 500;
+
+   /**
+    * Maximum time in milliseconds an operation waits for a connection from the pool
+    */
+   private int maxWaitTime = 120_000;
+
+   /**
+    * Connection timeout in milliseconds
+    */
+   private int connectTimeout = 10_000;
+
+   /**
+    * Socket read timeout in milliseconds, 0 means no timeout
+    */
+   private int socketTimeout = 0;
+
+   /**
+    * Frequency in milliseconds of the server monitor checks
+    */
+   private int heartbeatFrequency = 10_000;
+
+   /**
+    * Whether the client and its connection pool are shared among all the sender instances with the same settings
+    */
+   private boolean sharedClient = true;
+
+   /**
+    * Name of the collection used by the bulk mode
+    */
+   private String collection = null;
+
+   /**
+    * Number of message lines sent to the server in a single bulk operation, the bulk mode is disabled when it is 0
+    */
+   private int bulkBatchSize = 0;
+
+   /**
+    * Whether the bulk operations are ordered, i.e. the server stops at the first failed write
+    */
+   private boolean bulkOrdered = true;
+
+   /**
+    * Write concern of the bulk operations, either a name of a predefined concern (e.g. ACKNOWLEDGED, MAJORITY) or a number of nodes
+    */
+   private String writeConcern = null;
+
+   /**
+    * Whether the commands are executed by the asynchronous driver
+    */
+   private boolean async = false;
+
+   /**
+    * Maximum number of commands or bulk operations of a single message in flight in the asynchronous mode
+    */
+   private int maxInFlight = 10;
+
+   /**
+    * Whether the lines of the message are typed CRUD operations executed using the collection API (see {@link CrudExecutor})
+    */
+   private boolean typedOperations = false;
+
+   /**
+    * What is done with the documents returned by the typed read operations
+    */
+   private ResultHandling resultHandling = ResultHandling.DRAIN;
+
+   /**
+    * Executes the typed operations, null when they are not used
+    */
+   private CrudExecutor crudExecutor;
+
+   /**
+    * Number of times the lines of the message are rendered and sent in a single iteration, e.g. to insert many generated documents
+    */
+   private int repeat = 1;
+
+   /**
+    * Number of connections opened and authenticated during the initialization, 0 means that they are opened on demand. At most as many connections as the pool size are opened.
+    */
+   private int warmUpConnections = 0;
+
+   /**
+    * Number of times the first message is sent by each sender before the measurement starts, the results of these iterations are discarded
+    */
+   private int warmUpIterations = 0;
+
+   /**
+    * Whether the warm-up iterations have already been performed
+    */
+   private boolean warmedUp;
+
+   /**
+    * Collection used by the bulk mode
+    */
+   private MongoCollection<BsonDocument> bulkCollection;
+
+   /**
+    * MongoDB database object used in the asynchronous mode
+    */
+   private com.mongodb.async.client.MongoDatabase asyncDb;
+
+   /**
+    * Collection used by the bulk mode in the asynchronous mode
+    */
+   private com.mongodb.async.client.MongoCollection<BsonDocument> asyncBulkCollection;
+
+   /**
+    * Operations in flight in the asynchronous mode
+    */
+   private InFlightWindow window;
+
+   /**
+    * Whether the time, the result code and the driver round trip time of each command are reported
+    */
+   private boolean commandMetrics = false;
+
+   /**
+    * Whether the execution statistics of each command are obtained by the <code>explain</code> command after the measurement
+    */
+   private boolean explainCommands = false;
+
+   /**
+    * Results of the commands of the last message waiting for the execution statistics
     */
-   private int connectionPoolSize = 5;
+   private CommandResults commandResults;
+
+   /**
+    * The commands of the last message to be explained, null when there are none
+    */
+   private List<BsonDocument> explainedCommands;
+
+   /**
+    * Measurement unit of the last message waiting for the execution statistics
+    */
+   private MeasurementUnit explainedUnit;
+
+   /**
+    * The message the cached commands were parsed from
+    */
+   private Message cachedMessage;
+
+   /**
+    * The payload of the cached message at the time the commands were parsed
+    */
+   private String cachedPayload;
+
+   /**
+    * Parsed commands of the cached message
+    */
+   private List<CommandTemplate> cachedCommands;
+
+   /**
+    * Attributes of the message being sent
+    */
+   private Properties currentAttributes;
 
    @Override
    public void doInit(final Properties messageAttributes) throws PerfCakeException {
-      final String t = getTarget(messageAttributes);
-      final ServerAddress a;
-
-      if (t.contains(":")) {
-         final String[] addr = t.split(":", 2);
-         final String host = addr[0];
-         final int port = Integer.valueOf(addr[1]);
-         a = new ServerAddress(host, port);
-      } else {
-         a = new ServerAddress(t);
+      final ClientSettings settings = new ClientSettings(getTarget(messageAttributes), dbName, dbUsername, dbPassword);
+      settings.setMaxPoolSize(connectionPoolSize);
+      settings.setMinPoolSize(minPoolSize);
+      settings.setMaxWaitQueueSize(maxWaitQueueSize);
+      settings.setMaxWaitTime(maxWaitTime);
+      settings.setConnectTimeout(connectTimeout);
+      settings.setSocketTimeout(socketTimeout);
+      settings.setHeartbeatFrequency(heartbeatFrequency);
+      settings.setCommandListener(commandMetrics && !async);
+      if (settings.getDatabase() == null) {
+         throw new PerfCakeException("The database name must be specified either by the dbName property or in the connection string.");
+      }
+
+      if (bulkBatchSize > 0 && collection == null) {
+         throw new PerfCakeException("The collection must be specified in the bulk mode.");
       }
+      if (typedOperations && (async || bulkBatchSize > 0)) {
+         throw new PerfCakeException("The typed operations cannot be combined with the asynchronous or the bulk mode.");
+      }
+      final WriteConcern concern = writeConcern == null ? null : parseWriteConcern(writeConcern);
+      mongoClient = SharedMongoClient.acquire(settings, async, sharedClient);
+
+      if (async) {
+         asyncDb = mongoClient.getAsyncClient().getDatabase(settings.getDatabase());
+         window = new InFlightWindow(maxInFlight);
 
-      if (dbUsername != null) {
-         final MongoCredential c = MongoCredential.createScramSha1Credential(dbUsername, dbName, dbPassword.toCharArray());
-         mongoClient = new MongoClient(a, Collections.singletonList(c), MongoClientOptions.builder().connectionsPerHost(connectionPoolSize).build());
+         if (bulkBatchSize > 0) {
+            asyncBulkCollection = asyncDb.getCollection(collection, BsonDocument.class);
+            if (concern != null) {
+               asyncBulkCollection = asyncBulkCollection.withWriteConcern(concern);
+            }
+         }
       } else {
-         mongoClient = new MongoClient(a, MongoClientOptions.builder().connectionsPerHost(connectionPoolSize).build());
+         db = mongoClient.getClient().getDatabase(settings.getDatabase());
+
+         if (typedOperations) {
+            crudExecutor = new CrudExecutor(db, collection, resultHandling);
+         }
+
+         if (bulkBatchSize > 0) {
+            bulkCollection = db.getCollection(collection, BsonDocument.class);
+            if (concern != null) {
+               bulkCollection = bulkCollection.withWriteConcern(concern);
+            }
+         }
+      }
+
+      if (warmUpConnections > 0) {
+         try {
+            mongoClient.warmUp(settings.getDatabase(), warmUpConnections);
+         } catch (MongoException | InterruptedException e) {
+            throw new PerfCakeException("Unable to open the connections in advance: ", e);
+         }
       }
+      warmedUp = warmUpIterations <= 0;
+   }
 
-      db = mongoClient.getDatabase(dbName);
+   private static WriteConcern parseWriteConcern(final String writeConcern) throws PerfCakeException {
+      if (writeConcern.matches("\\d+")) {
+         return new WriteConcern(Integer.parseInt(writeConcern));
+      }
+
+      final WriteConcern concern = WriteConcern.valueOf(writeConcern);
+      if (concern == null) {
+         throw new PerfCakeException("Unknown write concern: " + writeConcern);
+      }
+      return concern;
    }
 
    @Override
    public void doClose() throws PerfCakeException {
-      mongoClient.close();
+      if (mongoClient != null) {
+         mongoClient.release();
+         mongoClient = null;
+      }
+   }
+
+   @Override
+   public void preSend(final Message message, final Properties messageAttributes) throws Exception {
+      super.preSend(message, messageAttributes);
+      currentAttributes = messageAttributes;
+
+      if (!warmedUp) {
+         warmedUp = true;
+         warmUp(message);
+      }
+   }
+
+   /**
+    * Sends the message {@link #warmUpIterations} times and discards the results. A failure stops the warm-up, the message
+    * is then sent in the measured iteration and fails there.
+    *
+    * @param message
+    *       The message to be sent.
+    */
+   private void warmUp(final Message message) {
+      try {
+         for (int i = 0; i < warmUpIterations; i++) {
+            try {
+               doSend(message, new MeasurementUnit(-1));
+            } finally {
+               // the results waiting to be explained belong to the discarded iteration
+               commandResults = null;
+               explainedCommands = null;
+               explainedUnit = null;
+            }
+         }
+      } catch (Exception e) {
+         log.warn("Warm-up iteration failed: ", e);
+      }
    }
 
    @Override
    public Serializable doSend(final Message message, final MeasurementUnit measurementUnit) throws Exception {
-      try (StringReader sr = new StringReader(message.getPayload().toString());
-            BufferedReader reader = new BufferedReader(sr)) {
-         String line = reader.readLine();
-         while (line != null) {
-            db.runCommand(BsonDocument.parse(line));
-            line = reader.readLine();
+      final List<CommandTemplate> commands = getCommands(message);
+
+      if (bulkCollection != null || asyncBulkCollection != null) {
+         sendBulk(commands, measurementUnit);
+      } else if (async) {
+         sendAsync(commands, measurementUnit);
+      } else if (crudExecutor != null) {
+         sendOperations(commands, measurementUnit);
+      } else if (commandMetrics) {
+         sendMeasured(commands, measurementUnit);
+      } else {
+         for (final CommandTemplate command : commands) {
+            db.runCommand(command.render(currentAttributes), db.getReadPreference(), BsonDocument.class);
          }
       }
 
       return null;
    }
 
+   @Override
+   public void postSend(final Message message) throws Exception {
+      super.postSend(message);
+
+      // the commands are explained outside of the measured time
+      if (explainedCommands != null) {
+         try {
+            for (int i = 0; i < explainedCommands.size(); i++) {
+               try {
+                  commandResults.explained(i, db.runCommand(new BsonDocument("explain", explainedCommands.get(i)).append("verbosity", new BsonString("executionStats")),
+                        db.getReadPreference(), BsonDocument.class));
+               } catch (MongoCommandException e) {
+                  // not all the commands can be explained
+               }
+            }
+         } finally {
+            commandResults.report(explainedUnit);
+            commandResults = null;
+            explainedCommands = null;
+            explainedUnit = null;
+         }
+      }
+   }
+
+   private void sendOperations(final List<CommandTemplate> commands, final MeasurementUnit measurementUnit) throws Exception {
+      final CommandResults results = commandMetrics ? new CommandResults() : null;
+      long documents = 0;
+
+      try {
+         for (int i = 0; i < commands.size(); i++) {
+            final BsonDocument operation = commands.get(i).render(currentAttributes);
+            final long start = System.nanoTime();
+            try {
+               final long count = crudExecutor.execute(operation);
+               if (results != null) {
+                  results.completed(i, System.nanoTime() - start, count);
+               }
+               documents += Math.max(count, 0);
+            } catch (MongoException e) {
+               if (results != null) {
+                  results.failed(i, System.nanoTime() - start, -1, e);
+               }
+               throw e;
+            }
+         }
+      } finally {
+         measurementUnit.appendResult("Documents", documents);
+         if (results != null) {
+            results.report(measurementUnit);
+         }
+      }
+   }
+
+   private void sendMeasured(final List<CommandTemplate> commands, final MeasurementUnit measurementUnit) throws Exception {
+      final CommandResults results = new CommandResults();
+      final List<BsonDocument> executed = new ArrayList<>(commands.size());
+      boolean completed = false;
+
+      try {
+         for (int i = 0; i < commands.size(); i++) {
+            final BsonDocument document = commands.get(i).render(currentAttributes);
+            final long start = System.nanoTime();
+            try {
+               final BsonDocument reply = db.runCommand(document, db.getReadPreference(), BsonDocument.class);
+               results.succeeded(i, System.nanoTime() - start, RoundTripListener.takeRoundTrip(), reply);
+            } catch (MongoException e) {
+               results.failed(i, System.nanoTime() - start, RoundTripListener.takeRoundTrip(), e);
+               throw e;
+            }
+            executed.add(document);
+         }
+         completed = true;
+      } finally {
+         if (completed && explainCommands) {
+            commandResults = results;
+            explainedCommands = executed;
+            explainedUnit = measurementUnit;
+         } else {
+            results.report(measurementUnit);
+         }
+      }
+   }
+
+   private void sendAsync(final List<CommandTemplate> commands, final MeasurementUnit measurementUnit) throws Exception {
+      final CommandResults results = commandMetrics ? new CommandResults() : null;
+
+      try {
+         for (int i = 0; i < commands.size(); i++) {
+            // the synchronous mode stops at the first failed command as well
+            if (window.hasFailed()) {
+               break;
+            }
+
+            final BsonDocument document = commands.get(i).render(currentAttributes);
+            final int index = i;
+            window.acquire();
+            final long start = System.nanoTime();
+            try {
+               asyncDb.runCommand(document, asyncDb.getReadPreference(), BsonDocument.class, (reply, t) -> {
+                  if (results != null) {
+                     if (t == null) {
+                        results.succeeded(index, System.nanoTime() - start, -1, reply);
+                     } else {
+                        results.failed(index, System.nanoTime() - start, -1, t);
+                     }
+                  }
+                  window.release(t);
+               });
+            } catch (RuntimeException e) {
+               window.release(e);
+            }
+         }
+      } finally {
+         try {
+            window.await();
+         } finally {
+            if (results != null) {
+               results.report(measurementUnit);
+            }
+         }
+      }
+   }
+
+   /**
+    * Gets the parsed commands of the message. The commands are parsed again only when the message payload changes.
+    * A message rendered from a template with the same content in each iteration is parsed only once as well.
+    * The commands are repeated according to {@link #repeat}.
+    *
+    * @param message
+    *       The message to be sent.
+    * @return The parsed commands.
+    */
+   private List<CommandTemplate> getCommands(final Message message) {
+      if (message == cachedMessage && message.getPayload() == cachedPayload) {
+         return cachedCommands;
+      }
+
+      final String payload = message.getPayload().toString();
+      if (!payload.equals(cachedPayload)) {
+         final List<CommandTemplate> parsed = CommandTemplate.parseLines(payload);
+         if (repeat > 1) {
+            final List<CommandTemplate> repeated = new ArrayList<>(parsed.size() * repeat);
+            for (int i = 0; i < repeat; i++) {
+               repeated.addAll(parsed);
+            }
+            cachedCommands = repeated;
+         } else {
+            cachedCommands = parsed;
+         }
+      }
+      cachedMessage = message;
+      cachedPayload = payload;
+
+      return cachedCommands;
+   }
+
+   private void sendBulk(final List<CommandTemplate> commands, final MeasurementUnit measurementUnit) throws Exception {
+      final BulkStatistics statistics = new BulkStatistics();
+      List<WriteModel<BsonDocument>> batch = new ArrayList<>(bulkBatchSize);
+
+      try {
+         try {
+            for (final CommandTemplate command : commands) {
+               batch.add(WriteModels.parse(command.render(currentAttributes)));
+               if (batch.size() == bulkBatchSize) {
+                  writeBatch(batch, statistics);
+                  batch = new ArrayList<>(bulkBatchSize);
+               }
+            }
+
+            if (!batch.isEmpty()) {
+               writeBatch(batch, statistics);
+            }
+         } finally {
+            if (window != null) {
+               window.await();
+            }
+         }
+      } finally {
+         statistics.report(measurementUnit);
+      }
+
+      if (statistics.getFailure() != null) {
+         throw statistics.getFailure();
+      }
+   }
+
+   private void writeBatch(final List<WriteModel<BsonDocument>> batch, final BulkStatistics statistics) throws Exception {
+      final List<BsonDocument> documents = getInsertedDocuments(batch);
+
+      if (asyncBulkCollection != null) {
+         writeBatchAsync(batch, documents, statistics);
+         return;
+      }
+
+      final long start = System.nanoTime();
+      try {
+         if (documents != null) {
+            bulkCollection.insertMany(documents, new InsertManyOptions().ordered(bulkOrdered));
+         } else {
+            bulkCollection.bulkWrite(batch, new BulkWriteOptions().ordered(bulkOrdered));
+         }
+      } catch (MongoBulkWriteException e) {
+         statistics.failed(e);
+         // the remaining batches are still sent in the unordered mode, the first failure is thrown at the end
+         if (bulkOrdered) {
+            throw e;
+         }
+      } finally {
+         statistics.batch(batch.size(), System.nanoTime() - start);
+      }
+   }
+
+   private void writeBatchAsync(final List<WriteModel<BsonDocument>> batch, final List<BsonDocument> documents, final BulkStatistics statistics) throws Exception {
+      // a failure of an ordered batch stops the remaining ones
+      if (bulkOrdered && window.hasFailed()) {
+         return;
+      }
+
+      window.acquire();
+      final long start = System.nanoTime();
+      final SingleResultCallback<Object> callback = (result, t) -> {
+         statistics.batch(batch.size(), System.nanoTime() - start);
+         if (t instanceof MongoBulkWriteException) {
+            statistics.failed((MongoBulkWriteException) t);
+            window.release(bulkOrdered ? t : null);
+         } else {
+            window.release(t);
+         }
+      };
+
+      try {
+         if (documents != null) {
+            asyncBulkCollection.insertMany(documents, new InsertManyOptions().ordered(bulkOrdered), callback::onResult);
+         } else {
+            asyncBulkCollection.bulkWrite(batch, new BulkWriteOptions().ordered(bulkOrdered), callback::onResult);
+         }
+      } catch (RuntimeException e) {
+         window.release(e);
+      }
+
+      // the ordered batches must not overtake each other
+      if (bulkOrdered) {
+         window.await();
+      }
+   }
+
+   /**
+    * Gets the documents of a batch consisting only of inserts.
+    *
+    * @param batch
+    *       The write operations.
+    * @return The inserted documents, or null when there are other operations in the batch.
+    */
+   private static List<BsonDocument> getInsertedDocuments(final List<WriteModel<BsonDocument>> batch) {
+      final List<BsonDocument> documents = new ArrayList<>(batch.size());
+      for (final WriteModel<BsonDocument> model : batch) {
+         if (!(model instanceof InsertOneModel)) {
+            return null;
+         }
+         documents.add(((InsertOneModel<BsonDocument>) model).getDocument());
+      }
+      return documents;
+   }
+
    public String getDbName() {
       return dbName;
    }
@@ -147,4 +706,164 @@ public class MongoDBSender extends AbstractSender {
    public void setConnectionPoolSize(int connectionPoolSize) {
       this.connectionPoolSize = connectionPoolSize;
    }
+
+   public String getCollection() {
+      return collection;
+   }
+
+   public void setCollection(String collection) {
+      this.collection = collection;
+   }
+
+   public int getBulkBatchSize() {
+      return bulkBatchSize;
+   }
+
+   public void setBulkBatchSize(int bulkBatchSize) {
+      this.bulkBatchSize = bulkBatchSize;
+   }
+
+   public boolean isBulkOrdered() {
+      return bulkOrdered;
+   }
+
+   public void setBulkOrdered(boolean bulkOrdered) {
+      this.bulkOrdered = bulkOrdered;
+   }
+
+   public String getWriteConcern() {
+      return writeConcern;
+   }
+
+   public void setWriteConcern(String writeConcern) {
+      this.writeConcern = writeConcern;
+   }
+
+   public boolean isAsync() {
+      return async;
+   }
+
+   public void setAsync(boolean async) {
+      this.async = async;
+   }
+
+   public int getMaxInFlight() {
+      return maxInFlight;
+   }
+
+   public void setMaxInFlight(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+   }
+
+   public int getMinPoolSize() {
+      return minPoolSize;
+   }
+
+   public void setMinPoolSize(int minPoolSize) {
+      this.minPoolSize = minPoolSize;
+   }
+
+   public int getMaxWaitQueueSize() {
+      return maxWaitQueueSize;
+   }
+
+   public void setMaxWaitQueueSize(int maxWaitQueueSize) {
+      this.maxWaitQueueSize = maxWaitQueueSize;
+   }
+
+   public int getMaxWaitTime() {
+      return maxWaitTime;
+   }
+
+   public void setMaxWaitTime(int maxWaitTime) {
+      this.maxWaitTime = maxWaitTime;
+   }
+
+   public int getConnectTimeout() {
+      return connectTimeout;
+   }
+
+   public void setConnectTimeout(int connectTimeout) {
+      this.connectTimeout = connectTimeout;
+   }
+
+   public int getSocketTimeout() {
+      return socketTimeout;
+   }
+
+   public void setSocketTimeout(int socketTimeout) {
+      this.socketTimeout = socketTimeout;
+   }
+
+   public int getHeartbeatFrequency() {
+      return heartbeatFrequency;
+   }
+
+   public void setHeartbeatFrequency(int heartbeatFrequency) {
+      this.heartbeatFrequency = heartbeatFrequency;
+   }
+
+   public boolean isSharedClient() {
+      return sharedClient;
+   }
+
+   public void setSharedClient(boolean sharedClient) {
+      this.sharedClient = sharedClient;
+   }
+
+   public boolean isCommandMetrics() {
+      return commandMetrics;
+   }
+
+   public void setCommandMetrics(boolean commandMetrics) {
+      this.commandMetrics = commandMetrics;
+   }
+
+   public boolean isExplainCommands() {
+      return explainCommands;
+   }
+
+   public void setExplainCommands(boolean explainCommands) {
+      this.explainCommands = explainCommands;
+   }
+
+   public int getRepeat() {
+      return repeat;
+   }
+
+   public void setRepeat(int repeat) {
+      this.repeat = repeat;
+   }
+
+   public boolean isTypedOperations() {
+      return typedOperations;
+   }
+
+   public void setTypedOperations(boolean typedOperations) {
+      this.typedOperations = typedOperations;
+   }
+
+   public ResultHandling getResultHandling() {
+      return resultHandling;
+   }
+
+   public void setResultHandling(ResultHandling resultHandling) {
+      this.resultHandling = resultHandling;
+   }
+
+   public int getWarmUpConnections() {
+      return warmUpConnections;
+   }
+
+   public void setWarmUpConnections(int warmUpConnections) {
+      this.warmUpConnections = warmUpConnections;
+   }
+
+   public int getWarmUpIterations() {
+      return warmUpIterations;
+   }
+
+   public void setWarmUpIterations(int warmUpIterations) {
+      this.warmUpIterations = warmUpIterations;
+   }
 }
@@ -0,0 +1,103 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.types.ObjectId;
+
+import java.util.Properties;
+
+/**
+ * Value of a message attribute (e.g. a sequence value) converted to the requested BSON type.
+ * The supported types are <code>string</code>, <code>int</code>, <code>long</code>, <code>double</code>, <code>bool</code>,
+ * <code>date</code> (milliseconds since the epoch) and <code>oid</code> (hexadecimal ObjectId).
+ */
+public class AttributeValue implements ValueSource {
+
+   /**
+    * Name of the attribute
+    */
+   private final String name;
+
+   /**
+    * Name of the BSON type
+    */
+   private final String type;
+
+   /**
+    * Creates the value source.
+    *
+    * @param name
+    *       The name of the message attribute.
+    * @param type
+    *       The name of the BSON type.
+    * @throws IllegalArgumentException
+    *       When the type is not supported.
+    */
+   public AttributeValue(final String name, final String type) {
+      switch (type) {
+         case "string":
+         case "int":
+         case "long":
+         case "double":
+         case "bool":
+         case "date":
+         case "oid":
+            break;
+         default:
+            throw new IllegalArgumentException("Unsupported type of attribute " + name + ": " + type);
+      }
+      this.name = name;
+      this.type = type;
+   }
+
+   @Override
+   public BsonValue get(final Properties attributes) {
+      final String value = attributes == null ? null : attributes.getProperty(name);
+      if (value == null) {
+         return BsonNull.VALUE;
+      }
+
+      switch (type) {
+         case "int":
+            return new BsonInt32(Integer.parseInt(value));
+         case "long":
+            return new BsonInt64(Long.parseLong(value));
+         case "double":
+            return new BsonDouble(Double.parseDouble(value));
+         case "bool":
+            return BsonBoolean.valueOf(Boolean.parseBoolean(value));
+         case "date":
+            return new BsonDateTime(Long.parseLong(value));
+         case "oid":
+            return new BsonObjectId(new ObjectId(value));
+         default:
+            return new BsonString(value);
+      }
+   }
+}
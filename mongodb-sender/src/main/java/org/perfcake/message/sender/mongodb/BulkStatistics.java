@@ -0,0 +1,111 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import org.perfcake.reporting.MeasurementUnit;
+
+import com.mongodb.MongoBulkWriteException;
+
+/**
+ * Statistics of the bulk operations executed while sending a single message, updated by the driver threads in the asynchronous mode.
+ */
+public class BulkStatistics {
+
+   /**
+    * Number of the executed bulk operations
+    */
+   private int batches = 0;
+
+   /**
+    * Number of the written documents and operations
+    */
+   private int writes = 0;
+
+   /**
+    * Number of the writes rejected by the server
+    */
+   private int writeErrors = 0;
+
+   /**
+    * Total duration of the bulk operations in nanoseconds
+    */
+   private long totalTime = 0;
+
+   /**
+    * Duration of the slowest bulk operation in nanoseconds
+    */
+   private long maxTime = 0;
+
+   /**
+    * The first failure of a bulk operation
+    */
+   private MongoBulkWriteException failure = null;
+
+   /**
+    * Records an executed bulk operation.
+    *
+    * @param size
+    *       The number of writes in the operation.
+    * @param time
+    *       The duration of the operation in nanoseconds.
+    */
+   public synchronized void batch(final int size, final long time) {
+      batches++;
+      writes += size;
+      totalTime += time;
+      maxTime = Math.max(maxTime, time);
+   }
+
+   /**
+    * Records a failed bulk operation.
+    *
+    * @param e
+    *       The failure reported by the driver.
+    */
+   public synchronized void failed(final MongoBulkWriteException e) {
+      writeErrors += e.getWriteErrors().size();
+      if (failure == null) {
+         failure = e;
+      }
+   }
+
+   /**
+    * Gets the first failure of a bulk operation.
+    *
+    * @return The first failure, or null when all the operations succeeded.
+    */
+   public synchronized MongoBulkWriteException getFailure() {
+      return failure;
+   }
+
+   /**
+    * Appends the statistics to the measurement unit.
+    *
+    * @param measurementUnit
+    *       The measurement unit of the sent message.
+    */
+   public synchronized void report(final MeasurementUnit measurementUnit) {
+      measurementUnit.appendResult("BulkBatches", batches);
+      measurementUnit.appendResult("BulkWrites", writes);
+      measurementUnit.appendResult("BulkWriteErrors", writeErrors);
+      measurementUnit.appendResult("BulkBatchTime", batches == 0 ? 0d : totalTime / batches / 1_000_000d);
+      measurementUnit.appendResult("BulkBatchMaxTime", maxTime / 1_000_000d);
+   }
+}
@@ -0,0 +1,389 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import org.perfcake.PerfCakeException;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoClientURI;
+import com.mongodb.MongoCredential;
+import com.mongodb.ServerAddress;
+import com.mongodb.async.client.MongoClientSettings;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerSettings;
+import com.mongodb.connection.SocketSettings;
+import com.mongodb.connection.SslSettings;
+import com.mongodb.connection.netty.NettyStreamFactoryFactory;
+import io.netty.channel.EventLoopGroup;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the connection to MongoDB. The target is either an address of a single server (<code>host[:port]</code>),
+ * or a connection string (<code>mongodb://host1,host2/db?replicaSet=rs&amp;readPreference=secondary...</code>) describing
+ * a replica set or a pool of <code>mongos</code> routers together with the read preference (including <code>maxStalenessSeconds</code>),
+ * read concern and write concern.
+ * The pool and timeout settings are used unless the connection string specifies them. Clients with equal settings are shared
+ * by the senders (see {@link SharedMongoClient}).
+ */
+public class ClientSettings {
+
+   /**
+    * Prefix of the connection strings
+    */
+   private static final String CONNECTION_STRING_PREFIX = "mongodb://";
+
+   /**
+    * Address of the server or the connection string
+    */
+   private final String target;
+
+   /**
+    * Name of the database, also used as the authentication database unless the connection string specifies <code>authSource</code>
+    */
+   private final String database;
+
+   /**
+    * Username for MongoDB authentication, overrides the credentials of the connection string except for their <code>authSource</code>
+    */
+   private final String username;
+
+   /**
+    * Password for MongoDB authentication
+    */
+   private final String password;
+
+   /**
+    * Maximum number of connections per server
+    */
+   private int maxPoolSize = 100;
+
+   /**
+    * Minimum number of connections per server kept open
+    */
+   private int minPoolSize = 0;
+
+   /**
+    * Maximum number of operations waiting for a connection
+    */
+   private int maxWaitQueueSize = 500;
+
+   /**
+    * Maximum time in milliseconds an operation waits for a connection
+    */
+   private int maxWaitTime = 120_000;
+
+   /**
+    * Connection timeout in milliseconds
+    */
+   private int connectTimeout = 10_000;
+
+   /**
+    * Socket read timeout in milliseconds, 0 means no timeout
+    */
+   private int socketTimeout = 0;
+
+   /**
+    * Frequency in milliseconds of the server monitor checks
+    */
+   private int heartbeatFrequency = 10_000;
+
+   /**
+    * Whether the synchronous client reports the command round trip times to {@link RoundTripListener}
+    */
+   private boolean commandListener = false;
+
+   /**
+    * Creates the settings.
+    *
+    * @param target
+    *       The address of the server or the connection string.
+    * @param database
+    *       The name of the database, null to use the database of the connection string.
+    * @param username
+    *       The username, null to use the credentials of the connection string.
+    * @param password
+    *       The password.
+    * @throws PerfCakeException
+    *       When the connection string is not valid.
+    */
+   public ClientSettings(final String target, final String database, final String username, final String password) throws PerfCakeException {
+      this.target = target;
+      this.username = username;
+      this.password = password;
+
+      if (isConnectionString()) {
+         try {
+            this.database = database != null ? database : new ConnectionString(target).getDatabase();
+         } catch (IllegalArgumentException e) {
+            throw new PerfCakeException("Invalid MongoDB connection string: ", e);
+         }
+      } else {
+         this.database = database;
+      }
+   }
+
+   /**
+    * Gets the name of the database.
+    *
+    * @return The name of the database.
+    */
+   public String getDatabase() {
+      return database;
+   }
+
+   /**
+    * Checks whether the connections are secured by TLS.
+    *
+    * @return True if and only if the connection string enables <code>ssl</code>.
+    */
+   public boolean isSslEnabled() {
+      return isConnectionString() && Boolean.TRUE.equals(new ConnectionString(target).getSslEnabled());
+   }
+
+   /**
+    * Creates a new synchronous client.
+    *
+    * @return The client.
+    */
+   public MongoClient createClient() {
+      final MongoClientOptions.Builder options = MongoClientOptions.builder()
+            .connectionsPerHost(maxPoolSize)
+            .minConnectionsPerHost(minPoolSize)
+            .threadsAllowedToBlockForConnectionMultiplier(Math.max(1, (maxWaitQueueSize + maxPoolSize - 1) / maxPoolSize))
+            .maxWaitTime(maxWaitTime)
+            .connectTimeout(connectTimeout)
+            .socketTimeout(socketTimeout)
+            .heartbeatFrequency(heartbeatFrequency);
+      if (commandListener) {
+         options.addCommandListener(RoundTripListener.INSTANCE);
+      }
+
+      if (!isConnectionString()) {
+         return new MongoClient(getServerAddress(), getCredentials(null), options.build());
+      }
+
+      final MongoClientURI uri = new MongoClientURI(target, options);
+      final List<MongoCredential> credentials = getCredentials(uri.getCredentials());
+
+      // a single host without a replica set name is connected directly, the same way the driver does
+      if (uri.getHosts().size() == 1 && uri.getOptions().getRequiredReplicaSetName() == null) {
+         return new MongoClient(new ServerAddress(uri.getHosts().get(0)), credentials, uri.getOptions());
+      }
+
+      final List<ServerAddress> seeds = new ArrayList<>();
+      for (final String host : uri.getHosts()) {
+         seeds.add(new ServerAddress(host));
+      }
+      return new MongoClient(seeds, credentials, uri.getOptions());
+   }
+
+   /**
+    * Creates a new asynchronous client. The TLS connections of the asynchronous driver are opened by Netty.
+    *
+    * @param eventLoopGroup
+    *       The Netty event loop group of the TLS connections, used only when {@link #isSslEnabled()}.
+    * @return The client.
+    */
+   public com.mongodb.async.client.MongoClient createAsyncClient(final EventLoopGroup eventLoopGroup) {
+      final ConnectionPoolSettings.Builder pool = ConnectionPoolSettings.builder()
+            .maxSize(maxPoolSize)
+            .minSize(minPoolSize)
+            .maxWaitQueueSize(maxWaitQueueSize)
+            .maxWaitTime(maxWaitTime, TimeUnit.MILLISECONDS);
+      final SocketSettings.Builder socket = SocketSettings.builder()
+            .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+            .readTimeout(socketTimeout, TimeUnit.MILLISECONDS);
+      final ServerSettings server = ServerSettings.builder().heartbeatFrequency(heartbeatFrequency, TimeUnit.MILLISECONDS).build();
+
+      if (!isConnectionString()) {
+         return MongoClients.create(MongoClientSettings.builder()
+               .clusterSettings(ClusterSettings.builder().hosts(Collections.singletonList(getServerAddress())).build())
+               .credentialList(getCredentials(null))
+               .connectionPoolSettings(pool.build())
+               .socketSettings(socket.build())
+               .serverSettings(server)
+               .build());
+      }
+
+      final ConnectionString connectionString = new ConnectionString(target);
+      final MongoClientSettings.Builder settings = MongoClientSettings.builder()
+            .clusterSettings(ClusterSettings.builder().applyConnectionString(connectionString).build())
+            .connectionPoolSettings(pool.applyConnectionString(connectionString).build())
+            .socketSettings(socket.applyConnectionString(connectionString).build())
+            .serverSettings(server)
+            .sslSettings(SslSettings.builder().applyConnectionString(connectionString).build())
+            .credentialList(getCredentials(connectionString.getCredentialList().isEmpty() ? null : connectionString.getCredentialList().get(0)));
+
+      // the default asynchronous channels do not support TLS
+      if (Boolean.TRUE.equals(connectionString.getSslEnabled())) {
+         settings.streamFactoryFactory(NettyStreamFactoryFactory.builder().eventLoopGroup(eventLoopGroup).build());
+      }
+
+      if (connectionString.getReadPreference() != null) {
+         settings.readPreference(connectionString.getReadPreference());
+      }
+      if (connectionString.getReadConcern() != null) {
+         settings.readConcern(connectionString.getReadConcern());
+      }
+      if (connectionString.getWriteConcern() != null) {
+         settings.writeConcern(connectionString.getWriteConcern());
+      }
+
+      return MongoClients.create(settings.build());
+   }
+
+   private boolean isConnectionString() {
+      return target.startsWith(CONNECTION_STRING_PREFIX);
+   }
+
+   private ServerAddress getServerAddress() {
+      if (target.contains(":")) {
+         final String[] addr = target.split(":", 2);
+         return new ServerAddress(addr[0], Integer.valueOf(addr[1]));
+      }
+      return new ServerAddress(target);
+   }
+
+   private List<MongoCredential> getCredentials(final MongoCredential defaultCredential) {
+      if (username != null) {
+         final String source = defaultCredential != null ? defaultCredential.getSource() : getAuthSource();
+         return Collections.singletonList(MongoCredential.createScramSha1Credential(username, source != null ? source : database, password.toCharArray()));
+      }
+      return defaultCredential == null ? Collections.<MongoCredential>emptyList() : Collections.singletonList(defaultCredential);
+   }
+
+   /**
+    * Gets the authentication database of the connection string. The driver keeps it only together with the credentials of the connection string.
+    *
+    * @return The value of the <code>authSource</code> option, null when it is not specified.
+    */
+   private String getAuthSource() {
+      final int query = target.indexOf('?');
+      if (!isConnectionString() || query < 0) {
+         return null;
+      }
+
+      for (final String option : target.substring(query + 1).split("[&;]")) {
+         final String[] nameValue = option.split("=", 2);
+         if (nameValue.length == 2 && nameValue[0].equalsIgnoreCase("authSource")) {
+            try {
+               return URLDecoder.decode(nameValue[1], "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+               return nameValue[1];
+            }
+         }
+      }
+      return null;
+   }
+
+   public int getMaxPoolSize() {
+      return maxPoolSize;
+   }
+
+   public void setMaxPoolSize(final int maxPoolSize) {
+      this.maxPoolSize = maxPoolSize;
+   }
+
+   public int getMinPoolSize() {
+      return minPoolSize;
+   }
+
+   public void setMinPoolSize(final int minPoolSize) {
+      this.minPoolSize = minPoolSize;
+   }
+
+   public int getMaxWaitQueueSize() {
+      return maxWaitQueueSize;
+   }
+
+   public void setMaxWaitQueueSize(final int maxWaitQueueSize) {
+      this.maxWaitQueueSize = maxWaitQueueSize;
+   }
+
+   public int getMaxWaitTime() {
+      return maxWaitTime;
+   }
+
+   public void setMaxWaitTime(final int maxWaitTime) {
+      this.maxWaitTime = maxWaitTime;
+   }
+
+   public int getConnectTimeout() {
+      return connectTimeout;
+   }
+
+   public void setConnectTimeout(final int connectTimeout) {
+      this.connectTimeout = connectTimeout;
+   }
+
+   public int getSocketTimeout() {
+      return socketTimeout;
+   }
+
+   public void setSocketTimeout(final int socketTimeout) {
+      this.socketTimeout = socketTimeout;
+   }
+
+   public int getHeartbeatFrequency() {
+      return heartbeatFrequency;
+   }
+
+   public void setHeartbeatFrequency(final int heartbeatFrequency) {
+      this.heartbeatFrequency = heartbeatFrequency;
+   }
+
+   public boolean isCommandListener() {
+      return commandListener;
+   }
+
+   public void setCommandListener(final boolean commandListener) {
+      this.commandListener = commandListener;
+   }
+
+   @Override
+   public boolean equals(final Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+      final ClientSettings that = (ClientSettings) o;
+      return maxPoolSize == that.maxPoolSize && minPoolSize == that.minPoolSize && maxWaitQueueSize == that.maxWaitQueueSize && maxWaitTime == that.maxWaitTime
+            && connectTimeout == that.connectTimeout && socketTimeout == that.socketTimeout && heartbeatFrequency == that.heartbeatFrequency && commandListener == that.commandListener
+            && target.equals(that.target) && Objects.equals(database, that.database) && Objects.equals(username, that.username) && Objects.equals(password, that.password);
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hash(target, database, username, password, maxPoolSize, minPoolSize, maxWaitQueueSize, maxWaitTime, connectTimeout, socketTimeout, heartbeatFrequency, commandListener);
+   }
+}
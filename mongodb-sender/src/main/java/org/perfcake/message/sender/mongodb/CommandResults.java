@@ -0,0 +1,175 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import org.perfcake.reporting.MeasurementUnit;
+
+import com.mongodb.MongoException;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of the individual commands of a single message. For the n-th command (starting with 1), the following results
+ * are reported: <code>Command&lt;n&gt;Time</code> (the time of the driver call in milliseconds), <code>Command&lt;n&gt;Ok</code>
+ * (the <code>ok</code> field of the reply), <code>Command&lt;n&gt;ErrorCode</code> (the error code of a failed command, or the code
+ * of the first write error), <code>Command&lt;n&gt;RoundTripTime</code> (the time between sending the command and receiving
+ * the reply as measured by the driver) and <code>Command&lt;n&gt;DocsExamined</code>, <code>Command&lt;n&gt;KeysExamined</code>
+ * and <code>Command&lt;n&gt;ServerTime</code> (the execution statistics of the explained command).
+ * For the typed operations (see {@link CrudExecutor}), <code>Command&lt;n&gt;Documents</code> is reported instead of the reply fields.
+ * The results are updated by the driver threads in the asynchronous mode.
+ */
+public class CommandResults {
+
+   /**
+    * The results in the order of the commands
+    */
+   private final Map<String, Object> results = new LinkedHashMap<>();
+
+   /**
+    * Number of the failed commands
+    */
+   private int failed = 0;
+
+   /**
+    * Records a successfully executed command.
+    *
+    * @param index
+    *       The index of the command in the message starting with 0.
+    * @param time
+    *       The duration of the driver call in nanoseconds.
+    * @param roundTrip
+    *       The round trip time measured by the driver in nanoseconds, negative when not available.
+    * @param reply
+    *       The reply of the server.
+    */
+   public synchronized void succeeded(final int index, final long time, final long roundTrip, final BsonDocument reply) {
+      final String prefix = prefix(index);
+      results.put(prefix + "Time", time / 1_000_000d);
+      if (roundTrip >= 0) {
+         results.put(prefix + "RoundTripTime", roundTrip / 1_000_000d);
+      }
+
+      final BsonValue ok = reply.get("ok");
+      results.put(prefix + "Ok", ok != null && ok.isNumber() ? ok.asNumber().doubleValue() : 1d);
+
+      final BsonValue writeErrors = reply.get("writeErrors");
+      if (writeErrors != null && writeErrors.isArray() && !((BsonArray) writeErrors).isEmpty()) {
+         results.put(prefix + "ErrorCode", getCode(((BsonArray) writeErrors).get(0)));
+      } else if (reply.isDocument("writeConcernError")) {
+         results.put(prefix + "ErrorCode", getCode(reply.get("writeConcernError")));
+      }
+   }
+
+   /**
+    * Records a successfully executed typed operation.
+    *
+    * @param index
+    *       The index of the operation in the message starting with 0.
+    * @param time
+    *       The duration of the driver call in nanoseconds.
+    * @param documents
+    *       The number of documents returned or affected by the operation, negative when not known.
+    */
+   public synchronized void completed(final int index, final long time, final long documents) {
+      final String prefix = prefix(index);
+      results.put(prefix + "Time", time / 1_000_000d);
+      results.put(prefix + "Ok", 1d);
+      if (documents >= 0) {
+         results.put(prefix + "Documents", documents);
+      }
+   }
+
+   /**
+    * Records a failed command.
+    *
+    * @param index
+    *       The index of the command in the message starting with 0.
+    * @param time
+    *       The duration of the driver call in nanoseconds.
+    * @param roundTrip
+    *       The round trip time measured by the driver in nanoseconds, negative when not available.
+    * @param t
+    *       The failure.
+    */
+   public synchronized void failed(final int index, final long time, final long roundTrip, final Throwable t) {
+      final String prefix = prefix(index);
+      failed++;
+      results.put(prefix + "Time", time / 1_000_000d);
+      if (roundTrip >= 0) {
+         results.put(prefix + "RoundTripTime", roundTrip / 1_000_000d);
+      }
+      results.put(prefix + "Ok", 0d);
+      if (t instanceof MongoException) {
+         results.put(prefix + "ErrorCode", ((MongoException) t).getCode());
+      }
+   }
+
+   /**
+    * Records the execution statistics of an explained command.
+    *
+    * @param index
+    *       The index of the command in the message starting with 0.
+    * @param explain
+    *       The reply of the <code>explain</code> command with the <code>executionStats</code> verbosity.
+    */
+   public synchronized void explained(final int index, final BsonDocument explain) {
+      final BsonValue stats = explain.get("executionStats");
+      if (stats == null || !stats.isDocument()) {
+         return;
+      }
+
+      final String prefix = prefix(index);
+      putNumber(prefix + "DocsExamined", stats.asDocument().get("totalDocsExamined"));
+      putNumber(prefix + "KeysExamined", stats.asDocument().get("totalKeysExamined"));
+      putNumber(prefix + "ServerTime", stats.asDocument().get("executionTimeMillis"));
+   }
+
+   /**
+    * Appends the results to the measurement unit.
+    *
+    * @param measurementUnit
+    *       The measurement unit of the sent message.
+    */
+   public synchronized void report(final MeasurementUnit measurementUnit) {
+      for (final Map.Entry<String, Object> result : results.entrySet()) {
+         measurementUnit.appendResult(result.getKey(), result.getValue());
+      }
+      measurementUnit.appendResult("FailedCommands", failed);
+   }
+
+   private static String prefix(final int index) {
+      return "Command" + (index + 1);
+   }
+
+   private static int getCode(final BsonValue error) {
+      final BsonValue code = error.isDocument() ? error.asDocument().get("code") : null;
+      return code != null && code.isNumber() ? code.asNumber().intValue() : -1;
+   }
+
+   private void putNumber(final String name, final BsonValue value) {
+      if (value != null && value.isNumber()) {
+         results.put(name, value.asNumber().longValue());
+      }
+   }
+}
@@ -0,0 +1,285 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A command parsed once and rendered for each iteration without parsing the JSON again.
+ * String values may contain placeholders <code>#{name}</code> or <code>#{name:type}</code> which are replaced by the message
+ * attributes (see {@link AttributeValue}), and <code>#{function(arguments)}</code> replaced by generated values (see {@link ValueGenerators}). A placeholder forming the whole string value is replaced by a value of the given type,
+ * other placeholders are replaced by the text of the attribute. Only the documents and arrays containing placeholders are copied
+ * during rendering, the rest of the parsed structure is shared and must not be modified.
+ */
+public final class CommandTemplate {
+
+   private static final Pattern PLACEHOLDER = Pattern.compile("#\\{([^}]+)}");
+
+   /**
+    * The parsed command
+    */
+   private final BsonDocument document;
+
+   /**
+    * Renders the placeholders of the command, null when there are none
+    */
+   private final Node root;
+
+   private CommandTemplate(final BsonDocument document) {
+      this.document = document;
+      this.root = compile(document);
+   }
+
+   /**
+    * Parses the command.
+    *
+    * @param json
+    *       The command in the extended JSON format.
+    * @return The parsed command.
+    */
+   public static CommandTemplate parse(final String json) {
+      return new CommandTemplate(BsonDocument.parse(json));
+   }
+
+   /**
+    * Parses the commands on the non-empty lines of the payload.
+    *
+    * @param payload
+    *       The message payload.
+    * @return The parsed commands.
+    */
+   public static List<CommandTemplate> parseLines(final String payload) {
+      final List<CommandTemplate> commands = new ArrayList<>();
+
+      try (StringReader sr = new StringReader(payload);
+            BufferedReader reader = new BufferedReader(sr)) {
+         String line = reader.readLine();
+         while (line != null) {
+            if (!line.trim().isEmpty()) {
+               commands.add(parse(line));
+            }
+            line = reader.readLine();
+         }
+      } catch (IOException e) {
+         throw new IllegalStateException("Cannot read the message payload: ", e);
+      }
+
+      return Collections.unmodifiableList(commands);
+   }
+
+   /**
+    * Gets the command for the current iteration.
+    *
+    * @param attributes
+    *       Attributes of the sent message.
+    * @return The command with the placeholders replaced, or the shared parsed command when there are no placeholders.
+    */
+   public BsonDocument render(final Properties attributes) {
+      return root == null ? document : root.render(document, attributes).asDocument();
+   }
+
+   /**
+    * Checks whether the command contains any placeholders.
+    *
+    * @return True when the command is the same in all iterations.
+    */
+   public boolean isStatic() {
+      return root == null;
+   }
+
+   private static Node compile(final BsonValue value) {
+      if (value.isDocument()) {
+         final List<Object> keys = new ArrayList<>();
+         final List<Node> children = new ArrayList<>();
+         for (final Map.Entry<String, BsonValue> entry : value.asDocument().entrySet()) {
+            final Node child = compile(entry.getValue());
+            if (child != null) {
+               keys.add(entry.getKey());
+               children.add(child);
+            }
+         }
+         return children.isEmpty() ? null : new ContainerNode(keys.toArray(), children.toArray(new Node[children.size()]));
+      }
+
+      if (value.isArray()) {
+         final List<Object> indexes = new ArrayList<>();
+         final List<Node> children = new ArrayList<>();
+         final List<BsonValue> values = value.asArray().getValues();
+         for (int i = 0; i < values.size(); i++) {
+            final Node child = compile(values.get(i));
+            if (child != null) {
+               indexes.add(i);
+               children.add(child);
+            }
+         }
+         return children.isEmpty() ? null : new ContainerNode(indexes.toArray(), children.toArray(new Node[children.size()]));
+      }
+
+      if (value.isString()) {
+         return compileString(value.asString().getValue());
+      }
+
+      return null;
+   }
+
+   private static Node compileString(final String value) {
+      final Matcher matcher = PLACEHOLDER.matcher(value);
+      final List<String> literals = new ArrayList<>();
+      final List<ValueSource> sources = new ArrayList<>();
+      int end = 0;
+
+      while (matcher.find()) {
+         literals.add(value.substring(end, matcher.start()));
+         sources.add(placeholder(matcher.group(1).trim()));
+         end = matcher.end();
+      }
+
+      if (sources.isEmpty()) {
+         return null;
+      }
+
+      if (sources.size() == 1 && literals.get(0).isEmpty() && end == value.length()) {
+         final ValueSource source = sources.get(0);
+         return (template, attributes) -> source.get(attributes);
+      }
+
+      literals.add(value.substring(end));
+      return new TextNode(literals.toArray(new String[literals.size()]), sources.toArray(new ValueSource[sources.size()]));
+   }
+
+   private static ValueSource placeholder(final String expression) {
+      final int parenthesis = expression.indexOf('(');
+      if (parenthesis > 0 && expression.endsWith(")")) {
+         final String arguments = expression.substring(parenthesis + 1, expression.length() - 1).trim();
+         return ValueGenerators.create(expression.substring(0, parenthesis).trim(), arguments.isEmpty() ? new String[0] : arguments.split("\\s*,\\s*"));
+      }
+
+      final int colon = expression.indexOf(':');
+      return colon < 0 ? new AttributeValue(expression, "string") : new AttributeValue(expression.substring(0, colon).trim(), expression.substring(colon + 1).trim());
+   }
+
+   private static String toText(final BsonValue value) {
+      switch (value.getBsonType()) {
+         case STRING:
+            return value.asString().getValue();
+         case INT32:
+            return String.valueOf(value.asInt32().getValue());
+         case INT64:
+            return String.valueOf(value.asInt64().getValue());
+         case DOUBLE:
+            return String.valueOf(value.asDouble().getValue());
+         case BOOLEAN:
+            return String.valueOf(value.asBoolean().getValue());
+         case DATE_TIME:
+            return String.valueOf(value.asDateTime().getValue());
+         case OBJECT_ID:
+            return value.asObjectId().getValue().toHexString();
+         default:
+            return "";
+      }
+   }
+
+   /**
+    * Renders a part of the parsed command containing placeholders.
+    */
+   private interface Node {
+      BsonValue render(final BsonValue template, final Properties attributes);
+   }
+
+   /**
+    * A document or an array, only the children with placeholders are rendered, the others are shared.
+    */
+   private static final class ContainerNode implements Node {
+
+      /**
+       * Keys of the document or indexes of the array of the children with placeholders
+       */
+      private final Object[] keys;
+
+      private final Node[] children;
+
+      private ContainerNode(final Object[] keys, final Node[] children) {
+         this.keys = keys;
+         this.children = children;
+      }
+
+      @Override
+      public BsonValue render(final BsonValue template, final Properties attributes) {
+         if (template.isDocument()) {
+            final BsonDocument source = template.asDocument();
+            final BsonDocument copy = new BsonDocument();
+            copy.putAll(source);
+            for (int i = 0; i < keys.length; i++) {
+               copy.put((String) keys[i], children[i].render(source.get(keys[i]), attributes));
+            }
+            return copy;
+         }
+
+         final List<BsonValue> source = template.asArray().getValues();
+         final List<BsonValue> copy = new ArrayList<>(source);
+         for (int i = 0; i < keys.length; i++) {
+            final int index = (Integer) keys[i];
+            copy.set(index, children[i].render(source.get(index), attributes));
+         }
+         return new BsonArray(copy);
+      }
+   }
+
+   /**
+    * A string with placeholders surrounded by text.
+    */
+   private static final class TextNode implements Node {
+
+      /**
+       * The text around the placeholders, there is one more literal than sources
+       */
+      private final String[] literals;
+
+      private final ValueSource[] sources;
+
+      private TextNode(final String[] literals, final ValueSource[] sources) {
+         this.literals = literals;
+         this.sources = sources;
+      }
+
+      @Override
+      public BsonValue render(final BsonValue template, final Properties attributes) {
+         final StringBuilder text = new StringBuilder();
+         for (int i = 0; i < sources.length; i++) {
+            text.append(literals[i]).append(toText(sources[i].get(attributes)));
+         }
+         return new BsonString(text.append(literals[sources.length]).toString());
+      }
+   }
+}
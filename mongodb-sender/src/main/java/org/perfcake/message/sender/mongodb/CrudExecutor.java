@@ -0,0 +1,256 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes typed CRUD operations using the collection API of the driver instead of generic commands.
+ * An operation is a document with the operation name as the first key, the collection name as its value (the default collection
+ * is used when it is not a string), followed by the options of the operation:
+ * <ul>
+ * <li><code>find</code> - <code>filter</code>, <code>projection</code>, <code>sort</code>, <code>skip</code>, <code>limit</code>, <code>batchSize</code>,</li>
+ * <li><code>aggregate</code> - <code>pipeline</code>, <code>batchSize</code>, <code>allowDiskUse</code>,</li>
+ * <li><code>count</code> - <code>filter</code>,</li>
+ * <li><code>insertOne</code> - <code>document</code>,</li>
+ * <li><code>insertMany</code> - <code>documents</code>, <code>ordered</code>,</li>
+ * <li><code>updateOne</code>, <code>updateMany</code> - <code>filter</code>, <code>update</code>, <code>upsert</code>,</li>
+ * <li><code>replaceOne</code> - <code>filter</code>, <code>replacement</code>, <code>upsert</code>,</li>
+ * <li><code>deleteOne</code>, <code>deleteMany</code> - <code>filter</code>.</li>
+ * </ul>
+ * The results of <code>find</code> and <code>aggregate</code> are iterated using the cursor, fetching further batches by <code>getMore</code>
+ * as needed, and handled according to {@link ResultHandling}.
+ */
+public class CrudExecutor {
+
+   private static final BsonDocument EMPTY = new BsonDocument();
+
+   /**
+    * The database the collections belong to
+    */
+   private final MongoDatabase db;
+
+   /**
+    * Name of the collection used when the operation does not specify one
+    */
+   private final String defaultCollection;
+
+   /**
+    * What is done with the returned documents
+    */
+   private final ResultHandling resultHandling;
+
+   /**
+    * Collections returning raw documents indexed by their names
+    */
+   private final Map<String, MongoCollection<RawBsonDocument>> rawCollections = new HashMap<>();
+
+   /**
+    * Collections returning decoded documents indexed by their names
+    */
+   private final Map<String, MongoCollection<BsonDocument>> collections = new HashMap<>();
+
+   /**
+    * Creates the executor.
+    *
+    * @param db
+    *       The database.
+    * @param defaultCollection
+    *       The name of the collection used when the operation does not specify one.
+    * @param resultHandling
+    *       What is done with the returned documents.
+    */
+   public CrudExecutor(final MongoDatabase db, final String defaultCollection, final ResultHandling resultHandling) {
+      this.db = db;
+      this.defaultCollection = defaultCollection;
+      this.resultHandling = resultHandling;
+   }
+
+   /**
+    * Executes the operation.
+    *
+    * @param operation
+    *       The operation.
+    * @return The number of documents returned, inserted, modified or deleted; -1 when the returned documents were discarded.
+    * @throws IllegalArgumentException
+    *       When the operation is not valid.
+    */
+   public long execute(final BsonDocument operation) {
+      if (operation.isEmpty()) {
+         throw new IllegalArgumentException("Empty operation.");
+      }
+
+      final String name = operation.keySet().iterator().next();
+      final BsonValue target = operation.get(name);
+      final String collectionName = target.isString() ? target.asString().getValue() : defaultCollection;
+      if (collectionName == null) {
+         throw new IllegalArgumentException("The collection of operation " + name + " is not specified.");
+      }
+
+      switch (name) {
+         case "find":
+            return find(collectionName, operation);
+         case "aggregate":
+            return aggregate(collectionName, operation);
+         case "count":
+            return getCollection(collectionName).count(getDocument(operation, "filter", false));
+         case "insertOne":
+            getCollection(collectionName).insertOne(WriteModels.copy(getDocument(operation, "document", true)));
+            return 1;
+         case "insertMany":
+            return insertMany(collectionName, operation);
+         case "updateOne":
+            return getCount(getCollection(collectionName).updateOne(getDocument(operation, "filter", false), getDocument(operation, "update", true), updateOptions(operation)));
+         case "updateMany":
+            return getCount(getCollection(collectionName).updateMany(getDocument(operation, "filter", false), getDocument(operation, "update", true), updateOptions(operation)));
+         case "replaceOne":
+            return getCount(getCollection(collectionName).replaceOne(getDocument(operation, "filter", false), getDocument(operation, "replacement", true), updateOptions(operation)));
+         case "deleteOne":
+            return getCollection(collectionName).deleteOne(getDocument(operation, "filter", false)).getDeletedCount();
+         case "deleteMany":
+            return getCollection(collectionName).deleteMany(getDocument(operation, "filter", false)).getDeletedCount();
+         default:
+            throw new IllegalArgumentException("Unknown operation: " + name);
+      }
+   }
+
+   private long find(final String collectionName, final BsonDocument operation) {
+      final FindIterable<?> find = resultHandling == ResultHandling.MATERIALIZE ? getCollection(collectionName).find(getDocument(operation, "filter", false))
+            : getRawCollection(collectionName).find(getDocument(operation, "filter", false));
+
+      if (operation.isDocument("projection")) {
+         find.projection(operation.getDocument("projection"));
+      }
+      if (operation.isDocument("sort")) {
+         find.sort(operation.getDocument("sort"));
+      }
+      if (operation.isNumber("skip")) {
+         find.skip(operation.getNumber("skip").intValue());
+      }
+      if (operation.isNumber("limit")) {
+         find.limit(operation.getNumber("limit").intValue());
+      }
+      if (operation.isNumber("batchSize")) {
+         find.batchSize(operation.getNumber("batchSize").intValue());
+      }
+
+      return iterate(find);
+   }
+
+   private long aggregate(final String collectionName, final BsonDocument operation) {
+      if (!operation.isArray("pipeline")) {
+         throw new IllegalArgumentException("Missing pipeline of operation aggregate.");
+      }
+
+      final List<BsonDocument> pipeline = new ArrayList<>();
+      for (final BsonValue stage : operation.getArray("pipeline")) {
+         pipeline.add(stage.asDocument());
+      }
+
+      final AggregateIterable<?> aggregate = resultHandling == ResultHandling.MATERIALIZE ? getCollection(collectionName).aggregate(pipeline)
+            : getRawCollection(collectionName).aggregate(pipeline);
+      aggregate.useCursor(true);
+
+      if (operation.isNumber("batchSize")) {
+         aggregate.batchSize(operation.getNumber("batchSize").intValue());
+      }
+      if (operation.isBoolean("allowDiskUse")) {
+         aggregate.allowDiskUse(operation.getBoolean("allowDiskUse").getValue());
+      }
+
+      return iterate(aggregate);
+   }
+
+   private long insertMany(final String collectionName, final BsonDocument operation) {
+      if (!operation.isArray("documents")) {
+         throw new IllegalArgumentException("Missing documents of operation insertMany.");
+      }
+
+      final BsonArray array = operation.getArray("documents");
+      final List<BsonDocument> documents = new ArrayList<>(array.size());
+      for (final BsonValue document : array) {
+         documents.add(WriteModels.copy(document.asDocument()));
+      }
+
+      final boolean ordered = !operation.isBoolean("ordered") || operation.getBoolean("ordered").getValue();
+      getCollection(collectionName).insertMany(documents, new InsertManyOptions().ordered(ordered));
+
+      return documents.size();
+   }
+
+   private long iterate(final MongoIterable<?> iterable) {
+      long count = 0;
+
+      try (MongoCursor<?> cursor = iterable.iterator()) {
+         if (resultHandling == ResultHandling.DISCARD) {
+            return -1;
+         }
+         while (cursor.hasNext()) {
+            cursor.next();
+            count++;
+         }
+      }
+
+      return count;
+   }
+
+   private MongoCollection<BsonDocument> getCollection(final String name) {
+      return collections.computeIfAbsent(name, n -> db.getCollection(n, BsonDocument.class));
+   }
+
+   private MongoCollection<RawBsonDocument> getRawCollection(final String name) {
+      return rawCollections.computeIfAbsent(name, n -> db.getCollection(n, RawBsonDocument.class));
+   }
+
+   private static BsonDocument getDocument(final BsonDocument operation, final String name, final boolean required) {
+      if (operation.isDocument(name)) {
+         return operation.getDocument(name);
+      }
+      if (required) {
+         throw new IllegalArgumentException("Missing document '" + name + "' of operation " + operation.keySet().iterator().next() + ".");
+      }
+      return EMPTY;
+   }
+
+   private static UpdateOptions updateOptions(final BsonDocument operation) {
+      return new UpdateOptions().upsert(operation.isBoolean("upsert") && operation.getBoolean("upsert").getValue());
+   }
+
+   private static long getCount(final UpdateResult result) {
+      return result.isModifiedCountAvailable() ? result.getModifiedCount() : result.getMatchedCount();
+   }
+}
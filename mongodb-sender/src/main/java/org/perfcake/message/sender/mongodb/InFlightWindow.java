@@ -0,0 +1,106 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Limits the number of asynchronous operations in flight and collects their first failure.
+ */
+public class InFlightWindow {
+
+   /**
+    * Maximum number of operations in flight
+    */
+   private final int size;
+
+   /**
+    * Free slots of the window
+    */
+   private final Semaphore permits;
+
+   /**
+    * The first failure of an operation since the last {@link #await()}
+    */
+   private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+   /**
+    * Creates the window.
+    *
+    * @param size
+    *       The maximum number of operations in flight.
+    */
+   public InFlightWindow(final int size) {
+      this.size = size;
+      this.permits = new Semaphore(size);
+   }
+
+   /**
+    * Waits for a free slot before an operation is started.
+    *
+    * @throws InterruptedException
+    *       When interrupted while waiting.
+    */
+   public void acquire() throws InterruptedException {
+      permits.acquire();
+   }
+
+   /**
+    * Frees the slot of a completed operation.
+    *
+    * @param t
+    *       The failure of the operation, null when it succeeded.
+    */
+   public void release(final Throwable t) {
+      if (t != null) {
+         failure.compareAndSet(null, t);
+      }
+      permits.release();
+   }
+
+   /**
+    * Checks whether any of the operations failed.
+    *
+    * @return True when an operation failed since the last {@link #await()}.
+    */
+   public boolean hasFailed() {
+      return failure.get() != null;
+   }
+
+   /**
+    * Waits for all the operations in flight to complete.
+    *
+    * @throws Exception
+    *       The first failure of the operations.
+    */
+   public void await() throws Exception {
+      permits.acquireUninterruptibly(size);
+      permits.release(size);
+
+      final Throwable t = failure.getAndSet(null);
+      if (t instanceof Exception) {
+         throw (Exception) t;
+      } else if (t != null) {
+         throw new ExecutionException(t);
+      }
+   }
+}
@@ -0,0 +1,40 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+/**
+ * Determines what is done with the documents returned by the typed read operations.
+ */
+public enum ResultHandling {
+   /**
+    * All the batches of the cursor are fetched, the documents are kept in their raw form without being decoded.
+    */
+   DRAIN,
+
+   /**
+    * Only the first batch is fetched and the cursor is closed, the documents are not iterated.
+    */
+   DISCARD,
+
+   /**
+    * All the batches of the cursor are fetched and each document is fully decoded.
+    */
+   MATERIALIZE
+}
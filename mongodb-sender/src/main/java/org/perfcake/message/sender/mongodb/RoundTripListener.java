@@ -0,0 +1,74 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the round trip time of the last command executed by the current thread as measured by the driver, i.e. the time
+ * from writing the command to the connection to reading the reply. The difference to the time measured around the driver call
+ * is the driver overhead (connection checkout, encoding and decoding). The synchronous driver notifies the listener on the calling thread.
+ */
+public final class RoundTripListener implements CommandListener {
+
+   /**
+    * The only instance of the listener
+    */
+   public static final RoundTripListener INSTANCE = new RoundTripListener();
+
+   /**
+    * Round trip time of the last command of the thread in nanoseconds, -1 when there was none
+    */
+   private static final ThreadLocal<long[]> lastRoundTrip = ThreadLocal.withInitial(() -> new long[] { -1 });
+
+   private RoundTripListener() {
+   }
+
+   @Override
+   public void commandStarted(final CommandStartedEvent event) {
+   }
+
+   @Override
+   public void commandSucceeded(final CommandSucceededEvent event) {
+      lastRoundTrip.get()[0] = event.getElapsedTime(TimeUnit.NANOSECONDS);
+   }
+
+   @Override
+   public void commandFailed(final CommandFailedEvent event) {
+      lastRoundTrip.get()[0] = event.getElapsedTime(TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Gets and clears the round trip time of the last command executed by the current thread.
+    *
+    * @return The round trip time in nanoseconds, -1 when no command was executed since the last call.
+    */
+   public static long takeRoundTrip() {
+      final long[] roundTrip = lastRoundTrip.get();
+      final long value = roundTrip[0];
+      roundTrip[0] = -1;
+      return value;
+   }
+}
@@ -0,0 +1,303 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoDatabase;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reference counted MongoDB client. Senders with the same {@link ClientSettings} share a single instance together with
+ * its connection pools and server monitors. The client is closed when the last sender releases it.
+ */
+public class SharedMongoClient {
+
+   /**
+    * The client's logger.
+    */
+   private static final Logger log = LogManager.getLogger(SharedMongoClient.class);
+
+   /**
+    * Clients currently in use, indexed by their settings
+    */
+   private static final Map<Key, SharedMongoClient> clients = new HashMap<>();
+
+   /**
+    * Key of this client in {@link #clients}, null when the client is not shared
+    */
+   private final Key key;
+
+   /**
+    * The synchronous client, null in the asynchronous mode
+    */
+   private MongoClient client;
+
+   /**
+    * The asynchronous client, null in the synchronous mode
+    */
+   private com.mongodb.async.client.MongoClient asyncClient;
+
+   /**
+    * Netty event loops of the TLS connections of the asynchronous client, null when not needed
+    */
+   private EventLoopGroup eventLoopGroup;
+
+   /**
+    * Number of senders using this client
+    */
+   private int references = 0;
+
+   /**
+    * Number of connections already opened by {@link #warmUp(String, int)}
+    */
+   private int warmConnections = 0;
+
+   private SharedMongoClient(final Key key, final ClientSettings settings, final boolean async) {
+      this.key = key;
+
+      if (async) {
+         if (settings.isSslEnabled()) {
+            eventLoopGroup = new NioEventLoopGroup();
+         }
+         asyncClient = settings.createAsyncClient(eventLoopGroup);
+      } else {
+         client = settings.createClient();
+      }
+   }
+
+   /**
+    * Obtains a client with the given settings. Each call must be paired with {@link #release()}.
+    *
+    * @param settings
+    *       The client settings.
+    * @param async
+    *       True to obtain an asynchronous client.
+    * @param shared
+    *       When false, a new client is created that is not shared with any other sender.
+    * @return The client.
+    */
+   public static SharedMongoClient acquire(final ClientSettings settings, final boolean async, final boolean shared) {
+      if (!shared) {
+         final SharedMongoClient client = new SharedMongoClient(null, settings, async);
+         client.references = 1;
+         return client;
+      }
+
+      synchronized (clients) {
+         final Key k = new Key(settings, async);
+         SharedMongoClient client = clients.get(k);
+         if (client == null) {
+            if (log.isDebugEnabled()) {
+               log.debug("Creating a new MongoDB client for " + settings.getDatabase());
+            }
+            client = new SharedMongoClient(k, settings, async);
+            clients.put(k, client);
+         }
+         client.references++;
+
+         return client;
+      }
+   }
+
+   /**
+    * Gets the synchronous client.
+    *
+    * @return The client, null when the client was created in the asynchronous mode.
+    */
+   public MongoClient getClient() {
+      return client;
+   }
+
+   /**
+    * Gets the asynchronous client.
+    *
+    * @return The client, null when the client was created in the synchronous mode.
+    */
+   public com.mongodb.async.client.MongoClient getAsyncClient() {
+      return asyncClient;
+   }
+
+   /**
+    * Gets the maximum number of connections per server of the client, either given by the sender or by the connection string.
+    *
+    * @return The effective maximum size of the connection pool.
+    */
+   public int getMaxPoolSize() {
+      if (asyncClient != null) {
+         return asyncClient.getSettings().getConnectionPoolSettings().getMaxSize();
+      }
+      return client.getMongoClientOptions().getConnectionsPerHost();
+   }
+
+   /**
+    * Opens and authenticates the given number of connections in advance, so that the first commands of a test do not pay
+    * for the connection establishment. The connections are opened by concurrent <code>ping</code> commands, which forces the pool
+    * to create a new connection for each of them. The commands go to the servers selected by the read preference of the client.
+    * A shared client opens the connections only once, further calls open just the missing ones.
+    *
+    * @param database
+    *       The database to run the commands on.
+    * @param connections
+    *       The number of connections to open, at most {@link #getMaxPoolSize()} connections are opened.
+    * @throws InterruptedException
+    *       When interrupted while waiting for the connections.
+    * @throws MongoException
+    *       When it was not possible to open a connection.
+    */
+   public synchronized void warmUp(final String database, final int connections) throws InterruptedException {
+      final int missing = Math.min(connections, getMaxPoolSize()) - warmConnections;
+      if (missing <= 0) {
+         return;
+      }
+
+      final BsonDocument ping = new BsonDocument("ping", new BsonInt32(1));
+      if (asyncClient != null) {
+         warmUpAsync(asyncClient.getDatabase(database), ping, missing);
+      } else {
+         warmUp(client.getDatabase(database), ping, missing);
+      }
+      warmConnections += missing;
+
+      if (log.isDebugEnabled()) {
+         log.debug("Opened " + missing + " MongoDB connections in advance.");
+      }
+   }
+
+   private static void warmUp(final MongoDatabase db, final BsonDocument ping, final int connections) throws InterruptedException {
+      final ExecutorService executor = Executors.newFixedThreadPool(connections);
+      final CountDownLatch ready = new CountDownLatch(connections);
+      final List<Future<BsonDocument>> pings = new ArrayList<>(connections);
+
+      try {
+         for (int i = 0; i < connections; i++) {
+            pings.add(executor.submit(() -> {
+               // all the commands start at once so that none of them finds an idle connection in the pool
+               ready.countDown();
+               ready.await();
+               return db.runCommand(ping, db.getReadPreference(), BsonDocument.class);
+            }));
+         }
+         for (final Future<BsonDocument> result : pings) {
+            result.get();
+         }
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof MongoException) {
+            throw (MongoException) e.getCause();
+         }
+         throw new MongoException("Unable to open a connection: ", e.getCause());
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static void warmUpAsync(final com.mongodb.async.client.MongoDatabase db, final BsonDocument ping, final int connections) throws InterruptedException {
+      final CountDownLatch done = new CountDownLatch(connections);
+      final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+      for (int i = 0; i < connections; i++) {
+         db.runCommand(ping, db.getReadPreference(), BsonDocument.class, (reply, t) -> {
+            if (t != null) {
+               failure.compareAndSet(null, t);
+            }
+            done.countDown();
+         });
+      }
+      done.await();
+
+      final Throwable t = failure.get();
+      if (t instanceof MongoException) {
+         throw (MongoException) t;
+      } else if (t != null) {
+         throw new MongoException("Unable to open a connection: ", t);
+      }
+   }
+
+   /**
+    * Releases the client. When there are no more senders using it, the client is closed together with all its connections.
+    */
+   public void release() {
+      synchronized (clients) {
+         if (--references > 0) {
+            return;
+         }
+         if (key != null) {
+            clients.remove(key);
+         }
+      }
+
+      if (client != null) {
+         client.close();
+      }
+      if (asyncClient != null) {
+         asyncClient.close();
+      }
+      if (eventLoopGroup != null) {
+         eventLoopGroup.shutdownGracefully();
+      }
+   }
+
+   /**
+    * Identifies a shared client.
+    */
+   private static class Key {
+      private final ClientSettings settings;
+      private final boolean async;
+
+      private Key(final ClientSettings settings, final boolean async) {
+         this.settings = settings;
+         this.async = async;
+      }
+
+      @Override
+      public boolean equals(final Object o) {
+         if (this == o) {
+            return true;
+         }
+         if (o == null || getClass() != o.getClass()) {
+            return false;
+         }
+         final Key that = (Key) o;
+         return async == that.async && settings.equals(that.settings);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hash(settings, async);
+      }
+   }
+}
@@ -0,0 +1,142 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import org.bson.BsonDateTime;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.types.ObjectId;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generated values of the placeholders <code>#{function(arguments)}</code> in a {@link CommandTemplate}. The values are created
+ * directly as BSON values. The supported functions are:
+ * <ul>
+ * <li><code>sequence(name[, start])</code> - a long value incremented on each use, shared by all the senders using the same name,</li>
+ * <li><code>threadCounter([start])</code> - a long value incremented on each use by the current thread,</li>
+ * <li><code>randomInt(min, max)</code>, <code>randomLong(min, max)</code> - a random number from the range including both bounds,</li>
+ * <li><code>randomDouble(min, max)</code> - a random double from the range excluding the upper bound,</li>
+ * <li><code>randomString(length[, maxLength])</code> - a random alphanumeric string of the given length or range of lengths,</li>
+ * <li><code>oneOf(value, ...)</code> - a random string from the list,</li>
+ * <li><code>objectId()</code> - a new ObjectId,</li>
+ * <li><code>uuid()</code> - a random UUID string,</li>
+ * <li><code>now()</code> - the current date and time.</li>
+ * </ul>
+ */
+public final class ValueGenerators {
+
+   private static final char[] ALPHANUMERIC = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+   /**
+    * Sequences indexed by their names
+    */
+   private static final ConcurrentMap<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+
+   private ValueGenerators() {
+   }
+
+   /**
+    * Creates the generator of the function.
+    *
+    * @param function
+    *       The name of the function.
+    * @param arguments
+    *       The arguments of the function.
+    * @return The generator.
+    * @throws IllegalArgumentException
+    *       When the function is unknown or the arguments are not valid.
+    */
+   public static ValueSource create(final String function, final String[] arguments) {
+      switch (function) {
+         case "sequence":
+            checkArguments(function, arguments, 1, 2);
+            final AtomicLong sequence = sequences.computeIfAbsent(arguments[0], name -> new AtomicLong(arguments.length > 1 ? Long.parseLong(arguments[1]) : 0));
+            return attributes -> new BsonInt64(sequence.getAndIncrement());
+         case "threadCounter":
+            checkArguments(function, arguments, 0, 1);
+            final long start = arguments.length > 0 ? Long.parseLong(arguments[0]) : 0;
+            final ThreadLocal<long[]> counter = ThreadLocal.withInitial(() -> new long[] { start });
+            return attributes -> new BsonInt64(counter.get()[0]++);
+         case "randomInt":
+            checkArguments(function, arguments, 2, 2);
+            final int minInt = Integer.parseInt(arguments[0]);
+            final int maxInt = Integer.parseInt(arguments[1]);
+            return attributes -> new BsonInt32((int) ThreadLocalRandom.current().nextLong(minInt, (long) maxInt + 1));
+         case "randomLong":
+            checkArguments(function, arguments, 2, 2);
+            final long minLong = Long.parseLong(arguments[0]);
+            final long maxLong = Long.parseLong(arguments[1]);
+            return attributes -> new BsonInt64(maxLong == Long.MAX_VALUE ? ThreadLocalRandom.current().nextLong(minLong, maxLong) : ThreadLocalRandom.current().nextLong(minLong, maxLong + 1));
+         case "randomDouble":
+            checkArguments(function, arguments, 2, 2);
+            final double minDouble = Double.parseDouble(arguments[0]);
+            final double maxDouble = Double.parseDouble(arguments[1]);
+            return attributes -> new BsonDouble(ThreadLocalRandom.current().nextDouble(minDouble, maxDouble));
+         case "randomString":
+            checkArguments(function, arguments, 1, 2);
+            final int minLength = Integer.parseInt(arguments[0]);
+            final int maxLength = arguments.length > 1 ? Integer.parseInt(arguments[1]) : minLength;
+            return attributes -> new BsonString(randomString(minLength, maxLength));
+         case "oneOf":
+            if (arguments.length == 0) {
+               throw new IllegalArgumentException("Function oneOf requires at least one argument.");
+            }
+            final BsonString[] values = new BsonString[arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+               values[i] = new BsonString(arguments[i]);
+            }
+            return attributes -> values[ThreadLocalRandom.current().nextInt(values.length)];
+         case "objectId":
+            checkArguments(function, arguments, 0, 0);
+            return attributes -> new BsonObjectId(new ObjectId());
+         case "uuid":
+            checkArguments(function, arguments, 0, 0);
+            return attributes -> new BsonString(UUID.randomUUID().toString());
+         case "now":
+            checkArguments(function, arguments, 0, 0);
+            return attributes -> new BsonDateTime(System.currentTimeMillis());
+         default:
+            throw new IllegalArgumentException("Unknown placeholder function: " + function);
+      }
+   }
+
+   private static void checkArguments(final String function, final String[] arguments, final int min, final int max) {
+      if (arguments.length < min || arguments.length > max) {
+         throw new IllegalArgumentException("Invalid number of arguments of function " + function + ": " + arguments.length);
+      }
+   }
+
+   private static String randomString(final int minLength, final int maxLength) {
+      final ThreadLocalRandom random = ThreadLocalRandom.current();
+      final char[] chars = new char[minLength == maxLength ? minLength : random.nextInt(minLength, maxLength + 1)];
+      for (int i = 0; i < chars.length; i++) {
+         chars[i] = ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)];
+      }
+      return new String(chars);
+   }
+}
@@ -0,0 +1,39 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import org.bson.BsonValue;
+
+import java.util.Properties;
+
+/**
+ * Source of the value of a placeholder in a {@link CommandTemplate}.
+ */
+public interface ValueSource {
+
+   /**
+    * Gets the value for the current iteration.
+    *
+    * @param attributes
+    *       Attributes of the sent message.
+    * @return The value to be placed in the document.
+    */
+   BsonValue get(final Properties attributes);
+}
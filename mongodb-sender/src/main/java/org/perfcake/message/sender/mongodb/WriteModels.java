@@ -0,0 +1,110 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.message.sender.mongodb;
+
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+/**
+ * Converts message lines to bulk write operations. A line is either a plain document to be inserted, or a single
+ * operation in the syntax of the shell <code>bulkWrite()</code> method, i.e. one of <code>insertOne</code>, <code>updateOne</code>,
+ * <code>updateMany</code>, <code>replaceOne</code>, <code>deleteOne</code> and <code>deleteMany</code>.
+ * The inserted documents are copied, because the driver adds the generated <code>_id</code> to them and the parsed
+ * documents are shared among the iterations (see {@link CommandTemplate}).
+ */
+public final class WriteModels {
+
+   private WriteModels() {
+   }
+
+   /**
+    * Converts the document to a write operation.
+    *
+    * @param line
+    *       The parsed message line.
+    * @return The write operation.
+    * @throws IllegalArgumentException
+    *       When the operation is not valid.
+    */
+   public static WriteModel<BsonDocument> parse(final BsonDocument line) {
+      if (line.size() != 1) {
+         return new InsertOneModel<>(copy(line));
+      }
+
+      final String operation = line.keySet().iterator().next();
+      final BsonValue value = line.get(operation);
+      if (!value.isDocument()) {
+         return new InsertOneModel<>(copy(line));
+      }
+
+      final BsonDocument arguments = value.asDocument();
+      switch (operation) {
+         case "insertOne":
+            return new InsertOneModel<>(copy(required(arguments, operation, "document")));
+         case "updateOne":
+            return new UpdateOneModel<>(required(arguments, operation, "filter"), required(arguments, operation, "update"), updateOptions(arguments));
+         case "updateMany":
+            return new UpdateManyModel<>(required(arguments, operation, "filter"), required(arguments, operation, "update"), updateOptions(arguments));
+         case "replaceOne":
+            return new ReplaceOneModel<>(required(arguments, operation, "filter"), required(arguments, operation, "replacement"), updateOptions(arguments));
+         case "deleteOne":
+            return new DeleteOneModel<>(required(arguments, operation, "filter"));
+         case "deleteMany":
+            return new DeleteManyModel<>(required(arguments, operation, "filter"));
+         default:
+            return new InsertOneModel<>(copy(line));
+      }
+   }
+
+   private static BsonDocument required(final BsonDocument arguments, final String operation, final String name) {
+      final BsonValue value = arguments.get(name);
+      if (value == null || !value.isDocument()) {
+         throw new IllegalArgumentException("Missing document '" + name + "' of operation " + operation + ".");
+      }
+      return value.asDocument();
+   }
+
+   /**
+    * Copies a document to be inserted, because the driver adds the generated <code>_id</code> to it and the parsed documents
+    * are shared among the iterations.
+    *
+    * @param document
+    *       The parsed document.
+    * @return A shallow copy of the document.
+    */
+   static BsonDocument copy(final BsonDocument document) {
+      final BsonDocument copy = new BsonDocument();
+      copy.putAll(document);
+      return copy;
+   }
+
+   private static UpdateOptions updateOptions(final BsonDocument arguments) {
+      final BsonValue upsert = arguments.get("upsert");
+      return new UpdateOptions().upsert(upsert != null && upsert.isBoolean() && upsert.asBoolean().getValue());
+   }
+}
@@ -23,33 +23,62 @@ import org.perfcake.reporting.Measurement;
 import org.perfcake.reporting.MeasurementUnit;
 import org.perfcake.reporting.Quantity;
 import org.perfcake.reporting.ReportingException;
+import org.perfcake.reporting.destination.perfrepo.MemoryBuffer;
+import org.perfcake.reporting.destination.perfrepo.ReportedValue;
+import org.perfcake.reporting.destination.perfrepo.ReportingQueue;
+import org.perfcake.reporting.destination.perfrepo.SpoolSync;
+import org.perfcake.reporting.destination.perfrepo.ValueBuffer;
+import org.perfcake.reporting.destination.perfrepo.ValueSpool;
+import org.perfcake.reporting.destination.perfrepo.ValueUploader;
 import org.perfcake.reporting.reporter.Reporter;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.perfrepo.client.PerfRepoClient;
 import org.perfrepo.model.TestExecution;
 import org.perfrepo.model.Value;
 import org.perfrepo.model.builder.TestExecutionBuilder;
-import org.perfrepo.model.builder.ValueBuilder;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * The destination that store the {@link Measurement} into PerfRepo application.
+ * The values are uploaded by a background thread in batches, so that a slow PerfRepo server does not block the reporter
+ * (see {@link ReportingQueue}). The first batch creates the test execution, the following values are added to it.
+ * Optionally, the values are written to a spool file in {@link #spoolDirectory} first and they are removed from it only
+ * after they were uploaded (see {@link ValueSpool}). The values that could not be uploaded until the end of the test are
+ * uploaded by the next run.
  *
  * @author Pavel Drozd
  */
 public class PerfRepoDestination implements Destination {
 
+   /**
+    * The destination's logger.
+    */
+   private static final Logger log = LogManager.getLogger(PerfRepoDestination.class);
+
    private static final String PERCENTAGE = "Percentage";
 
    private static final String TIME = "Time";
 
    private static final String ITERATION = "Iteration";
 
+   private static final String SPOOL_PREFIX = "perfrepo-";
+
+   private static final String SPOOL_SUFFIX = ".spool";
+
    /**
     * PerfRepo Client used to create test executions.
     */
@@ -127,7 +156,78 @@ public class PerfRepoDestination implements Destination {
    /**
     * Test Execution Id, when the reporter stores more values for one test execution.
     */
-   private Long testExecutionId;
+   private volatile Long testExecutionId;
+
+   /**
+    * Maximum number of values waiting to be uploaded. When it is 0, the values are uploaded synchronously by the reporting thread.
+    */
+   private int queueSize = 1000;
+
+   /**
+    * Maximum number of values uploaded together.
+    */
+   private int batchSize = 100;
+
+   /**
+    * Maximum time in milliseconds a value waits for the batch to be filled before it is uploaded.
+    */
+   private long flushPeriod = 1000;
+
+   /**
+    * Number of times a failed upload is retried.
+    */
+   private int maxRetries = 5;
+
+   /**
+    * Delay in milliseconds before the first retry of a failed upload, it is doubled with each further retry.
+    */
+   private long retryBackOff = 500;
+
+   /**
+    * Maximum delay in milliseconds between the retries of a failed upload.
+    */
+   private long maxRetryBackOff = 30_000;
+
+   /**
+    * Maximum time in milliseconds to wait for the remaining values to be uploaded when the destination is closed.
+    */
+   private long closeTimeout = 60_000;
+
+   /**
+    * Directory of the spool files. When set, the values waiting to be uploaded are stored in a spool file instead of the memory,
+    * so they are not lost when the PerfRepo is not available.
+    */
+   private String spoolDirectory = null;
+
+   /**
+    * When the values appended to the spool file are forced to the disk.
+    */
+   private SpoolSync spoolSync = SpoolSync.PERIODIC;
+
+   /**
+    * Minimal period in milliseconds between forcing the spool file to the disk in the {@link SpoolSync#PERIODIC} mode.
+    */
+   private long spoolSyncPeriod = 1000;
+
+   /**
+    * Initial size of the spool file in bytes, the file is enlarged when needed.
+    */
+   private int spoolSize = 1024 * 1024;
+
+   /**
+    * Queue of the values waiting to be uploaded, null in the synchronous mode.
+    */
+   private ReportingQueue reportingQueue;
+
+   /**
+    * Spool of the values reported by this run, null when the spool is not used.
+    */
+   private ValueSpool spool;
+
+   /**
+    * Queues replaying the spool files left by the previous runs.
+    */
+   private final List<ReportingQueue> replays = new ArrayList<>();
 
    /**
     * Parsed {@link #parameters}
@@ -162,27 +262,157 @@ public class PerfRepoDestination implements Destination {
       if (testExecutionName == null || testExecutionName.isEmpty()) {
          testExecutionName = testUID;
       }
+      if (spoolDirectory != null) {
+         openSpools();
+      }
+      if (spool != null) {
+         final ValueSpool current = spool;
+         reportingQueue = createQueue(values -> upload(values, current), current);
+      } else if (queueSize > 0) {
+         reportingQueue = createQueue(values -> upload(values, null), new MemoryBuffer(queueSize));
+      }
+   }
+
+   private ReportingQueue createQueue(final ValueUploader uploader, final ValueBuffer buffer) {
+      final ReportingQueue queue = new ReportingQueue(uploader, buffer).setBatchSize(batchSize).setFlushPeriod(flushPeriod).setMaxRetries(maxRetries)
+                                                                       .setRetryBackOff(retryBackOff).setMaxRetryBackOff(maxRetryBackOff);
+      queue.start();
+      return queue;
+   }
+
+   /**
+    * Creates the spool file of this run and starts replaying the spool files left by the previous runs of the same test.
+    * The values of each previous run are added to its own test execution.
+    */
+   private void openSpools() {
+      final File directory = new File(spoolDirectory);
+      final String prefix = SPOOL_PREFIX + testUID.replaceAll("[^\\w.-]", "_") + "-";
+      final File[] previous = directory.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(SPOOL_SUFFIX));
+
+      try {
+         if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the directory " + directory);
+         }
+         spool = ValueSpool.open(File.createTempFile(prefix, SPOOL_SUFFIX, directory), spoolSize, spoolSync, spoolSyncPeriod);
+         if (testExecutionId != null) {
+            spool.setExecutionId(testExecutionId);
+         }
+      } catch (IOException e) {
+         log.error("Cannot create a spool file, the values waiting to be uploaded are kept in the memory: ", e);
+      }
+
+      if (previous != null) {
+         for (final File file : previous) {
+            replay(file);
+         }
+      }
+   }
+
+   private void replay(final File file) {
+      try {
+         final ValueSpool previous = ValueSpool.open(file, spoolSize, spoolSync, spoolSyncPeriod);
+         if (previous == null) {
+            // the file is being replayed by another destination
+            return;
+         }
+
+         previous.end();
+         if (previous.getPending() == 0) {
+            previous.delete();
+            return;
+         }
+
+         log.info("Reporting " + previous.getPending() + " values of a previous run stored in " + file + " to the PerfRepo.");
+         replays.add(createQueue(values -> upload(values, previous), previous));
+      } catch (IOException e) {
+         log.warn("Cannot replay the spool file " + file + ": ", e);
+      }
    }
 
    @Override
    public void close() {
-      // nothing to do
+      final long deadline = System.currentTimeMillis() + closeTimeout;
+
+      if (reportingQueue != null) {
+         closeQueue(reportingQueue, deadline);
+         reportingQueue = null;
+         spool = null;
+      }
+      for (final ReportingQueue replay : replays) {
+         closeQueue(replay, deadline);
+      }
+      replays.clear();
+      client.shutdown();
+   }
+
+   private void closeQueue(final ReportingQueue queue, final long deadline) {
+      try {
+         queue.close(Math.max(deadline - System.currentTimeMillis(), 1));
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+
+      if (queue.getBuffer() instanceof ValueSpool) {
+         final ValueSpool valueSpool = (ValueSpool) queue.getBuffer();
+         try {
+            if (valueSpool.getPending() == 0) {
+               valueSpool.delete();
+            } else {
+               log.warn(valueSpool.getPending() + " values could not be reported to the PerfRepo, they are kept in " + valueSpool.getFile() + " for the next run.");
+               valueSpool.close();
+            }
+         } catch (IOException e) {
+            log.warn("Cannot close the spool file " + valueSpool.getFile() + ": ", e);
+         }
+      } else if (queue.getLostValues() > 0) {
+         log.warn(queue.getLostValues() + " values could not be reported to the PerfRepo.");
+      }
    }
 
    @Override
    public void report(final Measurement m) throws ReportingException {
-      if (testExecutionId != null) {
-         TestExecutionBuilder tb = TestExecution.builder().id(testExecutionId).name(testExecutionName);
-         createValue(tb.value(), m);
+      final ReportedValue value = createValue(m);
+
+      if (reportingQueue == null) {
          try {
-            client.addValue(tb.build());
+            upload(new ArrayList<>(Collections.singletonList(value)), null);
          } catch (Exception e) {
-            throw new ReportingException("Could report to the PerfRepo: ", e);
+            throw new ReportingException("Could not report to the PerfRepo: ", e);
          }
-      } else {
-         TestExecutionBuilder testExecutionBuilder = TestExecution.builder().testUid(testUID)
-                                                                  .name(testExecutionName);
-         testExecutionBuilder.started(new Date());
+         return;
+      }
+
+      try {
+         if (!reportingQueue.offer(value)) {
+            throw new ReportingException("Could not report to the PerfRepo, the queue of the values waiting to be uploaded is full.");
+         }
+      } catch (IOException e) {
+         throw new ReportingException("Could not store the value in the spool file: ", e);
+      }
+      final Exception failure = reportingQueue.takeFailure();
+      if (failure != null) {
+         throw new ReportingException("Could not report to the PerfRepo: ", failure);
+      }
+   }
+
+   /**
+    * Uploads the values to the PerfRepo. The test execution is created together with the first values, the following
+    * values are added to it one by one as the REST API accepts a single value at a time.
+    *
+    * @param values
+    *       The values to be uploaded, the uploaded values are removed from the list.
+    * @param valueSpool
+    *       The spool the values were read from, it holds the id of their test execution. Null when the spool is not used.
+    * @throws Exception
+    *       When the upload failed.
+    */
+   private void upload(final List<ReportedValue> values, final ValueSpool valueSpool) throws Exception {
+      final Long executionId = valueSpool == null ? testExecutionId : valueSpool.getExecutionId();
+
+      if (executionId == null) {
+         final TestExecutionBuilder testExecutionBuilder = TestExecution.builder().testUid(testUID)
+                                                                        .name(testExecutionName);
+         testExecutionBuilder.started(valueSpool == null ? new Date() : valueSpool.getStarted());
          for (String tag : parsedTags) {
             testExecutionBuilder.tag(tag);
          }
@@ -191,13 +421,26 @@ public class PerfRepoDestination implements Destination {
                testExecutionBuilder.parameter(param, parsedParameters.get(param));
             }
          }
-         createValue(testExecutionBuilder.value(), m);
-         try {
-            TestExecution te = testExecutionBuilder.build();
-            testExecutionId = client.createTestExecution(te);
-         } catch (Exception e) {
-            throw new ReportingException("Could not report to the PerfRepo: ", e);
+         for (final ReportedValue value : values) {
+            value.addTo(testExecutionBuilder);
+         }
+         final Long createdId = client.createTestExecution(testExecutionBuilder.build());
+         values.clear();
+         if (valueSpool != null) {
+            valueSpool.setExecutionId(createdId);
          }
+         if (valueSpool == null || valueSpool == spool) {
+            testExecutionId = createdId;
+         }
+         return;
+      }
+
+      final Iterator<ReportedValue> iterator = values.iterator();
+      while (iterator.hasNext()) {
+         final TestExecutionBuilder tb = TestExecution.builder().id(executionId).name(testExecutionName);
+         iterator.next().addTo(tb);
+         client.addValue(tb.build());
+         iterator.remove();
       }
    }
 
@@ -239,39 +482,37 @@ public class PerfRepoDestination implements Destination {
    /**
     * Create {@link Value} according to measurement and destination settings.
     *
-    * @param vb
     * @param m
+    * @return
     * @throws ReportingException
     */
-   private void createValue(ValueBuilder vb, final Measurement m) throws ReportingException {
+   private ReportedValue createValue(final Measurement m) throws ReportingException {
       Object result = null;
       if (reporterResultName != null && !reporterResultName.isEmpty()) {
          result = m.get(reporterResultName);
       } else {
          result = m.get();
       }
+      final Map<String, String> params = new LinkedHashMap<>();
       if (parsedValueParameters != null && !parsedValueParameters.isEmpty()) {
-         for (String key : parsedValueParameters.keySet()) {
-            vb.parameter(key, parsedValueParameters.get(key));
-         }
+         params.putAll(parsedValueParameters);
       }
       if (isIterationRecorded) {
-         vb.parameter(ITERATION, String.valueOf(m.getIteration()));
+         params.put(ITERATION, String.valueOf(m.getIteration()));
       }
       if (isTimeRecorded) {
-         vb.parameter(TIME, String.valueOf(m.getTime()));
+         params.put(TIME, String.valueOf(m.getTime()));
       }
       if (isPercentageRecorded) {
-         vb.parameter(PERCENTAGE, String.valueOf(m.getPercentage()));
+         params.put(PERCENTAGE, String.valueOf(m.getPercentage()));
       }
       if (result instanceof Double) {
-         vb.resultValue((Double) result);
+         return new ReportedValue(metric, (Double) result, params);
       } else if (result instanceof Quantity<?>) {
-         vb.resultValue(((Quantity<?>) result).getNumber().doubleValue());
+         return new ReportedValue(metric, ((Quantity<?>) result).getNumber().doubleValue(), params);
       } else {
          throw new ReportingException("Unknown result type!");
       }
-      vb.metricName(metric);
    }
 
    public String getRepositoryUrl() {
@@ -377,4 +618,92 @@ public class PerfRepoDestination implements Destination {
    public void setTestExecutionName(String testExecutionName) {
       this.testExecutionName = testExecutionName;
    }
+
+   public int getQueueSize() {
+      return queueSize;
+   }
+
+   public void setQueueSize(int queueSize) {
+      this.queueSize = queueSize;
+   }
+
+   public int getBatchSize() {
+      return batchSize;
+   }
+
+   public void setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+   }
+
+   public long getFlushPeriod() {
+      return flushPeriod;
+   }
+
+   public void setFlushPeriod(long flushPeriod) {
+      this.flushPeriod = flushPeriod;
+   }
+
+   public int getMaxRetries() {
+      return maxRetries;
+   }
+
+   public void setMaxRetries(int maxRetries) {
+      this.maxRetries = maxRetries;
+   }
+
+   public long getRetryBackOff() {
+      return retryBackOff;
+   }
+
+   public void setRetryBackOff(long retryBackOff) {
+      this.retryBackOff = retryBackOff;
+   }
+
+   public long getMaxRetryBackOff() {
+      return maxRetryBackOff;
+   }
+
+   public void setMaxRetryBackOff(long maxRetryBackOff) {
+      this.maxRetryBackOff = maxRetryBackOff;
+   }
+
+   public long getCloseTimeout() {
+      return closeTimeout;
+   }
+
+   public void setCloseTimeout(long closeTimeout) {
+      this.closeTimeout = closeTimeout;
+   }
+
+   public String getSpoolDirectory() {
+      return spoolDirectory;
+   }
+
+   public void setSpoolDirectory(String spoolDirectory) {
+      this.spoolDirectory = spoolDirectory;
+   }
+
+   public SpoolSync getSpoolSync() {
+      return spoolSync;
+   }
+
+   public void setSpoolSync(SpoolSync spoolSync) {
+      this.spoolSync = spoolSync;
+   }
+
+   public long getSpoolSyncPeriod() {
+      return spoolSyncPeriod;
+   }
+
+   public void setSpoolSyncPeriod(long spoolSyncPeriod) {
+      this.spoolSyncPeriod = spoolSyncPeriod;
+   }
+
+   public int getSpoolSize() {
+      return spoolSize;
+   }
+
+   public void setSpoolSize(int spoolSize) {
+      this.spoolSize = spoolSize;
+   }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting.destination.perfrepo;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-memory buffer of the values. The values are removed when they are read, so they are lost when the upload fails.
+ */
+public class MemoryBuffer implements ValueBuffer {
+
+   /**
+    * The values waiting to be read.
+    */
+   private final Deque<ReportedValue> values = new ArrayDeque<>();
+
+   /**
+    * Maximum number of values in the buffer.
+    */
+   private final int capacity;
+
+   /**
+    * Whether the buffer was ended.
+    */
+   private boolean ended = false;
+
+   /**
+    * Creates the buffer.
+    *
+    * @param capacity
+    *       Maximum number of values in the buffer.
+    */
+   public MemoryBuffer(final int capacity) {
+      this.capacity = capacity;
+   }
+
+   @Override
+   public synchronized boolean offer(final ReportedValue value) {
+      if (ended || values.size() >= capacity) {
+         return false;
+      }
+
+      values.addLast(value);
+      notifyAll();
+      return true;
+   }
+
+   @Override
+   public synchronized ReportedValue poll(final long timeout) throws InterruptedException {
+      long remaining = timeout;
+      while (values.isEmpty() && !ended) {
+         if (remaining <= 0) {
+            return null;
+         }
+         final long start = System.nanoTime();
+         TimeUnit.NANOSECONDS.timedWait(this, remaining);
+         remaining -= System.nanoTime() - start;
+      }
+
+      return values.pollFirst();
+   }
+
+   @Override
+   public void acknowledge(final int count) {
+      // the values were removed when they were read
+   }
+
+   @Override
+   public synchronized int size() {
+      return values.size();
+   }
+
+   @Override
+   public synchronized void end() {
+      ended = true;
+      notifyAll();
+   }
+
+   @Override
+   public boolean isDurable() {
+      return false;
+   }
+}
@@ -0,0 +1,88 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting.destination.perfrepo;
+
+import org.perfrepo.model.builder.TestExecutionBuilder;
+import org.perfrepo.model.builder.ValueBuilder;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A value of the metric waiting to be uploaded to PerfRepo.
+ */
+public class ReportedValue {
+
+   /**
+    * Name of the metric.
+    */
+   private final String metric;
+
+   /**
+    * The result value.
+    */
+   private final double result;
+
+   /**
+    * Parameters of the value.
+    */
+   private final Map<String, String> parameters;
+
+   /**
+    * Creates the value.
+    *
+    * @param metric
+    *       Name of the metric.
+    * @param result
+    *       The result value.
+    * @param parameters
+    *       Parameters of the value.
+    */
+   public ReportedValue(final String metric, final double result, final Map<String, String> parameters) {
+      this.metric = metric;
+      this.result = result;
+      this.parameters = Collections.unmodifiableMap(parameters);
+   }
+
+   public String getMetric() {
+      return metric;
+   }
+
+   public double getResult() {
+      return result;
+   }
+
+   public Map<String, String> getParameters() {
+      return parameters;
+   }
+
+   /**
+    * Adds the value to the test execution.
+    *
+    * @param builder
+    *       Builder of the test execution.
+    */
+   public void addTo(final TestExecutionBuilder builder) {
+      final ValueBuilder valueBuilder = builder.value().metricName(metric).resultValue(result);
+      for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+         valueBuilder.parameter(parameter.getKey(), parameter.getValue());
+      }
+   }
+}
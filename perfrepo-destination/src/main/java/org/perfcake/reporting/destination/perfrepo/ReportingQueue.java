@@ -0,0 +1,266 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting.destination.perfrepo;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Queue of the values waiting to be uploaded to PerfRepo. A background thread reads the values from the {@link ValueBuffer} and
+ * uploads them in batches, a batch is uploaded when it is full or when its oldest value has waited for the flush period.
+ * Failed uploads are retried with an exponential back-off. The values of a batch that failed after all the retries are lost,
+ * unless the buffer is durable. The upload from a durable buffer is retried until it succeeds, keeping the order of the values.
+ * The reporting thread is never blocked by the upload, it only learns about the failures later.
+ */
+public class ReportingQueue {
+
+   /**
+    * The queue's logger.
+    */
+   private static final Logger log = LogManager.getLogger(ReportingQueue.class);
+
+   /**
+    * Uploads the batches.
+    */
+   private final ValueUploader uploader;
+
+   /**
+    * The values waiting to be uploaded.
+    */
+   private final ValueBuffer buffer;
+
+   /**
+    * Maximum number of values uploaded in a single batch.
+    */
+   private int batchSize = 100;
+
+   /**
+    * Maximum time in milliseconds a value waits in the queue for the batch to be filled.
+    */
+   private long flushPeriod = 1_000;
+
+   /**
+    * Number of times a failed upload is retried.
+    */
+   private int maxRetries = 5;
+
+   /**
+    * Delay in milliseconds before the first retry, it is doubled with each further retry.
+    */
+   private long retryBackOff = 500;
+
+   /**
+    * Maximum delay in milliseconds between retries.
+    */
+   private long maxRetryBackOff = 30_000;
+
+   /**
+    * The thread uploading the batches.
+    */
+   private Thread flusher;
+
+   /**
+    * The last failure of an upload that has not been taken yet, the failures of a durable buffer are not recorded.
+    */
+   private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+   /**
+    * Number of values that could not be uploaded.
+    */
+   private final AtomicLong lostValues = new AtomicLong();
+
+   /**
+    * Creates the queue.
+    *
+    * @param uploader
+    *       Uploads the batches.
+    * @param buffer
+    *       The values waiting to be uploaded.
+    */
+   public ReportingQueue(final ValueUploader uploader, final ValueBuffer buffer) {
+      this.uploader = uploader;
+      this.buffer = buffer;
+   }
+
+   public ReportingQueue setBatchSize(final int batchSize) {
+      this.batchSize = batchSize;
+      return this;
+   }
+
+   public ReportingQueue setFlushPeriod(final long flushPeriod) {
+      this.flushPeriod = flushPeriod;
+      return this;
+   }
+
+   public ReportingQueue setMaxRetries(final int maxRetries) {
+      this.maxRetries = maxRetries;
+      return this;
+   }
+
+   public ReportingQueue setRetryBackOff(final long retryBackOff) {
+      this.retryBackOff = retryBackOff;
+      return this;
+   }
+
+   public ReportingQueue setMaxRetryBackOff(final long maxRetryBackOff) {
+      this.maxRetryBackOff = maxRetryBackOff;
+      return this;
+   }
+
+   /**
+    * Starts the thread uploading the values.
+    */
+   public void start() {
+      flusher = new Thread(this::flush, "PerfCake-PerfRepoFlusher");
+      flusher.setDaemon(true);
+      flusher.start();
+   }
+
+   /**
+    * Adds a value to the queue.
+    *
+    * @param value
+    *       The value to be uploaded.
+    * @return False when the queue is full or closed and the value was not added.
+    * @throws IOException
+    *       When it was not possible to store the value in the buffer.
+    */
+   public boolean offer(final ReportedValue value) throws IOException {
+      return buffer.offer(value);
+   }
+
+   public ValueBuffer getBuffer() {
+      return buffer;
+   }
+
+   /**
+    * Gets the last failure of an upload and forgets it, so that each failure is reported only once.
+    *
+    * @return The last failure, null when all the uploads succeeded since the last call.
+    */
+   public Exception takeFailure() {
+      return failure.getAndSet(null);
+   }
+
+   /**
+    * Gets the number of values that could not be uploaded.
+    *
+    * @return The number of lost values.
+    */
+   public long getLostValues() {
+      return lostValues.get();
+   }
+
+   /**
+    * Closes the queue and waits for the remaining values to be uploaded. The upload is interrupted after the timeout,
+    * the values that were not uploaded are lost unless the buffer is durable.
+    *
+    * @param timeout
+    *       Maximum time in milliseconds to wait for the upload.
+    * @throws InterruptedException
+    *       When interrupted while waiting for the upload.
+    */
+   public void close(final long timeout) throws InterruptedException {
+      buffer.end();
+      if (flusher == null) {
+         return;
+      }
+
+      flusher.join(timeout);
+      if (flusher.isAlive()) {
+         flusher.interrupt();
+         // an upload blocked in I/O might not respond to the interruption, the thread is a daemon so it does not prevent the exit
+         flusher.join(timeout);
+      }
+   }
+
+   private void flush() {
+      final List<ReportedValue> batch = new ArrayList<>(batchSize);
+
+      try {
+         ReportedValue value;
+         while ((value = buffer.poll(Long.MAX_VALUE)) != null) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushPeriod);
+
+            while (value != null) {
+               batch.add(value);
+               if (batch.size() >= batchSize) {
+                  break;
+               }
+               value = buffer.poll(deadline - System.nanoTime());
+            }
+
+            upload(batch);
+            batch.clear();
+         }
+      } catch (InterruptedException e) {
+         // terminated by close() after the timeout, a durable buffer keeps the values for the next run
+         if (!buffer.isDurable()) {
+            final int remaining = batch.size() + buffer.size();
+            lostValues.addAndGet(remaining);
+            log.warn("The upload to PerfRepo was interrupted, " + remaining + " values were not uploaded.");
+         }
+      } catch (IOException e) {
+         log.error("Unable to acknowledge the uploaded values, the upload to PerfRepo was stopped: ", e);
+      }
+   }
+
+   private void upload(final List<ReportedValue> batch) throws InterruptedException, IOException {
+      long backOff = retryBackOff;
+
+      for (int attempt = 0; ; attempt++) {
+         final int size = batch.size();
+         Exception error = null;
+         try {
+            uploader.upload(batch);
+         } catch (Exception e) {
+            error = e;
+         }
+         // the uploader removes the values it managed to upload, even when it failed later
+         buffer.acknowledge(size - batch.size());
+
+         if (error == null) {
+            return;
+         }
+
+         if (attempt == maxRetries) {
+            if (!buffer.isDurable()) {
+               log.error("Could not upload " + batch.size() + " values to PerfRepo: ", error);
+               lostValues.addAndGet(batch.size());
+               failure.set(error);
+               return;
+            }
+            log.warn("Could not upload " + batch.size() + " values to PerfRepo, the upload is retried until it succeeds: ", error);
+         } else if (log.isDebugEnabled()) {
+            log.debug("Upload to PerfRepo failed, retrying in " + backOff + " ms: " + error.getMessage());
+         }
+
+         Thread.sleep(backOff);
+         backOff = Math.min(backOff * 2, maxRetryBackOff);
+      }
+   }
+}
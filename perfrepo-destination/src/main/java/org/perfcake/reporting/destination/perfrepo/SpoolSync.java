@@ -0,0 +1,40 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting.destination.perfrepo;
+
+/**
+ * Determines when the values appended to the spool file are forced to the disk.
+ */
+public enum SpoolSync {
+   /**
+    * Each value is forced to the disk before the reporting continues.
+    */
+   ALWAYS,
+
+   /**
+    * The spool file is forced to the disk when a value is appended after the sync period elapsed.
+    */
+   PERIODIC,
+
+   /**
+    * The spool file is never forced explicitly, the operating system writes it to the disk eventually.
+    */
+   NEVER
+}
@@ -0,0 +1,80 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting.destination.perfrepo;
+
+import java.io.IOException;
+
+/**
+ * Buffer of the values waiting to be uploaded to PerfRepo. The values are read by a single thread in the order they were added
+ * and acknowledged once they are uploaded.
+ */
+public interface ValueBuffer {
+
+   /**
+    * Adds a value to the buffer.
+    *
+    * @param value
+    *       The value to be added.
+    * @return False when the buffer is full or ended and the value was not added.
+    * @throws IOException
+    *       When it was not possible to store the value.
+    */
+   boolean offer(ReportedValue value) throws IOException;
+
+   /**
+    * Reads the next value, waits for it when there is none.
+    *
+    * @param timeout
+    *       Maximum time in nanoseconds to wait for the value.
+    * @return The next value, null after the timeout or when the buffer was ended and all its values were read.
+    * @throws InterruptedException
+    *       When interrupted while waiting for the value.
+    */
+   ReportedValue poll(long timeout) throws InterruptedException;
+
+   /**
+    * Confirms that the oldest read values were uploaded.
+    *
+    * @param count
+    *       The number of uploaded values.
+    * @throws IOException
+    *       When it was not possible to record the acknowledgement.
+    */
+   void acknowledge(int count) throws IOException;
+
+   /**
+    * Gets the number of values that were not read yet.
+    *
+    * @return The number of unread values.
+    */
+   int size();
+
+   /**
+    * Ends the buffer. No more values are accepted and the reader is not blocked once it reads all the values.
+    */
+   void end();
+
+   /**
+    * Gets whether the values survive a failed upload and a restart of the test.
+    *
+    * @return True if and only if the values not acknowledged are kept by the buffer.
+    */
+   boolean isDurable();
+}
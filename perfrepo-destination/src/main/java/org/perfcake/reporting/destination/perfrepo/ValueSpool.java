@@ -0,0 +1,561 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting.destination.perfrepo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead spool of the values waiting to be uploaded to PerfRepo. The values are appended to a memory-mapped file and
+ * they are removed only after they were uploaded, so they survive both an unavailable PerfRepo and a restart of the test.
+ * When all the values are uploaded, the file is reused from its beginning.
+ *
+ * <p>The file starts with a header holding the id of the test execution the values belong to, its start time and the position
+ * of the first value not uploaded yet. The header is followed by the records, each of them consisting of the payload length,
+ * the generation of the file, the checksum of the payload and the payload itself (metric name, result value and the parameters).
+ * The generation is increased whenever the file is reused, which separates the valid records from the stale ones.
+ * A record is valid only when it is complete, the values appended after a crash of the JVM or the system are recovered
+ * according to the {@link SpoolSync} policy.</p>
+ *
+ * <p>The file is locked while it is open, so that it is not replayed by another destination at the same time. The files open
+ * in this JVM are tracked as well, a file lock is held on behalf of the whole process and closing any other channel of the file
+ * would release it.</p>
+ */
+public class ValueSpool implements ValueBuffer {
+
+   /**
+    * Identifies the spool files.
+    */
+   private static final int MAGIC = 0x50435350;
+
+   private static final int GENERATION = 4;
+
+   private static final int EXECUTION_ID = 8;
+
+   private static final int STARTED = 16;
+
+   private static final int ACKNOWLEDGED = 24;
+
+   private static final int HEADER_SIZE = 32;
+
+   /**
+    * Size of the length, generation and checksum of a record.
+    */
+   private static final int RECORD_HEADER_SIZE = 12;
+
+   /**
+    * Length of a null string.
+    */
+   private static final int NULL_STRING = 0xFFFF;
+
+   /**
+    * Canonical paths of the spool files open in this JVM.
+    */
+   private static final Set<Path> openFiles = new HashSet<>();
+
+   /**
+    * The spool file.
+    */
+   private final File file;
+
+   /**
+    * Canonical path of the spool file, its key in {@link #openFiles}.
+    */
+   private final Path path;
+
+   /**
+    * Channel of the spool file.
+    */
+   private final FileChannel channel;
+
+   /**
+    * The mapped content of the spool file.
+    */
+   private MappedByteBuffer buffer;
+
+   /**
+    * When the appended values are forced to the disk.
+    */
+   private final SpoolSync sync;
+
+   /**
+    * Minimal period in nanoseconds between forcing the file to the disk in the {@link SpoolSync#PERIODIC} mode.
+    */
+   private final long syncPeriod;
+
+   /**
+    * Time of the last forcing of the file to the disk as returned by {@link System#nanoTime()}.
+    */
+   private long lastSync = System.nanoTime();
+
+   /**
+    * The current generation of the file.
+    */
+   private int generation;
+
+   /**
+    * Position where the next value is appended.
+    */
+   private int writeOffset;
+
+   /**
+    * Position of the next value to be read.
+    */
+   private int readOffset;
+
+   /**
+    * Position of the first value that was not uploaded.
+    */
+   private int acknowledgedOffset;
+
+   /**
+    * Number of values that were not read yet.
+    */
+   private int unread;
+
+   /**
+    * Number of values that were not uploaded yet.
+    */
+   private int pending;
+
+   /**
+    * Whether the spool was ended.
+    */
+   private boolean ended = false;
+
+   private ValueSpool(final File file, final Path path, final FileChannel channel, final int initialSize, final SpoolSync sync, final long syncPeriod) throws IOException {
+      this.file = file;
+      this.path = path;
+      this.channel = channel;
+      this.sync = sync;
+      this.syncPeriod = TimeUnit.MILLISECONDS.toNanos(syncPeriod);
+
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+         throw new IOException("The spool file is too large: " + file);
+      }
+
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, Math.max(initialSize, HEADER_SIZE)));
+      if (size < HEADER_SIZE) {
+         buffer.putInt(GENERATION, 1);
+         buffer.putLong(EXECUTION_ID, 0);
+         buffer.putLong(STARTED, System.currentTimeMillis());
+         buffer.putLong(ACKNOWLEDGED, HEADER_SIZE);
+         buffer.putInt(0, MAGIC);
+         buffer.force();
+      } else if (buffer.getInt(0) != MAGIC) {
+         throw new IOException("Not a spool file: " + file);
+      }
+
+      generation = buffer.getInt(GENERATION);
+      recover();
+   }
+
+   /**
+    * Opens the spool file, it is created when it does not exist. The values stored in the file and not uploaded yet
+    * are read first.
+    *
+    * @param file
+    *       The spool file.
+    * @param initialSize
+    *       Initial size of the file in bytes, the file is enlarged when needed.
+    * @param sync
+    *       When the appended values are forced to the disk.
+    * @param syncPeriod
+    *       Minimal period in milliseconds between forcing the file to the disk in the {@link SpoolSync#PERIODIC} mode.
+    * @return The spool, null when the file is already open in this JVM or it is locked by another process.
+    * @throws IOException
+    *       When it was not possible to open the file or it is not a valid spool file.
+    */
+   public static ValueSpool open(final File file, final int initialSize, final SpoolSync sync, final long syncPeriod) throws IOException {
+      final Path path = file.getCanonicalFile().toPath();
+
+      // the file must not be opened again, closing the second channel would release the lock of the first one
+      synchronized (openFiles) {
+         if (!openFiles.add(path)) {
+            return null;
+         }
+      }
+
+      FileChannel channel = null;
+      try {
+         channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+         FileLock lock;
+         try {
+            lock = channel.tryLock();
+         } catch (OverlappingFileLockException e) {
+            lock = null;
+         }
+
+         if (lock == null) {
+            channel.close();
+            release(path);
+            return null;
+         }
+
+         return new ValueSpool(file, path, channel, initialSize, sync, syncPeriod);
+      } catch (IOException | RuntimeException e) {
+         if (channel != null) {
+            channel.close();
+         }
+         release(path);
+         throw e;
+      }
+   }
+
+   private static void release(final Path path) {
+      synchronized (openFiles) {
+         openFiles.remove(path);
+      }
+   }
+
+   /**
+    * Finds the valid records and the first value that was not uploaded.
+    */
+   private void recover() {
+      final long acknowledged = buffer.getLong(ACKNOWLEDGED);
+      int position = HEADER_SIZE;
+
+      acknowledgedOffset = HEADER_SIZE;
+      while (isValidRecord(position)) {
+         position += RECORD_HEADER_SIZE + buffer.getInt(position);
+         if (position <= acknowledged) {
+            acknowledgedOffset = position;
+         } else {
+            pending++;
+         }
+      }
+
+      writeOffset = position;
+      readOffset = acknowledgedOffset;
+      unread = pending;
+   }
+
+   private boolean isValidRecord(final int position) {
+      if (position + RECORD_HEADER_SIZE > buffer.capacity()) {
+         return false;
+      }
+
+      final int length = buffer.getInt(position);
+      if (length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE || buffer.getInt(position + 4) != generation) {
+         return false;
+      }
+
+      return buffer.getInt(position + 8) == checksum(position + RECORD_HEADER_SIZE, length);
+   }
+
+   private int checksum(final int position, final int length) {
+      final ByteBuffer payload = buffer.duplicate();
+      payload.limit(position + length).position(position);
+
+      final CRC32 crc = new CRC32();
+      crc.update(payload);
+      return (int) crc.getValue();
+   }
+
+   @Override
+   public synchronized boolean offer(final ReportedValue value) throws IOException {
+      if (ended) {
+         return false;
+      }
+
+      final byte[] metric = encode(value.getMetric());
+      final List<byte[]> parameters = new ArrayList<>(value.getParameters().size() * 2);
+      int length = 2 + metric.length + 8 + 2;
+      for (final Map.Entry<String, String> parameter : value.getParameters().entrySet()) {
+         final byte[] name = encode(parameter.getKey());
+         final byte[] parameterValue = encode(parameter.getValue());
+         parameters.add(name);
+         parameters.add(parameterValue);
+         length += 2 + name.length + 2 + parameterValue.length;
+      }
+
+      ensureCapacity((long) writeOffset + RECORD_HEADER_SIZE + length);
+
+      final int payload = writeOffset + RECORD_HEADER_SIZE;
+      int position = putString(payload, metric, value.getMetric() == null);
+      buffer.putDouble(position, value.getResult());
+      buffer.putShort(position + 8, (short) value.getParameters().size());
+      position += 10;
+      int index = 0;
+      for (final Map.Entry<String, String> parameter : value.getParameters().entrySet()) {
+         position = putString(position, parameters.get(index++), parameter.getKey() == null);
+         position = putString(position, parameters.get(index++), parameter.getValue() == null);
+      }
+
+      buffer.putInt(writeOffset + 4, generation);
+      buffer.putInt(writeOffset + 8, checksum(payload, length));
+      // the length is written last, the record becomes valid only when it is complete
+      buffer.putInt(writeOffset, length);
+
+      writeOffset += RECORD_HEADER_SIZE + length;
+      unread++;
+      pending++;
+      sync();
+      notifyAll();
+
+      return true;
+   }
+
+   private static byte[] encode(final String string) throws IOException {
+      if (string == null) {
+         return new byte[0];
+      }
+
+      final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      if (bytes.length >= NULL_STRING) {
+         throw new IOException("The string is too long to be stored in the spool file: " + string.substring(0, 50) + "...");
+      }
+      return bytes;
+   }
+
+   private int putString(final int position, final byte[] bytes, final boolean isNull) {
+      buffer.putShort(position, (short) (isNull ? NULL_STRING : bytes.length));
+      for (int i = 0; i < bytes.length; i++) {
+         buffer.put(position + 2 + i, bytes[i]);
+      }
+      return position + 2 + bytes.length;
+   }
+
+   private void ensureCapacity(final long required) throws IOException {
+      if (required <= buffer.capacity()) {
+         return;
+      }
+      if (required > Integer.MAX_VALUE) {
+         throw new IOException("The spool file is full: " + file);
+      }
+
+      long capacity = buffer.capacity();
+      while (capacity < required) {
+         capacity *= 2;
+      }
+      // the pages of the previous mapping are shared with the new one, nothing is lost by dropping it
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+   }
+
+   @Override
+   public synchronized ReportedValue poll(final long timeout) throws InterruptedException {
+      long remaining = timeout;
+      while (unread == 0 && !ended) {
+         if (remaining <= 0) {
+            return null;
+         }
+         final long start = System.nanoTime();
+         TimeUnit.NANOSECONDS.timedWait(this, remaining);
+         remaining -= System.nanoTime() - start;
+      }
+
+      if (unread == 0) {
+         return null;
+      }
+
+      final ReportedValue value = read(readOffset + RECORD_HEADER_SIZE);
+      readOffset += RECORD_HEADER_SIZE + buffer.getInt(readOffset);
+      unread--;
+
+      return value;
+   }
+
+   private ReportedValue read(final int payload) {
+      int position = payload;
+      final String metric = getString(position);
+      position += 2 + stringLength(position);
+      final double result = buffer.getDouble(position);
+      final int count = buffer.getShort(position + 8) & 0xFFFF;
+      position += 10;
+
+      final Map<String, String> parameters = new LinkedHashMap<>();
+      for (int i = 0; i < count; i++) {
+         final String name = getString(position);
+         position += 2 + stringLength(position);
+         parameters.put(name, getString(position));
+         position += 2 + stringLength(position);
+      }
+
+      return new ReportedValue(metric, result, parameters);
+   }
+
+   private int stringLength(final int position) {
+      final int length = buffer.getShort(position) & 0xFFFF;
+      return length == NULL_STRING ? 0 : length;
+   }
+
+   private String getString(final int position) {
+      if ((buffer.getShort(position) & 0xFFFF) == NULL_STRING) {
+         return null;
+      }
+
+      final byte[] bytes = new byte[stringLength(position)];
+      for (int i = 0; i < bytes.length; i++) {
+         bytes[i] = buffer.get(position + 2 + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   @Override
+   public synchronized void acknowledge(final int count) {
+      if (count <= 0) {
+         return;
+      }
+
+      for (int i = 0; i < count; i++) {
+         acknowledgedOffset += RECORD_HEADER_SIZE + buffer.getInt(acknowledgedOffset);
+      }
+      pending -= count;
+
+      if (acknowledgedOffset == writeOffset) {
+         // everything was uploaded, the file is reused from its beginning, the generation is written first so that the old records
+         // are never considered to be pending again
+         generation++;
+         buffer.putInt(GENERATION, generation);
+         writeOffset = HEADER_SIZE;
+         readOffset = HEADER_SIZE;
+         acknowledgedOffset = HEADER_SIZE;
+      }
+      buffer.putLong(ACKNOWLEDGED, acknowledgedOffset);
+      sync();
+   }
+
+   private void sync() {
+      if (sync == SpoolSync.ALWAYS || (sync == SpoolSync.PERIODIC && System.nanoTime() - lastSync >= syncPeriod)) {
+         buffer.force();
+         lastSync = System.nanoTime();
+      }
+   }
+
+   @Override
+   public synchronized int size() {
+      return unread;
+   }
+
+   /**
+    * Gets the number of values that were not uploaded yet.
+    *
+    * @return The number of pending values.
+    */
+   public synchronized int getPending() {
+      return pending;
+   }
+
+   @Override
+   public synchronized void end() {
+      ended = true;
+      notifyAll();
+   }
+
+   @Override
+   public boolean isDurable() {
+      return true;
+   }
+
+   /**
+    * Gets the id of the test execution the values belong to.
+    *
+    * @return The test execution id, null when the test execution was not created yet.
+    */
+   public synchronized Long getExecutionId() {
+      final long id = buffer.getLong(EXECUTION_ID);
+      return id == 0 ? null : id;
+   }
+
+   /**
+    * Sets the id of the test execution the values belong to. The id is forced to the disk unless the spool is never synced,
+    * so that the values replayed after a restart are added to the same test execution.
+    *
+    * @param executionId
+    *       The test execution id.
+    */
+   public synchronized void setExecutionId(final Long executionId) {
+      buffer.putLong(EXECUTION_ID, executionId == null ? 0 : executionId);
+      if (sync != SpoolSync.NEVER) {
+         buffer.force();
+      }
+   }
+
+   /**
+    * Gets the time when the spool file was created.
+    *
+    * @return The start time of the test execution the values belong to.
+    */
+   public Date getStarted() {
+      return new Date(buffer.getLong(STARTED));
+   }
+
+   /**
+    * Gets the spool file.
+    *
+    * @return The file the values are stored in.
+    */
+   public File getFile() {
+      return file;
+   }
+
+   /**
+    * Forces the file to the disk, unless it is never synced, and closes it.
+    *
+    * @throws IOException
+    *       When it was not possible to close the file.
+    */
+   public synchronized void close() throws IOException {
+      ended = true;
+      if (!channel.isOpen()) {
+         return;
+      }
+
+      try {
+         if (sync != SpoolSync.NEVER) {
+            buffer.force();
+         }
+         channel.close();
+      } finally {
+         release(path);
+      }
+   }
+
+   /**
+    * Closes and deletes the file.
+    *
+    * @throws IOException
+    *       When it was not possible to delete the file.
+    */
+   public void delete() throws IOException {
+      close();
+      Files.deleteIfExists(file.toPath());
+   }
+}
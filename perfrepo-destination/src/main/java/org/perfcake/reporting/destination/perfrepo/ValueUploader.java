@@ -0,0 +1,40 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *  
+ * Copyright (C) 2010 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting.destination.perfrepo;
+
+import java.util.List;
+
+/**
+ * Uploads the values to PerfRepo.
+ */
+@FunctionalInterface
+public interface ValueUploader {
+
+   /**
+    * Uploads the values. The uploaded values are removed from the list, so that only the remaining ones are uploaded again
+    * when the upload fails in the middle.
+    *
+    * @param values
+    *       The values to be uploaded.
+    * @throws Exception
+    *       When it was not possible to upload the values.
+    */
+   void upload(List<ReportedValue> values) throws Exception;
+}
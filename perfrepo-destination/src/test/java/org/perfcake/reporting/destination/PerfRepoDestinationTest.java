@@ -0,0 +1,172 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting.destination;
+
+import org.perfcake.reporting.destination.perfrepo.ReportedValue;
+import org.perfcake.reporting.destination.perfrepo.SpoolSync;
+import org.perfcake.reporting.destination.perfrepo.ValueSpool;
+
+import com.sun.net.httpserver.HttpServer;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the replay of the spool files left by the previous runs of the same test.
+ */
+public class PerfRepoDestinationTest {
+
+   private static final String TEST_UID = "spool/test";
+
+   private static final String SPOOL_PREFIX = "perfrepo-spool_test-";
+
+   private HttpServer server;
+
+   private final AtomicInteger addedValues = new AtomicInteger();
+
+   private final AtomicInteger otherRequests = new AtomicInteger();
+
+   private File directory;
+
+   @BeforeMethod
+   public void startServer() throws IOException {
+      addedValues.set(0);
+      otherRequests.set(0);
+      server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.createContext("/", exchange -> {
+         try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() != -1) {
+               // the request is consumed
+            }
+         }
+         if (exchange.getRequestURI().getPath().endsWith("/rest/testExecution/addValue")) {
+            addedValues.incrementAndGet();
+         } else {
+            otherRequests.incrementAndGet();
+         }
+
+         final byte[] id = "42".getBytes(StandardCharsets.UTF_8);
+         exchange.getResponseHeaders().add("Location", "http://localhost/rest/testExecution/42");
+         exchange.sendResponseHeaders(201, id.length);
+         try (OutputStream out = exchange.getResponseBody()) {
+            out.write(id);
+         }
+      });
+      server.start();
+
+      directory = Files.createTempDirectory("perfrepo-spools").toFile();
+   }
+
+   @AfterMethod
+   public void stopServer() {
+      server.stop(0);
+      final File[] files = directory.listFiles();
+      if (files != null) {
+         for (final File file : files) {
+            file.delete();
+         }
+      }
+      directory.delete();
+   }
+
+   @Test
+   public void testReplay() throws Exception {
+      final File file = new File(directory, SPOOL_PREFIX + "previous.spool");
+      final ValueSpool previous = ValueSpool.open(file, 1024, SpoolSync.NEVER, 0);
+      previous.setExecutionId(42L);
+      for (int i = 0; i < 5; i++) {
+         previous.offer(new ReportedValue("metric", i, Collections.singletonMap("iteration", String.valueOf(i))));
+      }
+      previous.close();
+
+      final PerfRepoDestination destination = createDestination();
+      destination.open(null);
+      destination.close();
+
+      // the values are added to the test execution of the previous run
+      Assert.assertEquals(addedValues.get(), 5);
+      Assert.assertEquals(otherRequests.get(), 0);
+      Assert.assertFalse(file.exists());
+      Assert.assertEquals(directory.list().length, 0);
+   }
+
+   @Test
+   public void testEmptySpoolDeleted() throws Exception {
+      final File file = new File(directory, SPOOL_PREFIX + "empty.spool");
+      final ValueSpool previous = ValueSpool.open(file, 1024, SpoolSync.NEVER, 0);
+      previous.offer(new ReportedValue("metric", 1, Collections.emptyMap()));
+      previous.poll(0);
+      previous.acknowledge(1);
+      previous.close();
+
+      final PerfRepoDestination destination = createDestination();
+      destination.open(null);
+      Assert.assertFalse(file.exists());
+      destination.close();
+
+      Assert.assertEquals(addedValues.get(), 0);
+      Assert.assertEquals(otherRequests.get(), 0);
+      Assert.assertEquals(directory.list().length, 0);
+   }
+
+   @Test
+   public void testOpenSpoolSkipped() throws Exception {
+      final File file = new File(directory, SPOOL_PREFIX + "live.spool");
+      final ValueSpool live = ValueSpool.open(file, 1024, SpoolSync.NEVER, 0);
+      live.setExecutionId(42L);
+      live.offer(new ReportedValue("metric", 1, Collections.emptyMap()));
+
+      try {
+         final PerfRepoDestination destination = createDestination();
+         destination.open(null);
+         destination.close();
+
+         Assert.assertEquals(addedValues.get(), 0);
+         Assert.assertTrue(file.exists());
+         Assert.assertEquals(live.getPending(), 1);
+         Assert.assertEquals(live.poll(0).getMetric(), "metric");
+      } finally {
+         live.close();
+      }
+   }
+
+   private PerfRepoDestination createDestination() {
+      final PerfRepoDestination destination = new PerfRepoDestination();
+      destination.setRepositoryUrl("localhost:" + server.getAddress().getPort());
+      destination.setTestUID(TEST_UID);
+      destination.setTags("spool");
+      destination.setSpoolDirectory(directory.getAbsolutePath());
+      destination.setSpoolSync(SpoolSync.NEVER);
+      destination.setFlushPeriod(10);
+      destination.setCloseTimeout(10_000);
+      return destination;
+   }
+}
@@ -0,0 +1,231 @@
+/*
+ * -----------------------------------------------------------------------\
+ * PerfCake
+ *
+ * Copyright (C) 2010 - 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package org.perfcake.reporting.destination.perfrepo;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tests the format of the spool file and the recovery of the values it holds.
+ */
+public class ValueSpoolTest {
+
+   private static final int HEADER_SIZE = 32;
+
+   private static final int RECORD_HEADER_SIZE = 12;
+
+   /**
+    * Size of the payload of a value with a single character metric name and no parameters.
+    */
+   private static final int PAYLOAD_SIZE = 2 + 1 + 8 + 2;
+
+   private File file;
+
+   @BeforeMethod
+   public void createFile() throws IOException {
+      file = File.createTempFile("perfrepo-test-", ".spool");
+      Files.delete(file.toPath());
+   }
+
+   @AfterMethod
+   public void deleteFile() throws IOException {
+      Files.deleteIfExists(file.toPath());
+   }
+
+   @Test
+   public void testReopenWithPendingValues() throws Exception {
+      ValueSpool spool = open();
+      spool.setExecutionId(42L);
+      spool.offer(value("a", 1));
+      spool.offer(value("b", 2));
+      spool.offer(value("c", 3));
+
+      Assert.assertEquals(spool.poll(0).getMetric(), "a");
+      Assert.assertEquals(spool.poll(0).getMetric(), "b");
+      spool.acknowledge(1);
+      Assert.assertEquals(spool.getPending(), 2);
+      spool.close();
+
+      // the read but not acknowledged value is read again
+      spool = open();
+      Assert.assertEquals(spool.getExecutionId(), Long.valueOf(42L));
+      Assert.assertEquals(spool.getPending(), 2);
+      Assert.assertEquals(spool.size(), 2);
+      assertValue(spool.poll(0), "b", 2);
+      assertValue(spool.poll(0), "c", 3);
+      Assert.assertNull(spool.poll(0));
+
+      spool.offer(value("d", 4));
+      assertValue(spool.poll(0), "d", 4);
+      spool.acknowledge(3);
+      Assert.assertEquals(spool.getPending(), 0);
+      spool.close();
+
+      spool = open();
+      Assert.assertEquals(spool.getPending(), 0);
+      spool.end();
+      Assert.assertNull(spool.poll(1000));
+      spool.close();
+   }
+
+   @Test
+   public void testTornRecord() throws Exception {
+      ValueSpool spool = open();
+      spool.offer(value("a", 1));
+      spool.offer(value("b", 2));
+      spool.offer(value("c", 3));
+      spool.close();
+
+      // the length of the last record was written, but its payload is not the one the checksum was computed from
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+         final long lastRecord = HEADER_SIZE + 2 * (RECORD_HEADER_SIZE + PAYLOAD_SIZE);
+         Assert.assertTrue(raf.length() >= lastRecord + RECORD_HEADER_SIZE + PAYLOAD_SIZE);
+         raf.seek(lastRecord);
+         Assert.assertEquals(raf.readInt(), PAYLOAD_SIZE);
+         raf.seek(lastRecord + RECORD_HEADER_SIZE + 2);
+         raf.write('x');
+      }
+
+      spool = open();
+      Assert.assertEquals(spool.getPending(), 2);
+      assertValue(spool.poll(0), "a", 1);
+      assertValue(spool.poll(0), "b", 2);
+      Assert.assertNull(spool.poll(0));
+
+      // the torn record is overwritten by the next value
+      spool.offer(value("d", 4));
+      spool.close();
+
+      spool = open();
+      Assert.assertEquals(spool.getPending(), 3);
+      spool.poll(0);
+      spool.poll(0);
+      assertValue(spool.poll(0), "d", 4);
+      spool.close();
+   }
+
+   @Test
+   public void testReuseAfterGenerationBump() throws Exception {
+      ValueSpool spool = open();
+      spool.offer(value("a", 1));
+      spool.offer(value("b", 2));
+      spool.offer(value("c", 3));
+      spool.poll(0);
+      spool.poll(0);
+      spool.poll(0);
+      spool.acknowledge(3);
+
+      // the file is reused from its beginning, the old records that follow the new one are valid records of the previous generation
+      spool.offer(value("d", 4));
+      spool.close();
+
+      spool = open();
+      Assert.assertEquals(spool.getPending(), 1);
+      assertValue(spool.poll(0), "d", 4);
+      Assert.assertNull(spool.poll(0));
+
+      spool.offer(value("e", 5));
+      spool.close();
+
+      spool = open();
+      Assert.assertEquals(spool.getPending(), 2);
+      assertValue(spool.poll(0), "d", 4);
+      assertValue(spool.poll(0), "e", 5);
+      spool.close();
+   }
+
+   @Test
+   public void testNullValues() throws Exception {
+      final Map<String, String> parameters = new LinkedHashMap<>();
+      parameters.put("null", null);
+      parameters.put("empty", "");
+      parameters.put("", "no name");
+      parameters.put("unicode", "žluťoučký kůň");
+
+      ValueSpool spool = open();
+      spool.offer(new ReportedValue(null, 1, parameters));
+      spool.offer(new ReportedValue("", 2, Collections.emptyMap()));
+      spool.close();
+
+      spool = open();
+      final ReportedValue withNulls = spool.poll(0);
+      Assert.assertNull(withNulls.getMetric());
+      Assert.assertEquals(withNulls.getParameters(), parameters);
+      Assert.assertTrue(withNulls.getParameters().containsKey("null"));
+      Assert.assertNull(withNulls.getParameters().get("null"));
+      Assert.assertEquals(withNulls.getParameters().get("empty"), "");
+
+      final ReportedValue empty = spool.poll(0);
+      Assert.assertEquals(empty.getMetric(), "");
+      Assert.assertTrue(empty.getParameters().isEmpty());
+      spool.close();
+   }
+
+   @Test
+   public void testGrowingFile() throws Exception {
+      ValueSpool spool = open();
+      for (int i = 0; i < 100; i++) {
+         spool.offer(value("m", i));
+      }
+      spool.close();
+
+      spool = open();
+      Assert.assertEquals(spool.getPending(), 100);
+      for (int i = 0; i < 100; i++) {
+         assertValue(spool.poll(0), "m", i);
+      }
+      spool.close();
+   }
+
+   @Test
+   public void testOpenTwice() throws Exception {
+      final ValueSpool spool = open();
+      Assert.assertNull(open());
+      spool.close();
+
+      final ValueSpool reopened = open();
+      Assert.assertNotNull(reopened);
+      reopened.close();
+   }
+
+   private ValueSpool open() throws IOException {
+      return ValueSpool.open(file, 64, SpoolSync.NEVER, 0);
+   }
+
+   private static ReportedValue value(final String metric, final double result) {
+      return new ReportedValue(metric, result, Collections.emptyMap());
+   }
+
+   private static void assertValue(final ReportedValue value, final String metric, final double result) {
+      Assert.assertNotNull(value);
+      Assert.assertEquals(value.getMetric(), metric);
+      Assert.assertEquals(value.getResult(), result);
+   }
+}